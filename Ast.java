@@ -0,0 +1,223 @@
+/**
+ * Typed views of the nodes that have a fixed shape, with a named field for each child
+ *
+ * The parser puts each child of these nodes in a numbered slot as well as in the child list (see StNode.put), so a field is one
+ * array read in the arena rather than a scan for a kind or a guess from the child's position. A slot the parser had nothing for,
+ * like the params of a function that takes none or anything left out by error recovery, reads back as null.
+ * Lists (NSTATS, NALIST, NPLIST...) don't get one, they're walked with children() same as before.
+ */
+sealed interface Ast {
+
+    // <program> ::= CD25 <id> <globals> <funcs> <mainbody>
+    record Program(StNode name, StNode globals, StNode funcs, StNode main) implements Ast {
+        static final int NAME = 0, GLOBALS = 1, FUNCS = 2, MAIN = 3;
+
+        static Program of(StNode n) {
+            return new Program(n.slot(NAME), n.slot(GLOBALS), n.slot(FUNCS), n.slot(MAIN));
+        }
+    }
+
+    // <globals> ::= <consts> <types> <arrays>, each one optional
+    record Globals(StNode consts, StNode types, StNode arrays) implements Ast {
+        static final int CONSTS = 0, TYPES = 1, ARRAYS = 2;
+
+        static Globals of(StNode n) {
+            return new Globals(n.slot(CONSTS), n.slot(TYPES), n.slot(ARRAYS));
+        }
+    }
+
+    // <mainbody> ::= main <slist> begin <stats> end CD25 <id>
+    record MainBody(StNode locals, StNode body, StNode name) implements Ast {
+        static final int LOCALS = 0, BODY = 1, NAME = 2;
+
+        static MainBody of(StNode n) {
+            return new MainBody(n.slot(LOCALS), n.slot(BODY), n.slot(NAME));
+        }
+    }
+
+    // <func> ::= func <id> ( <plist> ) : <rtype> <funcbody>, params and locals can be left out
+    record FuncDecl(StNode name, StNode params, StNode ret, StNode locals, StNode body) implements Ast {
+        static final int NAME = 0, PARAMS = 1, RET = 2, LOCALS = 3, BODY = 4;
+
+        static FuncDecl of(StNode n) {
+            return new FuncDecl(n.slot(NAME), n.slot(PARAMS), n.slot(RET), n.slot(LOCALS), n.slot(BODY));
+        }
+    }
+
+    // NINIT, <id> is <expr>
+    record ConstInit(StNode name, StNode value) implements Ast {
+        static final int NAME = 0, VALUE = 1;
+
+        static ConstInit of(StNode n) {
+            return new ConstInit(n.slot(NAME), n.slot(VALUE));
+        }
+    }
+
+    // NRTYPE, <structid> is <fields> end
+    record StructType(StNode name, StNode fields) implements Ast {
+        static final int NAME = 0, FIELDS = 1;
+
+        static StructType of(StNode n) {
+            return new StructType(n.slot(NAME), n.slot(FIELDS));
+        }
+    }
+
+    // NATYPE, <typeid> is array [ <expr> ] of <structid> end
+    record ArrayType(StNode name, StNode size, StNode elem) implements Ast {
+        static final int NAME = 0, SIZE = 1, ELEM = 2;
+
+        static ArrayType of(StNode n) {
+            return new ArrayType(n.slot(NAME), n.slot(SIZE), n.slot(ELEM));
+        }
+    }
+
+    // NSDECL, <id> : <stype>
+    record SimpleDecl(StNode name, StNode type) implements Ast {
+        static final int NAME = 0, TYPE = 1;
+
+        static SimpleDecl of(StNode n) {
+            return new SimpleDecl(n.slot(NAME), n.slot(TYPE));
+        }
+    }
+
+    // NARRD and NARRP, <id> : <typeid>
+    record ArrayDecl(StNode name, StNode type) implements Ast {
+        static final int NAME = 0, TYPE = 1;
+
+        static ArrayDecl of(StNode n) {
+            return new ArrayDecl(n.slot(NAME), n.slot(TYPE));
+        }
+    }
+
+    // NSIMP and NARRC, a parameter wrapped around its NSDECL or NARRD
+    record Param(StNode decl) implements Ast {
+        static final int DECL = 0;
+
+        static Param of(StNode n) {
+            return new Param(n.slot(DECL));
+        }
+    }
+
+    // for ( <asgnlist> ; <bool> ) <stats> end
+    record ForStat(StNode init, StNode cond, StNode body) implements Ast {
+        static final int INIT = 0, COND = 1, BODY = 2;
+
+        static ForStat of(StNode n) {
+            return new ForStat(n.slot(INIT), n.slot(COND), n.slot(BODY));
+        }
+    }
+
+    // repeat ( <asgnlist> ) <stats> until <bool>
+    record RepeatStat(StNode init, StNode body, StNode cond) implements Ast {
+        static final int INIT = 0, BODY = 1, COND = 2;
+
+        static RepeatStat of(StNode n) {
+            return new RepeatStat(n.slot(INIT), n.slot(BODY), n.slot(COND));
+        }
+    }
+
+    // NIFTH and NIFTE, elseBody is null for NIFTH
+    record IfStat(StNode cond, StNode body, StNode elseBody) implements Ast {
+        static final int COND = 0, BODY = 1, ELSE_BODY = 2;
+
+        static IfStat of(StNode n) {
+            return new IfStat(n.slot(COND), n.slot(BODY), n.slot(ELSE_BODY));
+        }
+    }
+
+    // NASGN, NPLEQ, NMNEQ, NSTEA and NDVEQ, <var> <asgnop> <bool>
+    record Assign(StNodeKind op, StNode target, StNode value) implements Ast {
+        static final int TARGET = 0, VALUE = 1;
+
+        static Assign of(StNode n) {
+            return new Assign(n.kind, n.slot(TARGET), n.slot(VALUE));
+        }
+    }
+
+    // NINPUT, NOUTP and NOUTL, list is the NVLIST or NPRLST and is null for Out << Line
+    record IoStat(StNodeKind op, StNode list) implements Ast {
+        static final int LIST = 0;
+
+        static IoStat of(StNode n) {
+            return new IoStat(n.kind, n.slot(LIST));
+        }
+    }
+
+    // NCALL, a call used as a statement
+    record CallStat(StNode call) implements Ast {
+        static final int CALL = 0;
+
+        static CallStat of(StNode n) {
+            return new CallStat(n.slot(CALL));
+        }
+    }
+
+    // NRETN, value is null for return void
+    record Return(StNode value) implements Ast {
+        static final int VALUE = 0;
+
+        static Return of(StNode n) {
+            return new Return(n.slot(VALUE));
+        }
+    }
+
+    // every arithmetic, relational and logical operator
+    record BinOp(StNodeKind op, StNode left, StNode right) implements Ast {
+        static final int LEFT = 0, RIGHT = 1;
+
+        static BinOp of(StNode n) {
+            return new BinOp(n.kind, n.slot(LEFT), n.slot(RIGHT));
+        }
+    }
+
+    // NNOT
+    record Not(StNode operand) implements Ast {
+        static final int OPERAND = 0;
+
+        static Not of(StNode n) {
+            return new Not(n.slot(OPERAND));
+        }
+    }
+
+    // NAELT, <id> [ <expr> ]
+    record ArrayElem(StNode array, StNode index) implements Ast {
+        static final int ARRAY = 0, INDEX = 1;
+
+        static ArrayElem of(StNode n) {
+            return new ArrayElem(n.slot(ARRAY), n.slot(INDEX));
+        }
+    }
+
+    // NARRV, <id> [ <expr> ] . <id>
+    record FieldElem(StNode array, StNode index, StNode field) implements Ast {
+        static final int ARRAY = 0, INDEX = 1, FIELD = 2;
+
+        static FieldElem of(StNode n) {
+            return new FieldElem(n.slot(ARRAY), n.slot(INDEX), n.slot(FIELD));
+        }
+    }
+
+    // NFCALL, <id> ( <elist> ), args is the NALIST or an empty NEXPL
+    record FnCall(StNode name, StNode args) implements Ast {
+        static final int NAME = 0, ARGS = 1;
+
+        static FnCall of(StNode n) {
+            return new FnCall(n.slot(NAME), n.slot(ARGS));
+        }
+    }
+
+    // how many slots a node of this kind has, 0 for lists and leaves
+    static int slotCount(StNodeKind k) {
+        return switch (k) {
+            case NFUND -> 5;
+            case NPROG -> 4;
+            case NGLOB, NMAIN, NATYPE, NFORL, NREPT, NIFTH, NIFTE, NARRV -> 3;
+            case NINIT, NRTYPE, NSDECL, NARRD, NARRP, NAELT, NFCALL,
+                 NASGN, NPLEQ, NMNEQ, NSTEA, NDVEQ,
+                 NAND, NOR, NXOR, NEQL, NNEQ, NGRT, NLSS, NLEQ, NGEQ,
+                 NADD, NSUB, NMUL, NDIV, NMOD, NPOW -> 2;
+            case NSIMP, NARRC, NINPUT, NOUTP, NOUTL, NCALL, NRETN, NNOT -> 1;
+            default -> 0;
+        };
+    }
+}
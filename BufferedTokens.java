@@ -0,0 +1,73 @@
+/**
+ * A TokenSource that has every token lexed already and can hand any of them out by number
+ * TokenBuffer reads these in place instead of pulling them one at a time into its window
+ * Tokens first() to end() - 1 are there, numbered as in the whole file, and token end() is T_EOF
+ */
+interface BufferedTokens extends TokenSource {
+    int first();
+    int end();
+
+    // the columns for token n, first() <= n < end(), start also for any n below end() so T_EOF can report the last token's start
+    TokenType type(int n);
+    int start(int n);
+    int length(int n);
+    int nameId(int n);
+
+    // tokens [from, to) handed out again from the start and then T_EOF, for a parser working on just that stretch (see ParallelFuncParser)
+    // only reads the columns, so any number of slices of tokens nobody is changing can be read at once from different threads
+    default BufferedTokens slice(int from, int to) {
+        BufferedTokens whole = this;
+        return new BufferedTokens() {
+            private int at = from - 1; // token the last scan() handed out, to once we're past the end
+
+            public TokenType scan() {
+                if (at < to) at++;
+                return (at < to) ? whole.type(at) : TokenType.T_EOF;
+            }
+
+            public int tokenStart() {
+                return whole.start(Math.min(at, to - 1)); // T_EOF reports the last token's start, same as scan() above
+            }
+
+            public int tokenLength() {
+                return (at < to) ? whole.length(at) : 0;
+            }
+
+            public int tokenNameId() {
+                return (at < to) ? whole.nameId(at) : -1;
+            }
+
+            public String lexeme(TokenType tt, int start, int length, int nameId) {
+                return whole.lexeme(tt, start, length, nameId);
+            }
+
+            public LineMap lines() {
+                return whole.lines();
+            }
+
+            public int first() {
+                return from;
+            }
+
+            public int end() {
+                return to;
+            }
+
+            public TokenType type(int n) {
+                return whole.type(n);
+            }
+
+            public int start(int n) {
+                return whole.start(n);
+            }
+
+            public int length(int n) {
+                return whole.length(n);
+            }
+
+            public int nameId(int n) {
+                return whole.nameId(n);
+            }
+        };
+    }
+}
@@ -11,40 +11,52 @@ public class CD {
             return;
         }
 
-        String filename = args[0];
+        // each file's listing and report are written on a background thread while the next file compiles
+        try (OutputStage output = new OutputStage()) {
+            for (String filename : args) compile(filename, output);
+        }
+    }
 
+    // compiles the file on a stack big enough for how deep it nests (see Nesting), counted off the tokens lexed up front or,
+    // when the parser is going to stream them, off a throwaway lexer run over the file first
+    // anything thrown comes out here, same as when every file was compiled on the main thread
+    private static void compile(String filename, OutputStage output) {
         try {
-            String source = Files.readString(Path.of(filename));
+            SourceCursor source = SourceCursor.open(Path.of(filename));
             OutputController oc = new OutputController(filename);
-            Lexer scanner = new Lexer(new StringReader(source), oc);
-            List<Token> tokens = new ArrayList<>();
-
-            Token token;
-            do {
-                token = scanner.nextToken();
-                tokens.add(token);
-            } while (token.tokenType != TokenType.T_EOF);
-
-            SymbolTable table = new SymbolTable();
-            TokenStream ts = new TokenStream(tokens);
-            ErrorReporter er = new ErrorReporter(oc);
-            Parser parser = new Parser(ts, table, er);
-            StNode root = parser.parseProgram();
-            SemanticAnalyzer sa = new SemanticAnalyzer(table, er);
-            sa.analyze(root);
-            Emitter em = new Emitter();
-            CodeGenerator cg = new CodeGenerator(table, em);
-            cg.generate(root);
-
-            oc.commitBuffer();
-
-            System.out.println(em.toString());
-            TreePrinter.printReport(root, er, null, System.out);
-            TreePrinter.print(root);
-            
+            NamePool names = new NamePool(); // one pool of identifiers shared by every phase
+            // big files get lexed in parallel chunks up front, mid sized ones up front in one piece so their functions can be
+            // parsed in parallel (see ParallelFuncParser), anything else is lexed as the parser goes
+            TokenSource scanner;
+            if (source.end() >= ParallelLexer.THRESHOLD) scanner = new ParallelLexer(source, oc, names);
+            else if (source.end() >= ParallelFuncParser.MIN_CHARS) scanner = new ParallelLexer(source, oc, names, source.end());
+            else scanner = new Lexer(source, oc, names);
+
+            int depth = (scanner instanceof BufferedTokens b) ? Nesting.depth(b, b.first(), b.end())
+                : Nesting.depth(new Lexer(new SourceCursor(source, 0), new OutputController(), new NamePool()));
+            Nesting.run(depth, () -> compileFile(filename, oc, names, scanner, output));
 
         } catch(IOException e) {
             System.err.println("Error reading file: " + filename);
+        } catch(StackOverflowError e) {
+            System.err.println("Error compiling file: " + filename + " is nested too deeply");
         }
     }
+
+    private static void compileFile(String filename, OutputController oc, NamePool names, TokenSource scanner, OutputStage output) {
+        SymbolTable table = new SymbolTable(names);
+        TokenStream ts = new TokenStream(scanner); // the parser pulls tokens off the lexer as it goes
+        ErrorReporter er = new ErrorReporter(oc);
+        Parser parser = new Parser(ts, table, er);
+        StNode root = parser.parseProgram();
+        ts.drain(); // lex anything the parser didn't get to, so the listing has the whole file
+        SemanticAnalyzer sa = new SemanticAnalyzer(table, er);
+        sa.analyze(root);
+        Emitter em = new Emitter();
+        ByteArrayOutputStream notes = new ByteArrayOutputStream(); // held back so it prints in order with this file's report
+        CodeGenerator cg = new CodeGenerator(table, sa.layout(), em, new PrintStream(notes, true));
+        cg.generate(root);
+
+        output.submit(new OutputStage.Report(filename, oc, root, List.copyOf(er.all()), em.toString(), notes.toString()));
+    }
 }
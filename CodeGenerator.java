@@ -1,17 +1,21 @@
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.PrintStream;
 import java.util.List;
 
 public class CodeGenerator {
     private final Emitter em;
     private final SymbolTable table;
+    private final Layout layout; // frames, globals and constants, as the analyzer laid them out
+    private final PrintStream log; // where the "cannot generate code" messages go
 
-    private final Map<String, Integer> constPool = new LinkedHashMap<>();
-    private int constNextOff = 0; // bytes from b0 where we place next const
+    public CodeGenerator(SymbolTable table, Layout layout, Emitter em) {
+        this(table, layout, em, System.out);
+    }
 
-    public CodeGenerator(SymbolTable table, Emitter em) {
+    public CodeGenerator(SymbolTable table, Layout layout, Emitter em, PrintStream log) {
         this.table = table;
+        this.layout = layout;
         this.em = em;
+        this.log = log;
     }
 
     public void generate(StNode root) {
@@ -19,29 +23,24 @@ public class CodeGenerator {
     }
 
     private void visitProgram(StNode root) {
-
-        StNode nglob = root.getChild(StNodeKind.NGLOB);
-        StNode nfuncs = root.getChild(StNodeKind.NFUNCS);
-        StNode nmain = root.getChild(StNodeKind.NMAIN);
+        Ast.Program prog = Ast.Program.of(root);
         // globals, main, funcs
-        if (nglob != null) { genGlobals(nglob); }
-        if (nmain != null) { genMain(nmain); }
-        if (nfuncs != null) { genFuncs(nfuncs); }
+        if (prog.globals() != null) { genGlobals(prog.globals()); }
+        if (prog.main() != null) { genMain(prog.main()); }
+        if (prog.funcs() != null) { genFuncs(prog.funcs()); }
 
         em.emit("HALT");
     }
 
     private void genMain(StNode root) {
         em.label("main");
+        Ast.MainBody main = Ast.MainBody.of(root);
         // allocate space for local vars
-        StNode dlist = root.getChild(StNodeKind.NSDLST);
-        if (dlist != null) {
-            int numLocalVars = dlist.children().size();
-            em.emit("ALLOC", numLocalVars);
-        }
+        int localWords = layout.frame(root).localWords();
+        if (localWords > 0) em.emit("ALLOC", localWords);
 
         // gen stats
-        StNode stats = root.getChild(StNodeKind.NSTATS);
+        StNode stats = main.body();
         if (stats != null) {
             for (StNode stmt : stats.children()) {
                 genStatement(stmt);
@@ -56,26 +55,17 @@ public class CodeGenerator {
     }
 
     private void genFunc(StNode f) {
+        Ast.FuncDecl fd = Ast.FuncDecl.of(f);
         // function name
-        StNode nameNode = f.getChild(StNodeKind.NSIMV);
+        StNode nameNode = fd.name();
         String name = (nameNode != null) ? nameNode.lexeme : "<anon>";
         em.label(name);
         // function locals
-        StNode locals = f.getChild(StNodeKind.NDLIST);
-        int localCount = 0;
-        if (locals != null) {
-            for (StNode d : locals.children()) {
-                StNode id = (d.kind == StNodeKind.NSDECL)
-                    ? d.getChild(StNodeKind.NSIMV)
-                    : d.getChild(StNodeKind.NARRD).getChild(StNodeKind.NSIMV);
-                VarSymbol v = (VarSymbol) id.getSymbol();
-                localCount += Math.max(1, v.sizeWords());
-            }
-        }
-        if (localCount > 0) em.emit("ALLOC", localCount);
+        int localWords = layout.frame(f).localWords();
+        if (localWords > 0) em.emit("ALLOC", localWords);
         
         // function body
-        StNode stats = f.getChild(StNodeKind.NSTATS);
+        StNode stats = fd.body();
         if (stats != null) {
             for (StNode s : stats.children()) {
                 genStatement(s);
@@ -85,12 +75,12 @@ public class CodeGenerator {
     }
 
     private void genGlobals(StNode nglob) {
-        StNode arrs = nglob.getChild(StNodeKind.NALIST);
+        StNode arrs = Ast.Globals.of(nglob).arrays();
         if (arrs == null) return;
     
-        for (StNode d : arrs.children()) {
-            StNode arrd = (d.kind == StNodeKind.NARRD) ? d : d.getChild(StNodeKind.NARRD);
-            if (arrd == null) continue;
+        for (StNode arrd : arrs.children()) {
+            if (arrd.kind != StNodeKind.NARRD) continue;
+            StNode id = Ast.ArrayDecl.of(arrd).name();
     
             VarSymbol v = null;
     
@@ -98,14 +88,12 @@ public class CodeGenerator {
             if (s instanceof VarSymbol vs1) v = vs1;
     
             if (v == null) {
-                StNode id = arrd.getChild(StNodeKind.NSIMV);
                 if (id != null && id.getSymbol() instanceof VarSymbol vs2) v = vs2;
             }
     
             if (v == null) {
-                StNode id = arrd.getChild(StNodeKind.NSIMV);
                 if (id != null && id.lexeme != null) {
-                    Symbol rs = table.resolve(id.lexeme);
+                    Symbol rs = lookup(id);
                     if (rs instanceof VarSymbol vs3) v = vs3;
                 }
             }
@@ -136,15 +124,15 @@ public class CodeGenerator {
     }
 
     private StNode unwrapCall(StNode n) {
-        if (n.kind == StNodeKind.NCALL && !n.children().isEmpty()
-            && n.children().get(0).kind == StNodeKind.NFCALL) {
-            return n.children().get(0);
+        if (n.kind == StNodeKind.NCALL) {
+            StNode call = Ast.CallStat.of(n).call();
+            if (call != null && call.kind == StNodeKind.NFCALL) return call;
         }
         return n;
     }
 
     private FuncSymbol funcSymFromCall(StNode fcall) {
-        StNode nameNode = fcall.getChild(StNodeKind.NSIMV);
+        StNode nameNode = Ast.FnCall.of(fcall).name();
         if (nameNode == null) {
             throw new IllegalStateException("Malformed call: missing function name at "
                 + fcall.line + ":" + fcall.col);
@@ -152,7 +140,7 @@ public class CodeGenerator {
         Symbol s = nameNode.getSymbol();
         if (s instanceof FuncSymbol fs) return fs;
 
-        s = (nameNode.lexeme != null) ? table.resolve(nameNode.lexeme) : null;
+        s = (nameNode.lexeme != null) ? lookup(nameNode) : null;
         if (!(s instanceof FuncSymbol fs2)) {
             throw new IllegalStateException("Unbound function '" + nameNode.lexeme + "' at "
                 + nameNode.line + ":" + nameNode.col);
@@ -165,7 +153,7 @@ public class CodeGenerator {
     private void gennFCall(StNode call) {
         StNode fcall = unwrapCall(call);
         FuncSymbol fs = funcSymFromCall(fcall);
-        StNode argList = fcall.getChild(StNodeKind.NALIST);
+        StNode argList = Ast.FnCall.of(fcall).args();
         List<StNode> args = (argList != null) ? argList.children() : List.of();
         genCallCommon(fs.name(), args);
     }
@@ -173,7 +161,7 @@ public class CodeGenerator {
     private void genCallStmt(StNode call) {
         StNode fcall = unwrapCall(call);
         FuncSymbol fs = funcSymFromCall(fcall);
-        StNode argList = fcall.getChild(StNodeKind.NALIST);
+        StNode argList = Ast.FnCall.of(fcall).args();
         List<StNode> args = (argList != null) ? argList.children() : List.of();
         genCallCommon(fs.name(), args);
         if (!(fs.returnType() instanceof Type.VoidT)) em.emit("STEP");
@@ -191,9 +179,9 @@ public class CodeGenerator {
     }
 
     private void genAssign(StNode n)  {
-        List<StNode> children = n.children();
-        StNode lhs = children.get(0);
-        StNode rhs = children.get(1);
+        Ast.Assign a = Ast.Assign.of(n);
+        StNode lhs = a.target();
+        StNode rhs = a.value();
     
         if (lhs.kind == StNodeKind.NSIMV) {
             // simple var
@@ -203,7 +191,7 @@ public class CodeGenerator {
             else if (s instanceof ParamSymbol p) { base = p.base(); off = p.offset(); }
             else { em.emit("TRAP"); return; }
     
-            switch (n.kind) {
+            switch (a.op()) {
                 case NASGN -> {
                     // x = RHS
                     genExpression(rhs);
@@ -235,18 +223,19 @@ public class CodeGenerator {
                     em.emit("ST", base, off);
                 }
                 default -> {
-                    System.out.println("Cannot generate code: unknown assign kind.");
+                    log.println("Cannot generate code: unknown assign kind.");
                     em.emit("TRAP");
                 }
             }
         }
         else if (lhs.kind == StNodeKind.NARRV) {
-            StNode baseNode = lhs.children().get(0); // array id
-            StNode idxNode  = lhs.children().get(1); // index
-            StNode field    = lhs.children().get(2); // field id
+            Ast.FieldElem elem = Ast.FieldElem.of(lhs);
+            StNode baseNode = elem.array(); // array id
+            StNode idxNode  = elem.index(); // index
+            StNode field    = elem.field(); // field id
         
             Symbol s = baseNode.getSymbol();
-            if (s == null && baseNode.lexeme != null) s = table.resolve(baseNode.lexeme);
+            if (s == null && baseNode.lexeme != null) s = lookup(baseNode);
         
             Integer base = null, off = null; Type t = null;
             if (s instanceof VarSymbol vs) { base = vs.base(); off = vs.offset(); t = vs.type(); }
@@ -257,15 +246,17 @@ public class CodeGenerator {
                 em.emit("TRAP"); return;
             }
         
+            int foff = layout.fieldOffset(st, field.lexeme);
+            if (foff < 0) { em.emit("TRAP"); return; } // the struct has no such field
+
             // Compute address of arr[i].field
             em.emit("LV2", base, off);
             genExpression(idxNode);
             em.emit("INDEX");
         
-            int foff = computeFieldOffset(st, field.lexeme);
             if (foff > 0) em.emit("STEP", foff);
         
-            switch (n.kind) {
+            switch (a.op()) {
                 case NASGN -> {
                     genExpression(rhs);
                     em.emit("ST");
@@ -300,37 +291,6 @@ public class CodeGenerator {
     }
     
 
-    // compute the size in words of a type
-    private int typeSize(Type t) {
-        if (t instanceof Type.Int || t instanceof Type.Real || t instanceof Type.Bool) {
-            return 1; // primitive types take 1 word
-        } else if (t instanceof Type.Array arr) {
-            // array size = number of elements * size of one element
-            return arr.size() * typeSize(arr.elem());
-        } else if (t instanceof Type.Struct s) {
-            // sum of sizes of all fields
-            int size = 0;
-            for (Type fieldType : s.fields().values()) {
-                size += typeSize(fieldType);
-            }
-            return size;
-        } else {
-            return 1; // default
-        }
-    }
-
-    // compute the offset in words of a field inside a struct
-    private int computeFieldOffset(Type.Struct s, String fieldName) {
-        int offset = 0;
-        for (Map.Entry<String, Type> entry : s.fields().entrySet()) {
-            if (entry.getKey().equals(fieldName)) {
-                return offset; // found the field, return offset
-            }
-            offset += typeSize(entry.getValue()); // add size of this field
-        }
-        return 0;  // default
-    }
-
     private void genExpression(StNode expr) {
         switch (expr.kind) {
             case NILIT -> {
@@ -349,6 +309,7 @@ public class CodeGenerator {
                 Symbol s = symOf(expr);
                 if (s instanceof VarSymbol v)      em.emit("LV2", v.base(), v.offset());
                 else if (s instanceof ParamSymbol p) em.emit("LV2", p.base(), p.offset());
+                else if (s instanceof ConstSymbol c) pushConst(c);
                 else em.emit("TRAP");
             }
             case NADD, NSUB, NMUL, NDIV, NMOD, NPOW -> {
@@ -364,9 +325,10 @@ public class CodeGenerator {
                 gennFCall(expr);
             }
             case NEQL, NNEQ, NGRT, NLSS, NGEQ, NLEQ -> {
-                genExpression(expr.children().get(0)); // lhs
-                genExpression(expr.children().get(1)); // rhs  
-                switch (expr.kind) {
+                Ast.BinOp rel = Ast.BinOp.of(expr);
+                genExpression(rel.left());
+                genExpression(rel.right());
+                switch (rel.op()) {
                     case NEQL -> em.emit("EQ");  
                     case NNEQ -> em.emit("NE");  
                     case NGRT -> em.emit("GT");  
@@ -376,24 +338,30 @@ public class CodeGenerator {
                     default -> {}
                 }
             }
-            case NNOT -> { genExpression(expr.children().get(0)); em.emit("NOT"); }
-            case NAND -> { genExpression(expr.children().get(0)); genExpression(expr.children().get(1)); em.emit("AND"); }
-            case NOR  -> { genExpression(expr.children().get(0)); genExpression(expr.children().get(1)); em.emit("OR");  }
-            case NXOR -> { genExpression(expr.children().get(0)); genExpression(expr.children().get(1)); em.emit("XOR"); }
+            case NNOT -> { genExpression(Ast.Not.of(expr).operand()); em.emit("NOT"); }
+            case NAND -> { genLogical(Ast.BinOp.of(expr)); em.emit("AND"); }
+            case NOR  -> { genLogical(Ast.BinOp.of(expr)); em.emit("OR");  }
+            case NXOR -> { genLogical(Ast.BinOp.of(expr)); em.emit("XOR"); }
 
             default -> {
-                System.out.println("Cannot generate code: unknown expression kind.");
+                log.println("Cannot generate code: unknown expression kind.");
                 em.emit("TRAP");
             }
         }
     }
 
+    private void genLogical(Ast.BinOp op) {
+        genExpression(op.left());
+        genExpression(op.right());
+    }
+
     private void genArrayIndexExpr(StNode n) {
-        StNode arrId = n.children().get(0);
-        StNode index = n.children().get(1);
+        Ast.ArrayElem elem = Ast.ArrayElem.of(n);
+        StNode arrId = elem.array();
+        StNode index = elem.index();
     
         Symbol s = arrId.getSymbol();
-        if (s == null && arrId.lexeme != null) s = table.resolve(arrId.lexeme);
+        if (s == null && arrId.lexeme != null) s = lookup(arrId);
     
         Integer base = null, off = null; Type sType = null;
         if (s instanceof VarSymbol vs) { base = vs.base(); off = vs.offset(); sType = vs.type(); }
@@ -410,18 +378,19 @@ public class CodeGenerator {
     
         em.emit("LV2", base, off);
         genExpression(index);
-        int elemSize = typeSize(((Type.Array) sType).elem());
+        int elemSize = layout.stride(arrT);
         em.emit("INDEX", elemSize);
         em.emit("L");
     }
 
     private void genArrayExpr(StNode arrNode) {
-        StNode arrId = arrNode.children().get(0);
-        StNode index = arrNode.children().get(1);
-        StNode field = (arrNode.children().size() > 2) ? arrNode.children().get(2) : null;
+        Ast.FieldElem elem = Ast.FieldElem.of(arrNode);
+        StNode arrId = elem.array();
+        StNode index = elem.index();
+        StNode field = elem.field();
     
         Symbol s = arrId.getSymbol();
-        if (s == null && arrId.lexeme != null) s = table.resolve(arrId.lexeme);
+        if (s == null && arrId.lexeme != null) s = lookup(arrId);
     
         Integer base = null, off = null;
         Type sType = null;
@@ -436,15 +405,19 @@ public class CodeGenerator {
             em.emit("TRAP");
             return;
         }
+        int fieldOff = layout.fieldOffset(st, field.lexeme);
+        if (fieldOff < 0) {
+            em.emit("TRAP"); // the struct has no such field
+            return;
+        }
     
         // desc, idx → INDEX → element address
         em.emit("LV2", base, off);
         genExpression(index);
-        int elemSize = typeSize(st);    // st is the element struct type
+        int elemSize = layout.stride(arrT);    // one element, the struct
         em.emit("INDEX", elemSize);
 
         // step to field inside the struct (in words)
-        int fieldOff = computeFieldOffset(st, field.lexeme);
         if (fieldOff > 0) em.emit("STEP", fieldOff);
 
         // load the field
@@ -454,7 +427,10 @@ public class CodeGenerator {
 
     // push int literal onto stack
     private void pushIntLiteral(StNode expr) {
-        int val = Integer.parseInt(expr.lexeme);
+        pushInt(Integer.parseInt(expr.lexeme));
+    }
+
+    private void pushInt(int val) {
         if (val >= -128 && val <= 127) {
             // int literal fits in 1 byte
             em.emit("LB", val);
@@ -464,56 +440,48 @@ public class CodeGenerator {
             em.emit("LH", val);
         }
         else {
-            System.out.println("Cannot generate code: integer literal cannot be larger than 2 bytes.");
+            log.println("Cannot generate code: integer literal cannot be larger than 2 bytes.");
             em.emit("TRAP");
         }
     }
 
     private void pushFloatLiteral(StNode expr) {
-        double val = Double.parseDouble(expr.lexeme);
+        pushFloat(Double.parseDouble(expr.lexeme));
+    }
 
+    private void pushFloat(double val) {
         if (val == 0.0) {
             em.emit("ZERO");
             em.emit("FTYPE");
             return;
         }
 
-        int off = internFloatConst(val);
+        int off = layout.floatConst(val);
         em.emit("LA0", off);
         em.emit("L");
 
     }
 
+    // a named constant, its value was worked out by the analyzer (see ConstEval)
+    private void pushConst(ConstSymbol c) {
+        if (c.type() instanceof Type.Int) pushInt((int) c.bits());
+        else if (c.type() instanceof Type.Real) pushFloat(Double.longBitsToDouble(c.bits()));
+        else em.emit((c.bits() != 0) ? "TRUE" : "FALSE");
+    }
+
     private void pushStringLiteral(String s) {
-        int off = internStringConst(s);
+        int off = layout.stringConst(s);
         em.emit("LA0", off);
         em.emit("STRPR");
     }
 
-    // running memory map of float constants
-    private int internFloatConst(double d) {
-        String k = "F:" + Double.toString(d);
-        return constPool.computeIfAbsent(k, kk -> { int off = constNextOff; constNextOff += 8; return off; });
-    }
-
-    // running memory map of string constants
-    private int internStringConst(String s) {
-        String k = "S:" + s;
-        return constPool.computeIfAbsent(k, kk -> {
-            int off = constNextOff;
-            constNextOff += 8;
-            return off;
-        });
-    }
-
     private void genBinaryOp(StNode expr) {
-        StNode lhs = expr.children().get(0);
-        StNode rhs = expr.children().get(1);
+        Ast.BinOp op = Ast.BinOp.of(expr);
 
-        genExpression(lhs);
-        genExpression(rhs);
+        genExpression(op.left());
+        genExpression(op.right());
 
-        switch (expr.kind) {
+        switch (op.op()) {
             case NADD -> em.emit("ADD");
             case NSUB -> em.emit("SUB");
             case NMUL -> em.emit("MUL");
@@ -533,8 +501,8 @@ public class CodeGenerator {
     }
 
     private void genInput(StNode n) {
-        List<StNode> vlist = n.children().isEmpty() ? List.of()
-                           : n.children().get(0).children();
+        StNode list = Ast.IoStat.of(n).list();
+        List<StNode> vlist = (list == null) ? List.of() : list.children();
         for (StNode var : vlist) {
             Symbol s = var.getSymbol();
             if (!(s instanceof VarSymbol v)) { em.emit("TRAP"); continue; }
@@ -549,13 +517,13 @@ public class CodeGenerator {
     }
 
     private void genOutput(StNode n) {
+        StNode c = Ast.IoStat.of(n).list();
         // Handle "Out << Line"
-        if (n.kind == StNodeKind.NOUTL && n.children().isEmpty()) {
+        if (n.kind == StNodeKind.NOUTL && c == null) {
             em.emit("NEWLN");
             return;
         }
     
-        StNode c = n.getChild(StNodeKind.NPRLST);
         if (c != null) {
             for (StNode child : c.children()) {
                 switch (child.kind) {
@@ -588,9 +556,10 @@ public class CodeGenerator {
     }
     
     private void genFor(StNode n) {
-        StNode asgnList = n.children().get(0);
-        StNode cond = n.children().get(1);
-        StNode body = n.children().get(2);
+        Ast.ForStat f = Ast.ForStat.of(n);
+        StNode asgnList = f.init();
+        StNode cond = f.cond();
+        StNode body = f.body();
         // label generation for control flow
         String startLabel = em.newLabel("for_start");
         String endLabel = em.newLabel("for_end");
@@ -622,9 +591,10 @@ public class CodeGenerator {
     }
 
     private void genRept(StNode n) {
-        StNode asgnList = n.children().get(0);
-        StNode body = n.children().get(1);
-        StNode cond = n.children().get(2);
+        Ast.RepeatStat r = Ast.RepeatStat.of(n);
+        StNode asgnList = r.init();
+        StNode body = r.body();
+        StNode cond = r.cond();
         // label generation for control flow
         String startLabel = em.newLabel("rept_start");
 
@@ -652,9 +622,10 @@ public class CodeGenerator {
     }
 
     private void genIf(StNode n) {
-        StNode cond = n.children().get(0);  // condition
-        StNode ifStats = n.children().get(1); // statements for IF block
-        StNode elseStats = (n.kind == StNodeKind.NIFTE) ? n.children().get(2) : null;   // statements for ELSE
+        Ast.IfStat i = Ast.IfStat.of(n);
+        StNode cond = i.cond();  // condition
+        StNode ifStats = i.body(); // statements for IF block
+        StNode elseStats = i.elseBody();   // statements for ELSE, null for NIFTH
 
         String endLabel = em.newLabel("end_if");
         String elseLabel = em.newLabel("else");
@@ -684,16 +655,22 @@ public class CodeGenerator {
     }
 
     private void genReturn(StNode n)  {
-        if (!n.children().isEmpty()) {
-            genExpression(n.children().get(0));
+        StNode value = Ast.Return.of(n).value();
+        if (value != null) {
+            genExpression(value);
             em.emit("RVAL");
         }
     }
 
+    // table lookup by the node's pooled name id, or by spelling for nodes built without one
+    private Symbol lookup(StNode n) {
+        return (n.nameId >= 0) ? table.resolve(n.nameId) : table.resolve(n.lexeme);
+    }
+
     private Symbol symOf(StNode n) {
         Symbol s = n.getSymbol();
         if (s == null) {
-            s = (n.lexeme != null) ? table.resolve(n.lexeme) : null;
+            s = (n.lexeme != null) ? lookup(n) : null;
         }
         if (s == null) {
             throw new IllegalStateException("Unbound identifier '" + n.lexeme + "' at " + n.line + ":" + n.col);
@@ -0,0 +1,184 @@
+/**
+ * Works out constant expressions (constants, array sizes) without boxing anything
+ *
+ * A value is a kind saying which lane it's in and a long holding it: an integer as its int value, a real as its raw double
+ * bits, a boolean as 0 or 1. Integers are worked out with Java int arithmetic, wrapping the same way, and only widened to the
+ * long to be stored. What each node came to is kept on the node itself (see NodeArena.constKind), so an expression is only
+ * worked out once however many times it's asked for, and the code generator can read the value straight off it.
+ *
+ * NOT_CONST covers everything that doesn't come to a value: a name, a call, a type mismatch, an integer division or % by
+ * zero, or an integer to a negative power.
+ */
+final class ConstEval {
+    static final byte UNSEEN = 0, INT = 1, REAL = 2, BOOL = 3, NOT_CONST = 4;
+
+    private ConstEval() {}
+
+    // the kind n comes to, its value is then n.constBits()
+    static byte eval(StNode n) {
+        byte k = n.constKind();
+        if (k != UNSEEN) return k;
+
+        switch (n.kind) {
+            case NILIT -> n.setConst(INT, Integer.parseInt(n.lexeme));
+            case NFLIT -> n.setConst(REAL, Double.doubleToRawLongBits(Double.parseDouble(n.lexeme)));
+            case NTRUE -> n.setConst(BOOL, 1);
+            case NFALS -> n.setConst(BOOL, 0);
+
+            case NNOT -> {
+                StNode a = Ast.Not.of(n).operand();
+                if (a != null && eval(a) == BOOL) n.setConst(BOOL, a.constBits() ^ 1);
+                else n.setConst(NOT_CONST, 0);
+            }
+
+            case NADD, NSUB, NMUL, NDIV, NMOD -> arith(n);
+            case NPOW -> pow(n);
+            case NEQL, NNEQ, NGRT, NLSS, NGEQ, NLEQ -> rel(n);
+            case NAND, NOR, NXOR -> logic(n);
+
+            default -> {
+                if (n.childCount() == 1) {
+                    StNode c = n.child(0);
+                    n.setConst(eval(c), c.constBits());
+                } else {
+                    n.setConst(NOT_CONST, 0);
+                }
+            }
+        }
+        return n.constKind();
+    }
+
+    static int asInt(StNode n) {
+        return (int) n.constBits();
+    }
+
+    static double asReal(StNode n) {
+        return Double.longBitsToDouble(n.constBits());
+    }
+
+    static boolean asBool(StNode n) {
+        return n.constBits() != 0;
+    }
+
+    private static boolean numeric(byte k) {
+        return k == INT || k == REAL;
+    }
+
+    // an int or real operand as a double, or an int as an int (a real cut down the way (int) does)
+    private static double toD(StNode n, byte k) {
+        return (k == REAL) ? asReal(n) : asInt(n);
+    }
+
+    private static int toI(StNode n, byte k) {
+        return (k == REAL) ? (int) asReal(n) : asInt(n);
+    }
+
+    // + - * / in real if either side is real, otherwise int; % is always int
+    private static void arith(StNode n) {
+        Ast.BinOp op = Ast.BinOp.of(n);
+        byte ka = operand(op.left());
+        byte kb = operand(op.right());
+        if (!numeric(ka) || !numeric(kb)) {
+            n.setConst(NOT_CONST, 0);
+            return;
+        }
+
+        if (n.kind != StNodeKind.NMOD && (ka == REAL || kb == REAL)) {
+            double x = toD(op.left(), ka), y = toD(op.right(), kb);
+            double r = switch (n.kind) {
+                case NADD -> x + y;
+                case NSUB -> x - y;
+                case NMUL -> x * y;
+                default -> x / y;
+            };
+            n.setConst(REAL, Double.doubleToRawLongBits(r));
+            return;
+        }
+
+        int x = toI(op.left(), ka), y = toI(op.right(), kb);
+        if (y == 0 && (n.kind == StNodeKind.NDIV || n.kind == StNodeKind.NMOD)) {
+            n.setConst(NOT_CONST, 0);
+            return;
+        }
+        int r = switch (n.kind) {
+            case NADD -> x + y;
+            case NSUB -> x - y;
+            case NMUL -> x * y;
+            case NDIV -> x / y;
+            default -> x % y;
+        };
+        n.setConst(INT, r);
+    }
+
+    // the exponent has to be an integer, a real base gives a real
+    private static void pow(StNode n) {
+        Ast.BinOp op = Ast.BinOp.of(n);
+        byte ka = operand(op.left());
+        byte kb = operand(op.right());
+        if (!numeric(ka) || kb != INT) {
+            n.setConst(NOT_CONST, 0);
+        } else if (ka == REAL) {
+            n.setConst(REAL, Double.doubleToRawLongBits(Math.pow(asReal(op.left()), asInt(op.right()))));
+        } else if (asInt(op.right()) < 0) {
+            n.setConst(NOT_CONST, 0);
+        } else {
+            n.setConst(INT, intPow(asInt(op.left()), asInt(op.right())));
+        }
+    }
+
+    // square and multiply in a long, cut back to an int at the end
+    private static int intPow(int base, int exp) {
+        long res = 1, b = base;
+        int e = exp;
+        while (e > 0) {
+            if ((e & 1) == 1) res *= b;
+            b *= b; e >>= 1;
+        }
+        return (int) res;
+    }
+
+    // false < true, numbers compare as doubles
+    private static void rel(StNode n) {
+        Ast.BinOp op = Ast.BinOp.of(n);
+        byte ka = operand(op.left());
+        byte kb = operand(op.right());
+        int c;
+        if (ka == BOOL && kb == BOOL) {
+            c = Boolean.compare(asBool(op.left()), asBool(op.right()));
+        } else if (numeric(ka) && numeric(kb)) {
+            c = Double.compare(toD(op.left(), ka), toD(op.right(), kb));
+        } else {
+            n.setConst(NOT_CONST, 0);
+            return;
+        }
+        boolean r = switch (n.kind) {
+            case NEQL -> c == 0;
+            case NNEQ -> c != 0;
+            case NGRT -> c > 0;
+            case NLSS -> c < 0;
+            case NGEQ -> c >= 0;
+            default -> c <= 0;
+        };
+        n.setConst(BOOL, r ? 1 : 0);
+    }
+
+    private static void logic(StNode n) {
+        Ast.BinOp op = Ast.BinOp.of(n);
+        if (operand(op.left()) != BOOL || operand(op.right()) != BOOL) {
+            n.setConst(NOT_CONST, 0);
+            return;
+        }
+        boolean x = asBool(op.left()), y = asBool(op.right());
+        boolean r = switch (n.kind) {
+            case NAND -> x && y;
+            case NOR -> x || y;
+            default -> x ^ y;
+        };
+        n.setConst(BOOL, r ? 1 : 0);
+    }
+
+    // an operand the parser may have left out
+    private static byte operand(StNode n) {
+        return (n != null) ? eval(n) : NOT_CONST;
+    }
+}
@@ -35,6 +35,12 @@ final class ErrorReporter {
         out.addError(e);
     }
 
+    // an error something else found, e.g. a body checked on another thread, passed on as it is
+    void report(CompilerError e) {
+        errors.add(e);
+        out.addError(e);
+    }
+
     int count() {
         return errors.size();
     }
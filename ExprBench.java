@@ -0,0 +1,74 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Times the expression parser on wide and on deep expressions, run with: java ExprBench [statements] [depth]
+ *
+ * wide is a main of statements whose expressions go through every binding level (or, and, relational, +, *, ^, not, calls and
+ * array elements), deep is a few statements nested depth levels: (((1))), 1^1^...^1 which binds right, and 1-1-...-1 which
+ * binds left. The source is lexed up front so only the parse is timed, on a thread with the stack CD would give it, and the
+ * best of several rounds is reported in ns and bytes allocated per token.
+ */
+final class ExprBench {
+    public static void main(String[] args) throws Exception {
+        int statements = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        int depth = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        report("wide", wide(statements));
+        report("deep (", deep("(", "1", ")", depth));
+        report("deep ^", deep("", "1", "^1", depth));
+        report("deep -", deep("", "1", "-1", depth));
+    }
+
+    private static String wide(int statements) {
+        String[] exprs = {
+            "x = a + b * c - d / 2 ^ e % 3;",
+            "x += f(a, b + 1) * arr[i + 1].y - (c - d) ^ 2;",
+            "if (a < b and not c == d or e >= f xor g != h) x = 1; end",
+            "y = a * (b + c) / (d - e) + 1.5 * f ^ g ^ 2;",
+            "done = a <= b or c > d and e + 1 == f * 2;",
+        };
+        StringBuilder sb = new StringBuilder("CD25 bench\nmain\n    x : integer\nbegin\n");
+        for (int i = 0; i < statements; i++) sb.append("    ").append(exprs[i % exprs.length]).append('\n');
+        return sb.append("end CD25 bench\n").toString();
+    }
+
+    private static String deep(String open, String leaf, String close, int depth) {
+        String e = open.repeat(depth) + leaf + close.repeat(depth);
+        StringBuilder sb = new StringBuilder("CD25 bench\nmain\n    x : integer\nbegin\n");
+        for (int i = 0; i < 10; i++) sb.append("    x = ").append(e).append(";\n");
+        return sb.append("end CD25 bench\n").toString();
+    }
+
+    private static void report(String what, String src) throws InterruptedException {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        int[] tokens = { 0 }, errors = { 0 };
+        Thread t = new Thread(null, () -> {
+            OutputController oc = new OutputController(Writer.nullWriter());
+            NamePool names = new NamePool();
+            ParallelLexer pl = new ParallelLexer(new SourceCursor(src), oc, names);
+            tokens[0] = pl.count();
+            for (int r = 0; r < 13; r++) { // the first few warm up
+                TokenStream ts = new TokenStream(pl.slice(0, pl.count()));
+                ErrorReporter er = new ErrorReporter(oc);
+                Parser p = new Parser(ts, new SymbolTable(names), er);
+                long b0 = allocated(), t0 = System.nanoTime();
+                p.parseProgram();
+                long t1 = System.nanoTime(), b1 = allocated();
+                errors[0] = er.all().size();
+                if (r < 3) continue;
+                best[0] = Math.min(best[0], t1 - t0);
+                best[1] = Math.min(best[1], b1 - b0);
+            }
+        }, "bench", Nesting.stackFor(Nesting.depth(new Lexer(new SourceCursor(src), new OutputController(), new NamePool()))));
+        t.start();
+        t.join();
+        System.out.printf("%-8s %d tokens, %.1f ns/token, %.1f bytes/token%n", what, tokens[0], (double) best[0] / tokens[0], (double) best[1] / tokens[0]);
+        if (errors[0] > 0) System.out.println("         " + errors[0] + " syntax errors, the parse stopped short and the numbers mean nothing");
+    }
+
+    // bytes this thread has allocated so far
+    static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
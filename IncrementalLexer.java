@@ -0,0 +1,329 @@
+import java.util.Arrays;
+
+/**
+ * Keeps the tokens of a source file that is being edited, and re-lexes only around each edit
+ *
+ * An edit re-lexes from the end of the last token that can't have been affected, then stops as soon as a new token starts exactly
+ * where an old token from after the edit now sits. From there the text is the same as before, just shifted, so the old tokens still hold.
+ * The lexer can look up to 2 chars past the end of a token before deciding it is over (12. then a digit, / then - then -),
+ * so a token only counts as unaffected if those 2 chars come before the edit too.
+ *
+ * The text, the tokens and the line starts (see LineMap.edit) each sit in an array with a gap near the last edit. Tokens and lines
+ * after the gap keep their offsets relative to the end of the text, so they don't need touching when text before them grows or
+ * shrinks, and text after the gap just sits at the back of the array. An edit only costs the re-lexed tokens plus moving each
+ * gap from the last edit to this one, whatever the size of the file.
+ *
+ * The lexer needs the text it reads in one piece, so the text gap is moved a window past the edit before re-lexing, and further
+ * if a token runs up to it. Once re-lexing is done the gap goes back to the end of the last new token, so no token ever has its
+ * chars either side of it and a lexeme can be read straight out of the array.
+ */
+final class IncrementalLexer {
+    private static final int LOOKAHEAD = 2; // most chars the lexer reads past the end of a token
+    private static final TokenType[] TYPES = TokenType.values(); // TokenType by id, values() copies the array on every call
+    private static final int WINDOW = 256; // chars past the edit the text gap is moved before re-lexing, doubled when a token needs more
+
+    private final NamePool names;
+    private char[] text; // text before the gap at the front, the rest at the back
+    private int textLength;
+    private int gapStart; // offset the gap is at, text[gapStart, gapEnd) isn't text
+    private int gapEnd;
+
+    // token columns, token i sits at i before the gap and at i + (capacity - count) after it
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024]; // before the gap: offset, after the gap: offset - textLength
+    private int[] ends = new int[1024]; // same, one past the last char of the token
+    private int[] lengths = new int[1024];
+    private int[] nameIds = new int[1024];
+    private int count = 0;
+    private int gap = 0; // tokens before the gap
+
+    private final OutputController quiet; // the lexers' errors go nowhere, they can be worked out again from the TUNDF tokens
+    private SourceCursor cursor; // over the text in front of the gap, the re-lexing lexer reads through it
+    private Lexer scanner;
+    private Lexer lexemes; // over the whole array, only used to rebuild lexemes, at their offsets in the array
+    private final LineMap lines; // of the current text, edited in place
+
+    // what an edit did to the tokens: the old tokens [from, from + removed) are now the new tokens [from, from + inserted)
+    record Change(int from, int removed, int inserted) {}
+
+    IncrementalLexer(String source, NamePool names) {
+        this.names = names;
+        this.quiet = new OutputController() {
+            @Override
+            public void addLexError(CompilerError e) {}
+        };
+        this.textLength = source.length();
+        this.text = new char[textLength + WINDOW];
+        source.getChars(0, textLength, text, 0);
+        this.gapStart = textLength;
+        this.gapEnd = text.length;
+        this.lines = new LineMap(text, textLength).built(); // later edits move it along, the text won't be in one piece to build from
+        lexers();
+        for (TokenType tt = scanner.scan(); tt != TokenType.T_EOF; tt = scanner.scan()) {
+            insert(tt, scanner.tokenStart(), scanner.tokenEnd(), scanner.tokenLength(), scanner.tokenNameId());
+        }
+    }
+
+    // lexers over the text array, made again only when the array is
+    private void lexers() {
+        cursor = new SourceCursor(text, gapStart, lines);
+        scanner = new Lexer(cursor, quiet, names);
+        lexemes = new Lexer(new SourceCursor(text, text.length), quiet, names);
+    }
+
+    /**
+     * Replaces removed chars at offset with inserted and brings the tokens up to date
+     * @return which tokens were replaced, so later phases can redo just those
+     */
+    Change edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > textLength) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + " outside text of length " + textLength);
+        }
+        int delta = inserted.length() - removed;
+
+        // the last token that lexes the same whatever the edit did, we start again from where it ended
+        int keep = lastTokenEndingBefore(offset - LOOKAHEAD);
+        int from = keep + 1;
+        int restart = (keep >= 0) ? end(keep) : 0;
+        moveGap(from); // everything from here on is after the gap, held relative to the end of the text
+
+        // old tokens that start before the end of the removed text are going whatever happens, drop them off the front of the gap
+        // the rest start past the edit, the text from each of them on is only shifted
+        int removedTokens = 0;
+        while (gap < count && start(gap) < offset + removed) { count--; removedTokens++; }
+
+        // patch the text at the gap, tokens after the gap are relative to the end of the text so they move with it
+        moveTextGap(offset);
+        gapEnd += removed;
+        if (gapEnd - gapStart < inserted.length()) growText(inserted.length());
+        inserted.getChars(0, inserted.length(), text, gapStart);
+        gapStart += inserted.length();
+        textLength += delta;
+        lines.edit(offset, removed, inserted);
+
+        // re-lex until a new token lands on the start of one of the old tokens, from there on nothing has changed
+        // a token only counts once the lexer's look past its end stayed in front of the gap, otherwise the gap moves on and it's scanned again
+        int window = WINDOW;
+        int at = restart; // where the next scan starts, always the end of a token (or restart)
+        moveTextGap(Math.min(textLength, gapStart + window));
+        cursor.reset(at, gapStart);
+        int added = 0;
+        boolean inStep = false;
+        while (true) {
+            TokenType tt = scanner.scan();
+            boolean whole = gapStart == textLength || (tt != TokenType.T_EOF && scanner.tokenEnd() + LOOKAHEAD <= gapStart);
+            if (!whole) {
+                window *= 2;
+                moveTextGap(Math.min(textLength, gapStart + window));
+                cursor.reset(at, gapStart);
+                continue;
+            }
+            if (tt == TokenType.T_EOF) break;
+            int st = scanner.tokenStart();
+            while (gap < count && start(gap) < st) { count--; removedTokens++; } // swallowed by the new tokens
+            if (gap < count && start(gap) == st) { inStep = true; break; }
+            insert(tt, st, scanner.tokenEnd(), scanner.tokenLength(), scanner.tokenNameId());
+            added++;
+            at = scanner.tokenEnd();
+        }
+        if (!inStep) {
+            // ran off the end without getting back in step, e.g. an unclosed comment now runs to the end, nothing old is left
+            removedTokens += count - gap;
+            count = gap;
+        }
+        moveTextGap(at); // between tokens, so every token's chars are on one side of it
+
+        return new Change(from, removedTokens, added);
+    }
+
+    // index of the last token that ends at or before limit, -1 if none does
+    private int lastTokenEndingBefore(int limit) {
+        int lo = 0, hi = count - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (end(mid) <= limit) { found = mid; lo = mid + 1; }
+            else hi = mid - 1;
+        }
+        return found;
+    }
+
+    // column index of token i
+    private int slot(int i) {
+        return (i < gap) ? i : i + (types.length - count);
+    }
+
+    int size() { return count; }
+    TokenType type(int i) { return TYPES[types[slot(i)]]; }
+    int start(int i) { int k = slot(i); return (i < gap) ? starts[k] : starts[k] + textLength; }
+    int end(int i) { int k = slot(i); return (i < gap) ? ends[k] : ends[k] + textLength; }
+    int length(int i) { return lengths[slot(i)]; }
+    int nameId(int i) { return nameIds[slot(i)]; }
+
+    String text() {
+        StringBuilder sb = new StringBuilder(textLength);
+        sb.append(text, 0, gapStart).append(text, gapEnd, textLength - gapStart);
+        return sb.toString();
+    }
+
+    // where the char at offset sits in the text array
+    private int inArray(int offset) {
+        return (offset < gapStart) ? offset : offset + (gapEnd - gapStart);
+    }
+
+    // line/col lookup for the current text, the same map edited along with the text
+    LineMap lines() {
+        return lines;
+    }
+
+    /**
+     * The tokens from i on as a TokenSource, so the parser can be started partway through the text
+     * Only good until the next edit, it reads the columns as they are when they're asked for
+     */
+    BufferedTokens from(int i) {
+        IncrementalLexer whole = this;
+        return new BufferedTokens() {
+            private int at = i - 1; // token the last scan() handed out, count once we're past the end
+
+            public TokenType scan() {
+                if (at < count) at++;
+                return (at < count) ? type(at) : TokenType.T_EOF;
+            }
+
+            public int tokenStart() {
+                if (at < count) return start(at);
+                return (count > 0) ? start(count - 1) : -1; // T_EOF reports the last token's start, or -1 for none, same as Lexer
+            }
+
+            public int tokenLength() {
+                return (at < count) ? length(at) : 0;
+            }
+
+            public int tokenNameId() {
+                return (at < count) ? nameId(at) : -1;
+            }
+
+            public String lexeme(TokenType tt, int start, int length, int nameId) {
+                return lexemes.lexeme(tt, inArray(start), length, nameId);
+            }
+
+            public LineMap lines() {
+                return lines;
+            }
+
+            public int first() {
+                return i;
+            }
+
+            public int end() {
+                return count;
+            }
+
+            public TokenType type(int n) {
+                return whole.type(n);
+            }
+
+            public int start(int n) {
+                return whole.start(n);
+            }
+
+            public int length(int n) {
+                return whole.length(n);
+            }
+
+            public int nameId(int n) {
+                return whole.nameId(n);
+            }
+        };
+    }
+
+    // token i as a Token object, line and col worked out from the current text
+    Token token(int i) {
+        TokenType tt = type(i);
+        int st = start(i);
+        return new Token(tt, lexemes.lexeme(tt, inArray(st), length(i), nameId(i)), lines.line(st), lines.col(st), st, nameId(i));
+    }
+
+    // moves the text gap to offset, costs how far it moves
+    private void moveTextGap(int offset) {
+        if (offset < gapStart) {
+            int n = gapStart - offset;
+            System.arraycopy(text, offset, text, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (offset > gapStart) {
+            int n = offset - gapStart;
+            System.arraycopy(text, gapEnd, text, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    // a bigger text array with a gap of at least need chars, the text after the gap goes to the back of it
+    private void growText(int need) {
+        int after = text.length - gapEnd;
+        int n = Math.max(text.length * 2, textLength + need + WINDOW);
+        char[] t = new char[n];
+        System.arraycopy(text, 0, t, 0, gapStart);
+        System.arraycopy(text, gapEnd, t, n - after, after);
+        text = t;
+        gapEnd = n - after;
+        lexers();
+    }
+
+    // moves the gap so exactly i tokens are in front of it, costs how far it moves
+    private void moveGap(int i) {
+        int shift = types.length - count;
+        while (gap > i) { // pull tokens from before the gap to after it, they become relative to the end
+            gap--;
+            move(gap, gap + shift, -textLength);
+        }
+        while (gap < i) { // and the other way
+            move(gap + shift, gap, textLength);
+            gap++;
+        }
+    }
+
+    private void move(int from, int to, int adjust) {
+        types[to] = types[from];
+        starts[to] = starts[from] + adjust;
+        ends[to] = ends[from] + adjust;
+        lengths[to] = lengths[from];
+        nameIds[to] = nameIds[from];
+    }
+
+    // appends a token in front of the gap, positions are absolute
+    private void insert(TokenType tt, int start, int end, int length, int nameId) {
+        if (count == types.length) grow();
+        types[gap] = (byte) tt.getId();
+        starts[gap] = start;
+        ends[gap] = end;
+        lengths[gap] = length;
+        nameIds[gap] = nameId;
+        gap++;
+        count++;
+    }
+
+    // double the columns, keeping the tokens after the gap at the end
+    private void grow() {
+        int cap = types.length;
+        int n = cap * 2;
+        int after = count - gap;
+        types = regrow(types, n, cap, after);
+        starts = regrow(starts, n, cap, after);
+        ends = regrow(ends, n, cap, after);
+        lengths = regrow(lengths, n, cap, after);
+        nameIds = regrow(nameIds, n, cap, after);
+    }
+
+    private static byte[] regrow(byte[] a, int n, int cap, int after) {
+        byte[] b = Arrays.copyOf(a, n);
+        System.arraycopy(a, cap - after, b, n - after, after);
+        return b;
+    }
+
+    private static int[] regrow(int[] a, int n, int cap, int after) {
+        int[] b = Arrays.copyOf(a, n);
+        System.arraycopy(a, cap - after, b, n - after, after);
+        return b;
+    }
+}
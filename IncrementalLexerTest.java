@@ -0,0 +1,136 @@
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Checks IncrementalLexer against lexing from scratch, run with: java IncrementalLexerTest [edits per source] [random sources]
+ *
+ * Random edits are made to the sample programs and to random sources made of the pieces that matter to re-lexing (comments
+ * opened and closed, strings cut off by a newline, 12. before a digit), and after every edit the kept tokens have to be the
+ * ones a fresh Lexer hands out for the new text: type, start, end, length, name id, lexeme and line:col. The Change has to
+ * be right too: the tokens before from are the old ones where they were, the ones after from + inserted the old ones after
+ * from + removed moved by the edit. A long source is edited at far apart offsets so the gaps travel the whole text.
+ * Prints the edit and the first thing that differs and exits with 1.
+ */
+final class IncrementalLexerTest {
+    // what random sources and edits are made of
+    private static final String[] PIECES = {
+        "a", "b1", "abc", "CD25", "main", "begin", "end", "12", "3.5", "12.", "1", "+", "-", "*", "/", "<=", "==", "=", ";",
+        "(", ")", "\"s t\"", "\"open", "/-- line", "/--", "/**", "**/", "/** in **/", "@", "!", "!=", " ", " ", "\n", "\n", "\t",
+    };
+
+    // one token as both lexers see it, to compare and print
+    private record Tok(TokenType type, int start, int end, int length, int nameId, String lexeme, int line, int col) {}
+
+    public static void main(String[] args) throws Exception {
+        int edits = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+        int sources = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int runs = 0;
+        Random rnd = new Random(10);
+        for (String f : new String[] { "program1.txt", "program2.txt", "program3.txt", "program4.txt" }) {
+            Path p = Path.of(f);
+            if (!Files.exists(p)) continue;
+            if (!run(Files.readString(p), rnd, edits)) System.exit(1);
+            runs++;
+        }
+        for (int i = 0; i < sources; i++) {
+            if (!run(random(rnd, rnd.nextInt(12)), rnd, 20)) System.exit(1);
+            runs++;
+        }
+        if (!run(random(rnd, 20000), rnd, edits)) System.exit(1);
+        System.out.println("ok, " + (runs + 1) + " sources");
+    }
+
+    private static String random(Random rnd, int pieces) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < pieces; k++) sb.append(PIECES[rnd.nextInt(PIECES.length)]).append(rnd.nextBoolean() ? " " : "");
+        return sb.toString();
+    }
+
+    // makes random edits to text, false (after printing why) as soon as the tokens or the change are wrong
+    static boolean run(String text, Random rnd, int edits) {
+        NamePool names = new NamePool();
+        IncrementalLexer il = new IncrementalLexer(text, names);
+        List<Tok> before = kept(il);
+        for (int e = 0; e < edits; e++) {
+            String cur = il.text();
+            int len = cur.length();
+            int off = rnd.nextInt(len + 1), rem = 0;
+            String ins = "";
+            switch (rnd.nextInt(4)) {
+                case 0 -> rem = Math.min(len - off, rnd.nextInt(12));
+                case 1 -> ins = PIECES[rnd.nextInt(PIECES.length)];
+                case 2 -> {
+                    int s = rnd.nextInt(len + 1);
+                    ins = cur.substring(s, Math.min(len, s + 1 + rnd.nextInt(40)));
+                }
+                default -> {
+                    rem = Math.min(len - off, rnd.nextInt(4));
+                    ins = PIECES[rnd.nextInt(PIECES.length)];
+                }
+            }
+            String expect = cur.substring(0, off) + ins + cur.substring(off + rem);
+            IncrementalLexer.Change c = il.edit(off, rem, ins);
+            String edit = "new IncrementalLexer(\"" + escape(cur) + "\").edit(" + off + ", " + rem + ", \"" + escape(ins) + "\")";
+
+            if (!il.text().equals(expect)) {
+                System.out.println("FAIL: " + edit + "\n  text is \"" + escape(il.text()) + "\"");
+                return false;
+            }
+            List<Tok> got = kept(il), want = fresh(expect, names);
+            for (int i = 0; i < Math.max(got.size(), want.size()); i++) {
+                Tok g = (i < got.size()) ? got.get(i) : null, w = (i < want.size()) ? want.get(i) : null;
+                if (Objects.equals(g, w)) continue;
+                System.out.println("FAIL: " + edit + "\n  token " + i + "\n   incremental " + g + "\n   fresh       " + w);
+                return false;
+            }
+            String wrong = checkChange(before, got, c, ins.length() - rem);
+            if (wrong != null) {
+                System.out.println("FAIL: " + edit + "\n  " + c + ": " + wrong);
+                return false;
+            }
+            before = got;
+        }
+        return true;
+    }
+
+    // null when the change says what happened to the tokens, what's wrong with it otherwise
+    private static String checkChange(List<Tok> before, List<Tok> after, IncrementalLexer.Change c, int delta) {
+        if (c.from() < 0 || c.removed() < 0 || c.inserted() < 0 || c.from() + c.removed() > before.size()) return "out of range";
+        if (before.size() - c.removed() + c.inserted() != after.size()) return "counts don't add up to " + after.size() + " tokens";
+        for (int i = 0; i < c.from(); i++) {
+            if (!before.get(i).equals(after.get(i))) return "token " + i + " before the change differs";
+        }
+        for (int i = c.from() + c.removed(); i < before.size(); i++) {
+            Tok o = before.get(i), n = after.get(i - c.removed() + c.inserted());
+            if (o.type() != n.type() || o.start() + delta != n.start() || o.length() != n.length() || !o.lexeme().equals(n.lexeme())) {
+                return "old token " + i + " after the change isn't new token " + (i - c.removed() + c.inserted()) + " moved along";
+            }
+        }
+        return null;
+    }
+
+    private static List<Tok> kept(IncrementalLexer il) {
+        List<Tok> out = new ArrayList<>();
+        for (int i = 0; i < il.size(); i++) {
+            Token t = il.token(i);
+            out.add(new Tok(il.type(i), il.start(i), il.end(i), il.length(i), il.nameId(i), t.lexeme, t.line, t.col));
+        }
+        return out;
+    }
+
+    // the same pool, so a name gets the same id both ways
+    private static List<Tok> fresh(String text, NamePool names) {
+        Lexer lx = new Lexer(new SourceCursor(text), new OutputController(), names);
+        List<Tok> out = new ArrayList<>();
+        for (TokenType tt = lx.scan(); tt != TokenType.T_EOF; tt = lx.scan()) {
+            int st = lx.tokenStart();
+            String lexeme = lx.lexeme(tt, st, lx.tokenLength(), lx.tokenNameId());
+            out.add(new Tok(tt, st, lx.tokenEnd(), lx.tokenLength(), lx.tokenNameId(), lexeme, lx.lines().line(st), lx.lines().col(st)));
+        }
+        return out;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\t", "\\t");
+    }
+}
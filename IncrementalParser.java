@@ -0,0 +1,238 @@
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the syntax tree of a source file that is being edited, and parses again only around each edit
+ *
+ * The parser notes the tokens every statement, statement list and function came from (see NodeArena.tokenFrom). After an edit
+ * IncrementalLexer says which tokens changed, and the innermost statement list or function that takes in all of them is parsed
+ * again from its first token. Statements inside it that lie wholly outside the change are handed to the parser as they are: when
+ * it gets to the token one of them starts on it puts the old node in and skips its tokens, since a statement parses the same
+ * from the same tokens wherever it sits. The new list replaces the old one under its parent and nothing else in the tree is touched.
+ *
+ * The reparse has to stop on the same token the old list did, which is untouched by the edit, otherwise the edit changed more
+ * than the list (an end taken out, a new statement after an else) and the next list or function out is tried, and in the end
+ * the whole program, still keeping every untouched statement and function.
+ *
+ * Nodes and token numbers after the edit are moved along a function at a time (see NodeArena.segment), only the function the
+ * edit is in goes node by node. Replaced nodes stay in the arena unreachable, so once the arena has grown to REBUILD_FACTOR
+ * times the size of a fresh tree the program is parsed from scratch.
+ * Syntax errors from a reparse go nowhere, same as IncrementalLexer drops its lexical errors.
+ */
+final class IncrementalParser {
+    private static final int REBUILD_FACTOR = 2;
+
+    private final IncrementalLexer tokens;
+    private final SymbolTable table;
+    private NodeArena ast;
+    private StNode root;
+    private int freshSize; // nodes in the arena after the last parse from scratch
+
+    /**
+     * What an edit did to the tree
+     * root is the tree now, reparsed the node that went in place of the old one (root after a whole program parse, null when
+     * the edit didn't change any tokens) and replaced the old statements, lists and functions the edit touched, gone from the tree
+     */
+    record Reparse(StNode root, StNode reparsed, Set<StNode> replaced) {}
+
+    IncrementalParser(String source, NamePool names) {
+        this.tokens = new IncrementalLexer(source, names);
+        this.table = new SymbolTable(names);
+        parseFresh();
+    }
+
+    StNode root() {
+        return root;
+    }
+
+    IncrementalLexer tokens() {
+        return tokens;
+    }
+
+    /**
+     * Replaces removed chars at offset with inserted and brings the tree up to date
+     * @return the new root and what was parsed again, so later phases can redo just that
+     */
+    Reparse edit(int offset, int removed, String inserted) {
+        // where the edit ends in the old text, everything from there on moves with it
+        LineMap before = tokens.lines();
+        int oldLine = before.line(offset + removed);
+        int oldCol = before.col(offset + removed);
+
+        int count = tokens.size();
+        IncrementalLexer.Change c = tokens.edit(offset, removed, inserted);
+        LineMap after = tokens.lines();
+        int end = offset + inserted.length();
+        ast.shiftPositions(oldLine, oldCol, after.line(end) - oldLine, after.col(end) - oldCol);
+        ast.shiftTokens(c.from(), c.removed(), c.inserted(), count);
+        root = ast.node(root.id()); // a view copies the position out, so it needs making again
+        if (c.removed() == 0 && c.inserted() == 0) return new Reparse(root, null, Set.of()); // only whitespace or comments
+
+        StNode old = root;
+        if (ast.size() > REBUILD_FACTOR * freshSize) {
+            parseFresh();
+            return new Reparse(root, root, Set.of(old));
+        }
+
+        // the new tokens are [from, to), everything either side is as it was
+        int from = c.from();
+        int to = c.from() + c.inserted();
+        List<Integer> path = enclosing(from, to);
+        for (int k = path.size() - 1; k > 0; k--) {
+            StNodeKind kind = ast.kind(path.get(k));
+            if (kind != StNodeKind.NSTATS && kind != StNodeKind.NFUND) continue;
+            Reparse r = reparse(path.get(k - 1), path.get(k), from, to);
+            if (r != null) return r;
+        }
+
+        // nothing smaller held the edit, the whole program again with everything it didn't touch kept
+        Map<Integer, Integer> reusable = new HashMap<>();
+        Set<StNode> replaced = new HashSet<>();
+        replaced.add(old);
+        collect(old.id(), from, to, reusable, replaced);
+        root = inPlaceFirst(0, () -> parser(0).reparseProgram(reusable));
+        ast.segment(root.id());
+        return new Reparse(root, root, replaced);
+    }
+
+    private void parseFresh() {
+        ast = new NodeArena();
+        ast.reserve(tokens.size());
+        root = Nesting.call(Nesting.depth(tokens.from(0), 0, tokens.size()), () -> parser(0).parseProgram());
+        freshSize = ast.size();
+        ast.segment(root.id());
+    }
+
+    // a parser from token `from` into the tree's arena, its syntax errors aren't kept
+    private Parser parser(int from) {
+        TokenStream ts = new TokenStream(tokens.from(from), from);
+        return new Parser(ts, table, new ErrorReporter(new OutputController()), ast);
+    }
+
+    /**
+     * Runs a reparse from token `from` on the caller's stack, which nearly always has room, and if it overflows runs it again on
+     * a stack sized for how deep the tokens from there on nest (see Nesting)
+     * Counting that first would cost as much as a reparse that keeps most of the tree. What the overflowed one left in the arena
+     * is unreachable, and the kept nodes it had put under new parents are put under the ones the second run makes.
+     * parseFresh counts first instead, a parse from scratch costs more than the count and the classes may not be loaded yet.
+     */
+    private <T> T inPlaceFirst(int from, Supplier<T> reparse) {
+        try {
+            return reparse.get();
+        } catch (StackOverflowError e) {
+            return Nesting.onThread(Nesting.depth(tokens.from(from), from, tokens.size()), reparse);
+        }
+    }
+
+    // where a reparse of a statement list or function stopped
+    private record Reparsed(StNode node, int stoppedAt) {}
+
+    // the statement list or function n parsed again, null when it no longer ends where it did
+    private Reparse reparse(int parent, int n, int from, int to) {
+        Map<Integer, Integer> reusable = new HashMap<>();
+        Set<StNode> replaced = new HashSet<>();
+        replaced.add(ast.node(n));
+        collect(n, from, to, reusable, replaced);
+
+        int start = ast.tokenFrom(n);
+        boolean list = ast.kind(n) == StNodeKind.NSTATS;
+        Reparsed r = inPlaceFirst(start, () -> {
+            TokenStream ts = new TokenStream(tokens.from(start), start);
+            Parser p = new Parser(ts, table, new ErrorReporter(new OutputController()), ast);
+            StNode s = list ? p.reparseStats(reusable) : p.reparseFunc(reusable);
+            return new Reparsed(s, ts.position());
+        });
+        StNode now = r.node();
+
+        // an if only parses its statements when there are some, so an emptied list has to go back to the statement
+        if (r.stoppedAt() != ast.tokenTo(n)) return null;
+        if (list && now.isLeaf() != (ast.firstChild(n) == NodeArena.NONE)) return null;
+
+        ast.replace(parent, n, now.id());
+        ast.rebase(n, now.id());
+        return new Reparse(root, now, replaced);
+    }
+
+    // root down to the innermost statement, list or function holding all of [from, to)
+    private List<Integer> enclosing(int from, int to) {
+        List<Integer> path = new ArrayList<>();
+        int n = root.id();
+        while (n != NodeArena.NONE) {
+            path.add(n);
+            int next = NodeArena.NONE;
+            for (int c = ast.firstChild(n); c != NodeArena.NONE && next == NodeArena.NONE; c = ast.nextSibling(c)) {
+                StNodeKind kind = ast.kind(c);
+                if (kind == StNodeKind.NFUNCS || kind == StNodeKind.NMAIN) {
+                    // these two don't note their own tokens, go straight to the function or statement list under them
+                    int in = holding(c, from, to);
+                    if (in != NodeArena.NONE) {
+                        path.add(c);
+                        next = in;
+                    }
+                } else if (holds(c, from, to)) {
+                    next = c;
+                }
+            }
+            n = next;
+        }
+        return path;
+    }
+
+    // the child of n that holds the edit, NONE if none does
+    private int holding(int n, int from, int to) {
+        for (int c = ast.firstChild(n); c != NodeArena.NONE; c = ast.nextSibling(c)) {
+            if (holds(c, from, to)) return c;
+        }
+        return NodeArena.NONE;
+    }
+
+    /**
+     * Does n hold the whole edit with its first two tokens before it and the token after it untouched
+     * The parser above may have looked at n's first token and the one after it before starting on n (main tells a declaration
+     * from a statement by the : after the name), so those have to be untouched too, unless n comes straight after a begin: a
+     * function or main body goes into its statements without looking
+     */
+    private boolean holds(int n, int from, int to) {
+        int a = ast.tokenFrom(n);
+        if (a < 0 || ast.tokenTo(n) < to) return false;
+        return a + 1 < from || (a > 0 && a <= from && tokens.type(a - 1) == TokenType.TBEGN);
+    }
+
+    // does n end before the edit without the parser having looked into it
+    // (one whose last tokens were taken out moves back to end right on the edit, that doesn't count)
+    private boolean before(int n, int from) {
+        return ast.tokenTo(n) < from && ast.tokenSeen(n) <= from;
+    }
+
+    /**
+     * Sorts the statements and functions under n into ones the edit didn't touch, which go in reusable by first token, and ones
+     * it did, which go in replaced and are looked inside in turn
+     * One that ends before the edit also needs every token the parser looked at to get it untouched, see NodeArena.shiftTokens.
+     * An NUNDEF is never kept: what error recovery makes of the tokens depends on where the parser was, a function that failed
+     * on its first token and a statement that did look the same
+     */
+    private void collect(int n, int from, int to, Map<Integer, Integer> reusable, Set<StNode> replaced) {
+        Deque<Integer> todo = new ArrayDeque<>(); // nodes still to look inside, a deep tree would overflow the stack recursing
+        todo.push(n);
+        while (!todo.isEmpty()) {
+            for (int c = ast.firstChild(todo.pop()); c != NodeArena.NONE; c = ast.nextSibling(c)) {
+                int a = ast.tokenFrom(c);
+                if (a == NodeArena.NONE) {
+                    todo.push(c);
+                } else if (a == NodeArena.STALE) {
+                    replaced.add(ast.node(c)); // the edit went through its first or last token
+                    todo.push(c);
+                } else if (ast.kind(c) == StNodeKind.NUNDEF) {
+                    replaced.add(ast.node(c));
+                } else if (ast.kind(c) != StNodeKind.NSTATS && (before(c, from) || a >= to)) {
+                    reusable.put(a, c);
+                } else if (ast.kind(c) == StNodeKind.NSTATS && (before(c, from) || a >= to)) {
+                    todo.push(c); // its statements are kept, the list itself is made again
+                } else {
+                    replaced.add(ast.node(c));
+                    todo.push(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Checks IncrementalParser against parsing from scratch, run with: java IncrementalParserTest [edits per sample] [random sources]
+ *
+ * Random edits are made to the sample programs and to small random sources made of statement pieces, and after every edit
+ * the incrementally kept tree has to print the same as a fresh parse of the new text: every node's kind, lexeme, line:col
+ * and which child sits in each slot. Prints the edit and the first node that differs and exits with 1.
+ * Deeply nested programs need a bigger stack, -Xss64m is plenty for the samples.
+ */
+final class IncrementalParserTest {
+    // what edits put in
+    private static final String[] SNIPS = {
+        "x = 1;", " ", "\n", "if (a < b) y = 2; end", "end", ";", "+ 3", "(", ")", "begin", "else", ":", "t", "7", "/--", "\"",
+        "func g(a : integer) : integer begin return a; end", "repeat (t = 1) t *= 2; until t > 3", "Out << Line;",
+        "for (i=0; i<2) x=1; end", "Out << x << Line;", "main", "x : integer", "CD25 p", "end CD25 p", "<", "if(y)else",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int edits = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int sources = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int runs = 0;
+        Random rnd = new Random(19);
+        for (String f : new String[] { "program1.txt", "program2.txt", "program3.txt", "program4.txt" }) {
+            Path p = Path.of(f);
+            if (!Files.exists(p)) continue;
+            if (!run(Files.readString(p), rnd, edits)) System.exit(1);
+            runs++;
+        }
+        for (int i = 0; i < sources; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = rnd.nextInt(8);
+            for (int k = 0; k < n; k++) sb.append(SNIPS[rnd.nextInt(SNIPS.length)]).append(rnd.nextBoolean() ? " " : "\n");
+            if (!run(sb.toString(), rnd, 20)) System.exit(1);
+            runs++;
+        }
+        System.out.println("ok, " + runs + " sources");
+    }
+
+    // makes random edits to text, false (after printing why) as soon as a tree differs from a fresh parse
+    static boolean run(String text, Random rnd, int edits) {
+        IncrementalParser ip = new IncrementalParser(text, new NamePool());
+        for (int e = 0; e < edits; e++) {
+            String cur = ip.tokens().text();
+            int len = cur.length();
+            int off = rnd.nextInt(len + 1), rem = 0;
+            String ins = "";
+            switch (rnd.nextInt(4)) {
+                case 0 -> rem = Math.min(len - off, rnd.nextInt(12));
+                case 1 -> ins = SNIPS[rnd.nextInt(SNIPS.length)];
+                case 2 -> {
+                    int s = rnd.nextInt(len + 1);
+                    ins = cur.substring(s, Math.min(len, s + 1 + rnd.nextInt(40)));
+                }
+                default -> {
+                    rem = Math.min(len - off, rnd.nextInt(4));
+                    ins = SNIPS[rnd.nextInt(SNIPS.length)];
+                }
+            }
+            String expect = cur.substring(0, off) + ins + cur.substring(off + rem);
+            IncrementalParser.Reparse r = ip.edit(off, rem, ins);
+
+            String got = dump(r.root()), want = fresh(expect);
+            if (!got.equals(want)) {
+                System.out.println("FAIL: new IncrementalParser(\"" + escape(cur) + "\").edit(" + off + ", " + rem + ", \"" + escape(ins) + "\")");
+                String[] g = got.split("\n"), w = want.split("\n");
+                for (int i = 0; i < Math.max(g.length, w.length); i++) {
+                    String gi = (i < g.length) ? g[i] : "<none>", wi = (i < w.length) ? w[i] : "<none>";
+                    if (gi.equals(wi)) continue;
+                    System.out.println("  node " + i + "\n   incremental " + gi + "\n   fresh       " + wi);
+                    break;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fresh(String text) {
+        NamePool names = new NamePool();
+        TokenStream ts = new TokenStream(new Lexer(new SourceCursor(text), new OutputController(), names));
+        return dump(new Parser(ts, new SymbolTable(names), new ErrorReporter(new OutputController())).parseProgram());
+    }
+
+    // the tree a node a line, preorder, without recursing so deep trees print too
+    static String dump(StNode root) {
+        StringBuilder sb = new StringBuilder();
+        Deque<StNode> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            StNode n = stack.pop();
+            int d = depths.pop();
+            List<StNode> ch = n.children();
+            sb.append(d).append(' ').append(n.kind).append(' ').append(n.lexeme).append(' ').append(n.line).append(':').append(n.col);
+            for (int k = 0; k < Ast.slotCount(n.kind); k++) sb.append(" s").append(ch.indexOf(n.slot(k)));
+            sb.append('\n');
+            for (int i = ch.size() - 1; i >= 0; i--) {
+                stack.push(ch.get(i));
+                depths.push(d + 1);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\t", "\\t");
+    }
+}
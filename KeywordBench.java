@@ -0,0 +1,127 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Times keyword and operator recognition against the map lookups they replaced, run with: java KeywordBench [words]
+ *
+ * Lexer.keywordSlot runs straight on the source chars. The old way made the word a String out of one String per char, lower
+ * cased it and asked a Map twice. Both go over the same words: a keyword-heavy run (every keyword, in any case) and an
+ * identifier-heavy one (random names, some only a char off a keyword so the hash hits a slot and has to compare). Two-char
+ * operators are done the same way, Lexer.twoCharOp against a Map keyed by the two chars as a String. Reports the best of
+ * several rounds in ns and bytes allocated per lookup.
+ */
+final class KeywordBench {
+    private static final String[] KEYWORDS = {
+        "cd25", "constants", "types", "is", "arrays", "main", "begin", "end", "array", "of", "func", "void", "const", "integer", "real",
+        "boolean", "for", "repeat", "until", "if", "else", "in", "out", "line", "return", "not", "and", "or", "xor", "true", "false",
+    };
+    private static final TokenType[] TYPES = {
+        TokenType.TCD25, TokenType.TCONS, TokenType.TTYPS, TokenType.TTTIS, TokenType.TARRS, TokenType.TMAIN, TokenType.TBEGN, TokenType.TTEND,
+        TokenType.TARAY, TokenType.TTTOF, TokenType.TFUNC, TokenType.TVOID, TokenType.TCNST, TokenType.TINTG, TokenType.TREAL, TokenType.TBOOL,
+        TokenType.TTFOR, TokenType.TREPT, TokenType.TUNTL, TokenType.TIFTH, TokenType.TELSE, TokenType.TINPT, TokenType.TOUTP, TokenType.TOUTL,
+        TokenType.TRETN, TokenType.TNOTT, TokenType.TTAND, TokenType.TTTOR, TokenType.TTXOR, TokenType.TTRUE, TokenType.TFALS,
+    };
+    private static final String OP_CHARS = "=+-*/<>,[]()%^:;.!";
+
+    // the old tables, as they were
+    private static final Map<String, TokenType> OLD_KEYWORDS = new HashMap<>();
+    private static final Map<String, TokenType> OLD_TWO_CHAR_OPS = Map.ofEntries(
+        Map.entry(">>", TokenType.TGRGR), Map.entry("<<", TokenType.TLSLS), Map.entry("<=", TokenType.TLEQL),
+        Map.entry(">=", TokenType.TGEQL), Map.entry("!=", TokenType.TNEQL), Map.entry("==", TokenType.TEQEQ),
+        Map.entry("+=", TokenType.TPLEQ), Map.entry("-=", TokenType.TMNEQ), Map.entry("*=", TokenType.TSTEQ),
+        Map.entry("/=", TokenType.TDVEQ));
+
+    static {
+        for (int k = 0; k < KEYWORDS.length; k++) OLD_KEYWORDS.put(KEYWORDS[k], TYPES[k]);
+    }
+
+    public static void main(String[] args) {
+        int words = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        Random rnd = new Random(4);
+        List<String> keywordHeavy = new ArrayList<>(), identifierHeavy = new ArrayList<>();
+        for (int i = 0; i < words; i++) {
+            keywordHeavy.add(randomCase(KEYWORDS[rnd.nextInt(KEYWORDS.length)], rnd));
+            identifierHeavy.add(rnd.nextInt(4) == 0 ? nearMiss(KEYWORDS[rnd.nextInt(KEYWORDS.length)], rnd) : identifier(rnd));
+        }
+        words("keyword-heavy", keywordHeavy);
+        words("identifier-heavy", identifierHeavy);
+
+        char[] ops = new char[2 * words];
+        for (int i = 0; i < ops.length; i++) ops[i] = OP_CHARS.charAt(rnd.nextInt(OP_CHARS.length()));
+        report("two-char ops new", words, () -> {
+            int hits = 0;
+            for (int i = 0; i < ops.length; i += 2) if (Lexer.twoCharOp(ops[i], ops[i + 1]) != null) hits++;
+            return hits;
+        });
+        report("two-char ops old", words, () -> {
+            int hits = 0;
+            for (int i = 0; i < ops.length; i += 2) if (OLD_TWO_CHAR_OPS.get("" + ops[i] + ops[i + 1]) != null) hits++;
+            return hits;
+        });
+    }
+
+    // every word laid end to end in one char array, as the lexer sees them in the source
+    private static void words(String what, List<String> words) {
+        String all = String.join(" ", words);
+        char[] src = all.toCharArray();
+        int[] from = new int[words.size()], len = new int[words.size()];
+        for (int i = 0, at = 0; i < words.size(); at += len[i++] + 1) {
+            from[i] = at;
+            len[i] = words.get(i).length();
+        }
+        report(what + " new", words.size(), () -> {
+            int hits = 0;
+            for (int i = 0; i < from.length; i++) if (Lexer.keywordSlot(src, from[i], len[i]) >= 0) hits++;
+            return hits;
+        });
+        report(what + " old", words.size(), () -> {
+            int hits = 0;
+            for (int i = 0; i < from.length; i++) {
+                List<String> buff = new ArrayList<>();
+                for (int k = from[i]; k < from[i] + len[i]; k++) buff.add(Character.toString(src[k]));
+                if (OLD_KEYWORDS.containsKey(String.join("", buff).toLowerCase()) && OLD_KEYWORDS.get(String.join("", buff).toLowerCase()) != null) hits++;
+            }
+            return hits;
+        });
+    }
+
+    private static void report(String what, int n, java.util.function.IntSupplier run) {
+        long bestNs = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+        int hits = 0;
+        for (int r = 0; r < 13; r++) { // the first few warm up
+            long b0 = allocated(), t0 = System.nanoTime();
+            hits = run.getAsInt();
+            long t1 = System.nanoTime(), b1 = allocated();
+            if (r < 3) continue;
+            bestNs = Math.min(bestNs, t1 - t0);
+            bestBytes = Math.min(bestBytes, b1 - b0);
+        }
+        System.out.printf("%-22s %d hits, %.1f ns/lookup, %.1f bytes/lookup%n", what, hits, (double) bestNs / n, (double) bestBytes / n);
+    }
+
+    private static String randomCase(String s, Random rnd) {
+        StringBuilder sb = new StringBuilder(s);
+        for (int i = 0; i < sb.length(); i++) if (rnd.nextBoolean()) sb.setCharAt(i, Character.toUpperCase(sb.charAt(i)));
+        return sb.toString();
+    }
+
+    // a keyword with a middle char changed, same first char, last char and length
+    private static String nearMiss(String kw, Random rnd) {
+        if (kw.length() < 3) return kw + "x";
+        StringBuilder sb = new StringBuilder(kw);
+        sb.setCharAt(1 + rnd.nextInt(kw.length() - 2), 'q');
+        return sb.toString();
+    }
+
+    private static String identifier(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        int n = 1 + rnd.nextInt(12);
+        for (int i = 0; i < n; i++) sb.append((i > 0 && rnd.nextInt(5) == 0) ? (char) ('0' + rnd.nextInt(10)) : (char) ('a' + rnd.nextInt(26)));
+        return sb.toString();
+    }
+
+    // bytes this thread has allocated so far
+    static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
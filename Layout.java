@@ -0,0 +1,103 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where everything in a program lives in memory, the one place SemanticAnalyzer and CodeGenerator both get it from
+ *
+ * There are three areas, each addressed off its own base register: constants off b0, globals off b1 and the current function's
+ * frame off b2. Every variable and parameter takes one word, an array is a descriptor in its slot with the elements on the heap,
+ * so a slot never depends on its type. Inside an array it does: the step from one element to the next and where each field
+ * sits in a struct were worked out when the type was made (see Type), and stride and fieldOffset just hand them out.
+ *
+ * The analyzer hands out global and frame slots as it declares things, so a frame ends up exactly the size of what was
+ * declared in it and the code generator allocates that rather than counting declarations again. Frames can be laid out from
+ * several threads at once (see SemanticAnalyzer.checkInParallel), each one only by the thread checking its function.
+ * Constants are placed the first time the code asks for one, so they sit in the order the code uses them.
+ */
+final class Layout {
+    static final int WORD_BYTES = 8;
+    static final int CONSTS = 0, GLOBALS = 1, FRAME = 2; // base register of each area
+
+    private int globalsNext = 0; // bytes from b1
+    private final Map<Integer, Frame> frames = new ConcurrentHashMap<>(); // by the node of the function or main it belongs to
+
+    private final Map<String, Integer> constPool = new LinkedHashMap<>();
+    private int constNext = 0; // bytes from b0
+
+    // one function's (or main's) frame, locals go up from +16 past the return linkage and params down from -8
+    static final class Frame {
+        private int localsNext = 16;
+        private int paramsNext = -8;
+
+        // the next local's offset from b2
+        int local() {
+            int off = localsNext;
+            localsNext += WORD_BYTES;
+            return off;
+        }
+
+        // the next param's offset from b2
+        int param() {
+            int off = paramsNext;
+            paramsNext -= WORD_BYTES;
+            return off;
+        }
+
+        // words of locals, what the function has to ALLOC
+        int localWords() {
+            return (localsNext - 16) / WORD_BYTES;
+        }
+    }
+
+    // the next global's offset from b1
+    int global() {
+        int off = globalsNext;
+        globalsNext += WORD_BYTES;
+        return off;
+    }
+
+    int globalWords() {
+        return globalsNext / WORD_BYTES;
+    }
+
+    // a fresh frame for the function or main at node n, replacing any it had
+    Frame newFrame(StNode n) {
+        Frame f = new Frame();
+        frames.put(n.id(), f);
+        return f;
+    }
+
+    // the frame laid out for n, an empty one if nothing was declared for it
+    Frame frame(StNode n) {
+        Frame f = frames.get(n.id());
+        return (f != null) ? f : new Frame();
+    }
+
+    // words from one element of the array to the next
+    int stride(Type.Array a) {
+        return a.stride();
+    }
+
+    // words from the start of the struct to the field, -1 for a field it doesn't have
+    int fieldOffset(Type.Struct s, String field) {
+        return s.offset(field);
+    }
+
+    // offset from b0 of a real constant, placed the first time it's asked for
+    int floatConst(double d) {
+        return constant("F:" + Double.toString(d));
+    }
+
+    // offset from b0 of a string constant
+    int stringConst(String s) {
+        return constant("S:" + s);
+    }
+
+    private int constant(String key) {
+        return constPool.computeIfAbsent(key, k -> {
+            int off = constNext;
+            constNext += WORD_BYTES;
+            return off;
+        });
+    }
+}
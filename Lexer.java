@@ -1,430 +1,349 @@
-import java.io.*;
-import java.util.*;
-
-public final class Lexer {
-
-    private static final class Pos { final int line, col; Pos(int l, int c){ this.line=l; this.col=c; } } // to keep a more accurate position of token lines and cols
-    private final Deque<Pos> posStack = new ArrayDeque<>(8); // used to pop the token on the stack so we can go back even if we cross new lines
-    private final PushbackReader in; // java class that reads characters one at a time from another reader
-    private int line = 1; // starting on line 1
-    private int col = 0; // starting at column 0
-    private int tokLine = 1; // keeps track of a specific tokens line number
-    private int tokCol = 0; // keeps track of a specific tokens col number
-    private int state; // the state we are in
-    private List<String> buff; 
-    private OutputController oc;
+import java.util.Arrays;
+
+public final class Lexer implements TokenSource {
 
-    // state constants for the state machine
-    private final int READY = 0;
-    private final int WORD = 1;
-    private final int DIGIT = 2;
-    private final int REAL = 3;
-    private final int OP = 4;
-    private final int STRING = 5;
+    private final SourceCursor in; // reads characters one at a time straight out of the source text
+    private final char[] src; // the same source text, for keyword checks and interning straight off the chars
+    private final LineMap lines; // works out line and col from an offset, only when a token or error needs them
+    private final NamePool names; // every identifier gets interned here
+    private int tokStart = -1; // offset of the first char of the current token, -1 until the first token is found
+    private int tokLength = 0; // length of the lexeme of the token just scanned
+    private int tokNameId = -1; // NamePool id of the token just scanned if it was an identifier, else -1
+    private int eofReads = 0; // times we have read past the end, given to the listing with the T_EOF
+    private OutputController oc;
 
     // the big 3 of the compiler world
     // the big keywords
-    private static final Map<String, TokenType> KEYWORDS = Map.ofEntries(
-        Map.entry("cd25", TokenType.TCD25),
-        Map.entry("constants", TokenType.TCONS),
-        Map.entry("types", TokenType.TTYPS),
-        Map.entry("is", TokenType.TTTIS),
-        Map.entry("arrays", TokenType.TARRS),
-        Map.entry("main", TokenType.TMAIN),
-        Map.entry("begin", TokenType.TBEGN),
-        Map.entry("end", TokenType.TTEND),
-        Map.entry("array", TokenType.TARAY),
-        Map.entry("of", TokenType.TTTOF),
-        Map.entry("func", TokenType.TFUNC),
-        Map.entry("void", TokenType.TVOID),
-        Map.entry("const", TokenType.TCNST),
-        Map.entry("integer", TokenType.TINTG),
-        Map.entry("real", TokenType.TREAL),
-        Map.entry("boolean", TokenType.TBOOL),
-        Map.entry("for", TokenType.TTFOR),
-        Map.entry("repeat", TokenType.TREPT),
-        Map.entry("until", TokenType.TUNTL),
-        Map.entry("if", TokenType.TIFTH),
-        Map.entry("else", TokenType.TELSE),
-        Map.entry("in", TokenType.TINPT),
-        Map.entry("out", TokenType.TOUTP),
-        Map.entry("line", TokenType.TOUTL),
-        Map.entry("return", TokenType.TRETN),
-        Map.entry("not", TokenType.TNOTT),
-        Map.entry("and", TokenType.TTAND),
-        Map.entry("or", TokenType.TTTOR),
-        Map.entry("xor", TokenType.TTXOR),
-        Map.entry("true", TokenType.TTRUE),
-        Map.entry("false", TokenType.TFALS)
-    );
-
-    // the big singles
-    private static final Map<String, TokenType> ONE_CHAR_OPS = Map.ofEntries(
-        Map.entry("=", TokenType.TEQUL),
-        Map.entry("+", TokenType.TPLUS),
-        Map.entry("-", TokenType.TMINS),
-        Map.entry("*", TokenType.TSTAR),
-        Map.entry("/", TokenType.TDIVD),
-        Map.entry("<", TokenType.TLESS),
-        Map.entry(">", TokenType.TGRTR),
-        Map.entry(",", TokenType.TCOMA),
-        Map.entry("[", TokenType.TLBRK),
-        Map.entry("]", TokenType.TRBRK),
-        Map.entry("(", TokenType.TLPAR),
-        Map.entry(")", TokenType.TRPAR),
-        Map.entry("%", TokenType.TPERC),
-        Map.entry("^", TokenType.TCART),
-        Map.entry(":", TokenType.TCOLN),
-        Map.entry(";", TokenType.TSEMI),
-        Map.entry(".", TokenType.TDOTT)
-    );
-
-    // the big doubles
-    private static final Map<String, TokenType> TWO_CHAR_OPS = Map.ofEntries(
-        Map.entry(">>", TokenType.TGRGR),
-        Map.entry("<<", TokenType.TLSLS),
-        Map.entry("<=", TokenType.TLEQL),
-        Map.entry(">=", TokenType.TGEQL),
-        Map.entry("!=", TokenType.TNEQL),
-        Map.entry("==", TokenType.TEQEQ),
-        Map.entry("+=", TokenType.TPLEQ),
-        Map.entry("-=", TokenType.TMNEQ),
-        Map.entry("*=", TokenType.TSTEQ),
-        Map.entry("/=", TokenType.TDVEQ)
-    );
-
-    public Lexer(Reader r, OutputController oc) throws IOException {
-        this.in = new PushbackReader(new BufferedReader(r), 2); // wraps the incoming reader in a bufferedreader for efficient reading, then wraps that in a pushbackreader with a buffer size of 2
-        this.oc = oc;                          // allows us to push back tokens onto the buffer to be read next 
-                                                                // e.g. /==, read /, read =, read =. but /== isnt a token, push that last token onto the buffer as it probably starts the next token and process just /=
-        this.state = READY; // begin in the ready state                                 
+    private static final String[] KEYWORD_NAMES = {
+        "cd25", "constants", "types", "is", "arrays", "main", "begin", "end",
+        "array", "of", "func", "void", "const", "integer", "real", "boolean",
+        "for", "repeat", "until", "if", "else", "in", "out", "line",
+        "return", "not", "and", "or", "xor", "true", "false"
+    };
+    private static final TokenType[] KEYWORD_TYPES = {
+        TokenType.TCD25, TokenType.TCONS, TokenType.TTYPS, TokenType.TTTIS, TokenType.TARRS, TokenType.TMAIN, TokenType.TBEGN, TokenType.TTEND,
+        TokenType.TARAY, TokenType.TTTOF, TokenType.TFUNC, TokenType.TVOID, TokenType.TCNST, TokenType.TINTG, TokenType.TREAL, TokenType.TBOOL,
+        TokenType.TTFOR, TokenType.TREPT, TokenType.TUNTL, TokenType.TIFTH, TokenType.TELSE, TokenType.TINPT, TokenType.TOUTP, TokenType.TOUTL,
+        TokenType.TRETN, TokenType.TNOTT, TokenType.TTAND, TokenType.TTTOR, TokenType.TTXOR, TokenType.TTRUE, TokenType.TFALS
+    };
+
+    // perfect hash over the keywords, no two keywords share the same first char, last char and length
+    // so hashing those three gives every keyword its own slot, a lookup is then one slot and one compare, no strings made
+    private static final int KW_SLOTS = 64;
+    private static final String[] KW_NAME = new String[KW_SLOTS];
+    private static final TokenType[] KW_TYPE = new TokenType[KW_SLOTS];
+
+    // every char falls in one of these classes, the two tables below are indexed [state][class]
+    private static final int C_OTHER = 0, C_LETTER = 1, C_DIGIT = 2, C_SPACE = 3, C_NL = 4, C_CR = 5, C_SLASH = 6,
+                             C_DASH = 7, C_STAR = 8, C_DOT = 9, C_QUOTE = 10, C_BANG = 11, C_OP = 12, C_EOF = 13, CLASSES = 14;
+    private static final byte[] CLASS = new byte[128];
+
+    // SKIP runs between tokens, its states are below 8 and anything 8 or up is a way out
+    private static final int T_START = 0, T_SLASH = 1, T_SLASH_DASH = 2, T_SLASH_STAR = 3, T_LINE = 4, T_BLOCK0 = 5, T_BLOCK1 = 6, T_BLOCK2 = 7;
+    private static final int X_TOKEN = 8;   // the char just read starts a token
+    private static final int X_EOF = 9;     // ran out of source
+    private static final int X_SLASH = 10;  // the / before the char just read is a token, give the char back
+    private static final int X_SLASH2 = 11; // same, but give back the char before it as well
+    private static final byte[][] SKIP = new byte[8][CLASSES];
+
+    // SCAN runs inside a token, its states are below 6 and anything 6 or up ends the token
+    private static final int K_WORD = 0, K_INT = 1, K_INT_DOT = 2, K_REAL = 3, K_STRING = 4, K_UNDEF = 5;
+    private static final int Y_BEFORE = 6;     // the token ended before the char just read, give it back
+    private static final int Y_BEFORE_DOT = 7; // ended before the . we read last time round, give both back
+    private static final int Y_WITH = 8;       // the char just read ends the token and belongs to it
+    private static final byte[][] SCAN = new byte[6][CLASSES];
+
+    // the big singles, indexed straight by the char
+    private static final TokenType[] ONE_CHAR_OPS = new TokenType[128];
+
+    // the big doubles, every one ends in =, < or >, so indexed by [which of those][first char]
+    private static final TokenType[][] TWO_CHAR_OPS = new TokenType[3][128];
+
+    // the lexeme of each operator token by token id, so an operator token never builds a string
+    private static final String[] OP_LEXEMES = new String[TokenType.values().length];
+
+    static {
+        for (int i = 0; i < KEYWORD_NAMES.length; i++) {
+            String kw = KEYWORD_NAMES[i];
+            int h = keywordHash(kw.charAt(0), kw.charAt(kw.length() - 1), kw.length());
+            if (KW_NAME[h] != null) { // only trips if someone adds a keyword that breaks the hash
+                throw new IllegalStateException("keyword hash collision: " + kw + " and " + KW_NAME[h]);
+            }
+            KW_NAME[h] = kw;
+            KW_TYPE[h] = KEYWORD_TYPES[i];
+        }
+
+        op("=", TokenType.TEQUL);  op("+", TokenType.TPLUS);  op("-", TokenType.TMINS);
+        op("*", TokenType.TSTAR);  op("/", TokenType.TDIVD);  op("<", TokenType.TLESS);
+        op(">", TokenType.TGRTR);  op(",", TokenType.TCOMA);  op("[", TokenType.TLBRK);
+        op("]", TokenType.TRBRK);  op("(", TokenType.TLPAR);  op(")", TokenType.TRPAR);
+        op("%", TokenType.TPERC);  op("^", TokenType.TCART);  op(":", TokenType.TCOLN);
+        op(";", TokenType.TSEMI);  op(".", TokenType.TDOTT);
+
+        op(">>", TokenType.TGRGR); op("<<", TokenType.TLSLS); op("<=", TokenType.TLEQL);
+        op(">=", TokenType.TGEQL); op("!=", TokenType.TNEQL); op("==", TokenType.TEQEQ);
+        op("+=", TokenType.TPLEQ); op("-=", TokenType.TMNEQ); op("*=", TokenType.TSTEQ);
+        op("/=", TokenType.TDVEQ);
+
+        // char classes, anything not set here (including every char past 127) is C_OTHER
+        for (int c = 'a'; c <= 'z'; c++) CLASS[c] = C_LETTER;
+        for (int c = 'A'; c <= 'Z'; c++) CLASS[c] = C_LETTER;
+        for (int c = '0'; c <= '9'; c++) CLASS[c] = C_DIGIT;
+        for (int c = 0; c < 128; c++) if (ONE_CHAR_OPS[c] != null) CLASS[c] = C_OP;
+        CLASS[' '] = C_SPACE;  CLASS['\t'] = C_SPACE;  CLASS['\n'] = C_NL;  CLASS['\r'] = C_CR;
+        CLASS['/'] = C_SLASH;  CLASS['-'] = C_DASH;  CLASS['*'] = C_STAR;  CLASS['.'] = C_DOT;
+        CLASS['"'] = C_QUOTE;  CLASS['!'] = C_BANG;
+
+        // between tokens: whitespace, /-- line comments and /** **/ block comments
+        fill(SKIP[T_START], X_TOKEN);
+        SKIP[T_START][C_SPACE] = T_START;  SKIP[T_START][C_NL] = T_START;  SKIP[T_START][C_CR] = T_START;
+        SKIP[T_START][C_SLASH] = T_SLASH;  SKIP[T_START][C_EOF] = X_EOF;
+        fill(SKIP[T_SLASH], X_SLASH);            // just a / after all
+        SKIP[T_SLASH][C_DASH] = T_SLASH_DASH;  SKIP[T_SLASH][C_STAR] = T_SLASH_STAR;
+        fill(SKIP[T_SLASH_DASH], X_SLASH2);      // /- then something else, still just a /
+        SKIP[T_SLASH_DASH][C_DASH] = T_LINE;
+        fill(SKIP[T_SLASH_STAR], X_SLASH2);      // /* then something else, still just a /
+        SKIP[T_SLASH_STAR][C_STAR] = T_BLOCK2;   // /** has 2 stars already, so /**/ is a whole comment
+        fill(SKIP[T_LINE], T_LINE);              // a line comment runs to a newline or EOF
+        SKIP[T_LINE][C_NL] = T_START;  SKIP[T_LINE][C_CR] = T_START;  SKIP[T_LINE][C_EOF] = T_START;
+        // block comments count stars, a / after 2 or more stars closes it, ****/ is fine too
+        fill(SKIP[T_BLOCK0], T_BLOCK0);  SKIP[T_BLOCK0][C_STAR] = T_BLOCK1;  SKIP[T_BLOCK0][C_EOF] = X_EOF;
+        fill(SKIP[T_BLOCK1], T_BLOCK0);  SKIP[T_BLOCK1][C_STAR] = T_BLOCK2;  SKIP[T_BLOCK1][C_EOF] = X_EOF;
+        fill(SKIP[T_BLOCK2], T_BLOCK0);  SKIP[T_BLOCK2][C_STAR] = T_BLOCK2;  SKIP[T_BLOCK2][C_EOF] = X_EOF;
+        SKIP[T_BLOCK2][C_SLASH] = T_START;
+
+        // inside a word, number, string or run of undefined chars
+        fill(SCAN[K_WORD], Y_BEFORE);  SCAN[K_WORD][C_LETTER] = K_WORD;  SCAN[K_WORD][C_DIGIT] = K_WORD;
+        fill(SCAN[K_INT], Y_BEFORE);  SCAN[K_INT][C_DIGIT] = K_INT;  SCAN[K_INT][C_DOT] = K_INT_DOT;
+        fill(SCAN[K_INT_DOT], Y_BEFORE_DOT);  SCAN[K_INT_DOT][C_DIGIT] = K_REAL; // 12. isn't a real, give the . back too
+        fill(SCAN[K_REAL], Y_BEFORE);  SCAN[K_REAL][C_DIGIT] = K_REAL;
+        fill(SCAN[K_STRING], K_STRING);  SCAN[K_STRING][C_QUOTE] = Y_WITH;  SCAN[K_STRING][C_NL] = Y_WITH;  SCAN[K_STRING][C_EOF] = Y_BEFORE;
+        fill(SCAN[K_UNDEF], Y_BEFORE);  SCAN[K_UNDEF][C_OTHER] = K_UNDEF; // undefined chars run until any char that could start something
     }
 
-    // for marking a tokens start line and col number
-    private void markTokenStart() {
-        tokLine = line;
-        tokCol = col;
+    private static void fill(byte[] row, int v) {
+        Arrays.fill(row, (byte) v);
     }
 
-    // for skipping whitespace
-    private static boolean isSpace(int c) {
-        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    // slots a keyword by its (lower case) first char, last char and length
+    private static int keywordHash(int first, int last, int len) {
+        return ((first * 59) ^ (last * 59) ^ len) & (KW_SLOTS - 1);
     }
 
-    // to identify the start of keywords and identifiers
-    private static boolean isLetter(int c) {
-        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    // registers an operator in the one or two char table
+    private static void op(String lexeme, TokenType tt) {
+        if (lexeme.length() == 1) {
+            ONE_CHAR_OPS[lexeme.charAt(0)] = tt;
+        } else {
+            TWO_CHAR_OPS[secondCharSlot(lexeme.charAt(1))][lexeme.charAt(0)] = tt;
+        }
+        OP_LEXEMES[tt.getId()] = lexeme;
     }
 
-    // to identify integers or real literals
-    private static boolean isDigit(int c) {
-        return (c >= '0' && c <= '9');
+    // which row of TWO_CHAR_OPS a second char belongs to, -1 if no double ends in it
+    private static int secondCharSlot(int c) {
+        return c == '=' ? 0 : c == '<' ? 1 : c == '>' ? 2 : -1;
     }
 
-    // as identifiers can contain letters and digits this is needed 
-    private static boolean isLetterOrDigit(int c) {
-        return isLetter(c) || isDigit(c);
+    // the double made by a followed by b, or null, package-private like keywordSlot so KeywordBench can time it on its own
+    static TokenType twoCharOp(int a, int b) {
+        int slot = secondCharSlot(b);
+        return (slot < 0 || a >= 128) ? null : TWO_CHAR_OPS[slot][a];
     }
 
-    // to indentify if its an operator char
-    private static boolean isOperatorChar(int c) {
-        return "=+-*/<>[],()%^:;.!".indexOf(c) >= 0;
+    /**
+     * Case insensitive keyword lookup run straight on the source chars of a word
+     * Letters and digits are the only chars in a word, and c | 0x20 lower cases a letter while leaving a digit alone
+     * @return the keyword slot in KW_NAME/KW_TYPE, or -1 if the word is an identifier
+     */
+    static int keywordSlot(char[] s, int from, int len) {
+        int h = keywordHash(s[from] | 0x20, s[from + len - 1] | 0x20, len);
+        String kw = KW_NAME[h];
+        if (kw == null || kw.length() != len) return -1;
+        for (int i = 0; i < len; i++) {
+            if ((s[from + i] | 0x20) != kw.charAt(i)) return -1;
+        }
+        return h;
     }
 
-    // to figure out when we need to stop reading an undefined char, i.e read until we find a valid char
-    private static boolean isStopForUndef(int c) {
-        return c == -1 || isSpace(c) || isLetterOrDigit(c) || isOperatorChar(c) || c == '"';
+    public Lexer(SourceCursor in, OutputController oc, NamePool names) {
+        this.in = in; // the cursor lets us push chars back to be read next, by just stepping its index back
+        this.src = in.array();
+        this.lines = in.lines();
+        this.names = names;
+        this.oc = oc; // e.g. /==, read /, read =, read =. but /== isnt a token, push that last token back as it probably starts the next token and process just /=
     }
 
-    // to read the next token
-    public Token nextToken() throws IOException {    
-        state = READY;
-        buff = new ArrayList<>();     // buffer to build the lexeme (Eg: reading CD25. buff = ["C", "D", "2", "5"])
-        Token token = null;
-        int c = 0;
-        
-        // loop until token is found, error or EOF (read returns -1)
-        while (token == null)  {
-            if (state == READY) {
-                c = runCommentState();         // skips WS/comments and returns first real char
-                if (c == -1) break;            // EOF
-                markTokenStart();              // mark a tokens start col and line number
-                token = runReadyState(c);      // then run the ready state
-            } else {
-                c = read();
-                switch (state) {
-                    case DIGIT:
-                        token = runDigitState(c);
-                        break;
-                    case REAL:
-                        token = runRealState(c);
-                        break;
-                    case WORD:
-                        token = runWordState(c);
-                        break;
-                    case OP:
-                        token = runOpState(c);
-                        break;
-                    case STRING:
-                        token = runStringState(c);
-                        break;
-                }
-            }
-            if (c == -1) { break; }     // EOF reached
-        }
-        //if (c == -1) { oc.commitBuffer(); } // need this check here again after the loop it was buggin when I had it above
-        return token != null ? token : new Token(TokenType.T_EOF, "", tokLine, tokCol);
+    private static int classOf(int c) {
+        return (c < 0) ? C_EOF : (c < 128) ? CLASS[c] : C_OTHER;
     }
 
-    /* Runs the logic for the READY state */
-    private Token runReadyState(int c) throws IOException {
-        if (isDigit(c)) {
-            state = DIGIT;
-            buff.add(Character.toString(c));
-            return null;
-        }
-        if (isLetter(c)) {
-            state = WORD;
-            buff.add(Character.toString(c));
-            return null;
-        }
-        if (ONE_CHAR_OPS.containsKey(Character.toString(c)) || c == '!') {
-            state = OP;
-            buff.add(Character.toString(c));
-            return null;
-        }
-        if (c == '\"') {
-            state = STRING;     // we do not include the "" in the string itself
-            return null;
-        }
+    // for marking a tokens start offset, the char that starts it has just been read
+    private void markTokenStart() {
+        tokStart = in.pos() - 1;
+    }
 
-        buff.add(Character.toString(c)); // the beginning undefined char
-        while (true) {
-            int x = read();          // we continue to read       
-            if (isStopForUndef(x)) { // until we find a char that is valid
-                unread(x);                  
-                break;
-            }
-            buff.add(Character.toString(x)); // otherwise continue adding undefined chars
-        }
-        oc.addError(new CompilerError("Lexical", "Unknown character, lexeme undefined.", tokLine, tokCol));
-        return new Token(TokenType.TUNDF, String.join("", buff), tokLine, tokCol);
+    // notes the lexeme length of the token we just finished, the lexeme itself is never built while scanning
+    private TokenType found(TokenType tt, int length) {
+        tokLength = length;
+        return tt;
     }
 
-    /* Runs the logic for the DIGIT state. */
-    private Token runDigitState(int c) throws IOException {
-        Token token = null;
+    // builds a lexical error pointing at the current token start
+    private CompilerError lexError(String message) {
+        return new CompilerError("Lexical", message, lines.line(tokStart), lines.col(tokStart));
+    }
 
-        if (isDigit(c)) {
-            buff.add(Character.toString(c));
-        }
-        else if (c == 46) {     // check if c is a period
-            int nc = read();
-            if (isDigit(nc)) {  
-                state = REAL;
-                buff.add(Character.toString(c));
-                buff.add(Character.toString(nc));
-            }
-            else {              // next char is not of real format, we found the end of the int token
-                unread(nc);
-                unread(c);
-                token = new Token(TokenType.TILIT, String.join("", buff), tokLine, tokCol);
-            }
-        }
-        else {                  // delimiter found, unread and return integer token
-            unread(c);
-            token = new Token(TokenType.TILIT, String.join("", buff), tokLine, tokCol);
-        }
-        return token;
+    // to read the next token as a Token object, lexeme and all
+    public Token nextToken() {
+        TokenType tt = scan();
+        return new Token(tt, lexeme(tt, tokStart, tokLength, tokNameId), lines.line(tokStart), lines.col(tokStart), tokStart, tokNameId);
     }
 
-    /* Runs the logic for the REAL state */
-    private Token runRealState(int c) throws IOException {
-        Token token = null;
-        if (isDigit(c)) {
-            buff.add(Character.toString(c));
-        }
-        else {
-            unread(c);
-            token = new Token(TokenType.TFLIT, String.join("", buff), tokLine, tokCol);
+    /**
+     * Scans the next token without making a Token or a lexeme String for it
+     * Where it starts, how long its lexeme is and its name id are left in tokenStart(), tokenLength() and tokenNameId() until the next scan
+     * This is what TokenBuffer fills its columns from
+     * @return the type of the token, T_EOF once the source runs out
+     */
+    public TokenType scan() {
+        tokNameId = -1;
+        TokenType tt = scanToken();
+
+        // the listing covers everything the token used up, and the EOF reads once there is nothing left
+        oc.listUpTo(in, in.pos());
+        if (tt == TokenType.T_EOF) {
+            oc.listEofReads(eofReads);
+            eofReads = 0;
         }
-        return token;  
+        return tt;
     }
 
-    /* Runs the logic for the WORD state */
-    private Token runWordState(int c) throws IOException {
-        Token token = null;
-        if (isLetterOrDigit(c)) {
-            buff.add(Character.toString(c));
-        }
-        // read char is classed as a delimiter therefore check keywords for lexeme
-        else if (KEYWORDS.containsKey(String.join("", buff).toLowerCase())) {
-            unread(c);
-            TokenType tt = KEYWORDS.get(String.join("", buff).toLowerCase());
-            token = new Token(tt, String.join("", buff), tokLine, tokCol);
-        }
-        // lexeme not found in keyword map therefore token must be an identifier
-        else {
-            unread(c);
-            token = new Token(TokenType.TIDEN, String.join("", buff), tokLine, tokCol);
+    private TokenType scanToken() {
+        // skip whitespace and comments, one table step per char
+        int c, s = T_START;
+        do {
+            c = read();
+            s = SKIP[s][classOf(c)];
+        } while (s < X_TOKEN);
+
+        if (s == X_EOF) return found(TokenType.T_EOF, 0); // EOF keeps the last token's start
+        if (s == X_SLASH2) { unread(c); in.unread('-'); c = '/'; } // the char before is a - or a *, either way just step back
+        else if (s == X_SLASH) { unread(c); c = '/'; }
+        markTokenStart();
+
+        switch (classOf(c)) {
+            case C_LETTER: return runScan(K_WORD);
+            case C_DIGIT: return runScan(K_INT);
+            case C_QUOTE: return runScan(K_STRING); // we do not include the "" in the string itself
+            case C_OTHER: return runScan(K_UNDEF);
+            case C_BANG: return bang();
+            default: return operator(c); // every single char op
         }
-        return token;
     }
 
-    /* Runs the logic for the OP state */
-    private Token runOpState(int c) throws IOException {
-        Token token = null;
-        char oc = buff.get(0).charAt(0); // get the char in the buffer
-        
-        if (oc == '!') { // ! by itself is undefined but != is defined
-            if (c == '=') { // we check if it has a = that follows it
-                return new Token(TokenType.TNEQL, "!=" , tokLine, tokCol); // if it does then its just TNEQL
-            } else {
-                unread(c);
-                this.oc.addError(new CompilerError("Lexical", "Unknown character, lexeme undefined.", tokLine, tokCol));
-                return new Token(TokenType.TUNDF, "!" , tokLine, tokCol); // but if it doesnt its undefined
+    /**
+     * Runs the SCAN table from a token's first state until it says the token is over
+     * The state we were in when it ended says what kind of token it was
+     */
+    private TokenType runScan(int s) {
+        int c, next;
+        while ((next = SCAN[s][classOf(c = read())]) < Y_BEFORE) s = next;
+        if (next == Y_BEFORE) unread(c);
+        else if (next == Y_BEFORE_DOT) { unread(c); in.unread('.'); }
+        int len = in.pos() - tokStart;
+
+        switch (s) {
+            case K_WORD: {
+                int kw = keywordSlot(src, tokStart, len);
+                if (kw >= 0) return found(KW_TYPE[kw], len);
+                // not in the keyword table so its an identifier, the pool hands out its id, only a brand new name makes a String
+                tokNameId = names.intern(src, tokStart, len);
+                return found(TokenType.TIDEN, len);
             }
+            case K_INT:
+            case K_INT_DOT:
+                return found(TokenType.TILIT, len);
+            case K_REAL:
+                return found(TokenType.TFLIT, len);
+            case K_STRING:
+                if (c == '"') return found(TokenType.TSTRG, len - 2); // lexeme is between the quotes
+                if (c == '\n') { // string cannot terminate with a newline, error
+                    oc.addLexError(lexError("Strings cannot terminate with newline."));
+                    return found(TokenType.TUNDF, len - 2);
+                }
+                oc.addLexError(lexError("Strings cannot terminate with EOF."));   // adds a lexical error to be reported in the listing file
+                return found(TokenType.TUNDF, len - 1);
+            default: // K_UNDEF
+                oc.addLexError(lexError("Unknown character, lexeme undefined."));
+                return found(TokenType.TUNDF, len);
         }
-        
-        String two = "" + oc + (char)c; // add the new char and the old char together e.g. buff : <, c : =, together <=
-        TokenType tt2 = TWO_CHAR_OPS.get(two); // try to get it in the map
-        if (tt2 != null) { // if it is in the map
-            return token = new Token(tt2, two, tokLine, tokCol); // add the token
-        }
-        unread(c); // if it aint in the map then unread c to read again afterwards
+    }
 
-        String one = String.valueOf(oc); // turn oc back into a string 
-        TokenType tt1 = ONE_CHAR_OPS.get(one); // get the lexeme
-        token = new Token(tt1, one, tokLine, tokCol); // return the token
-        return token;
+    // ! by itself is undefined but != is defined
+    private TokenType bang() {
+        int c = read();
+        if (c == '=') return found(TokenType.TNEQL, 2);
+        unread(c);
+        oc.addLexError(lexError("Unknown character, lexeme undefined."));
+        return found(TokenType.TUNDF, 1);
     }
 
-    /* Runs the logic for the STRING state */
-    private Token runStringState(int c) throws IOException {
-        Token token = null;
-        
-        if (c == -1) { // just in case for some reason an editor doesnt end with a new line, niche but it rounds it out
-            token = new Token(TokenType.TUNDF, String.join("", buff), tokLine, tokCol);
-            oc.addError(new CompilerError("Lexical", "Strings cannot terminate with EOF.", tokLine, tokCol));   // adds a lexical error to be reported in the listing file
-        }
-        else if (c == '\n') {                        // string cannot terminate with a newline, error
-            token = new Token(TokenType.TUNDF, String.join("", buff), tokLine, tokCol);
-            oc.addError(new CompilerError("Lexical", "Strings cannot terminate with newline.", tokLine, tokCol));
-        }
-        else if (c == '\"') {
-            token = new Token(TokenType.TSTRG, String.join("", buff), tokLine, tokCol);
-        }
-        else {
-            buff.add(Character.toString(c));    // add any character to the string
+    // an operator, two chars if the next one makes a double e.g. < then = is <=, otherwise just the one
+    private TokenType operator(int first) {
+        int c = read();
+        TokenType tt2 = twoCharOp(first, c);
+        if (tt2 != null) return found(tt2, 2);
+        unread(c); // if it aint in the table then unread c to read again afterwards
+        return found(ONE_CHAR_OPS[first], 1);
+    }
+
+    // where the last scanned token starts, its lexeme length and its name id
+    public int tokenStart() { return tokStart; }
+    public int tokenLength() { return tokLength; }
+    public int tokenNameId() { return tokNameId; }
+
+    // one past the last char the token used, its lexeme can be shorter (strings drop their quotes)
+    int tokenEnd() { return in.pos(); }
+
+    // the line/col lookup for this source, shared with whoever stores our tokens
+    public LineMap lines() { return lines; }
+
+    /**
+     * Rebuilds the lexeme of a scanned token from the source, only done when something actually wants the String
+     * Operators and lower case keywords hand back the table string and identifiers the pooled name, so those never allocate
+     * A string literal starts at its opening quote but its lexeme doesn't include it, nothing else can start with a quote
+     */
+    public String lexeme(TokenType tt, int start, int length, int nameId) {
+        if (nameId >= 0) return names.name(nameId);
+        String fixed = OP_LEXEMES[tt.getId()];
+        if (fixed != null) return fixed;
+        if (length == 0) return "";
+        if (in.charAt(start) == '"') start++;
+        if (tt.getId() >= TokenType.TCD25.getId() && tt.getId() <= TokenType.TFALS.getId()) { // keyword
+            String kw = KW_NAME[keywordHash(in.charAt(start) | 0x20, in.charAt(start + length - 1) | 0x20, length)];
+            if (in.regionMatches(start, kw)) return kw;
         }
-        return token;
+        return in.text(start, length);
     }
 
     /**
-     * Gets the next character from the pushback reader,
-     * Tracks the line and column count
+     * Gets the next character from the source cursor, -1 at the end
+     * Running into the end is counted, the listing shows a line break for each time the old lexer read past the end
      * @return the next char
-     * @throws IOException
      */
-    private int read() throws IOException {
+    private int read() {
         int c = in.read();
-
-        posStack.push(new Pos(line, col)); // when we read, we push the last position on to the stack 
-                                           // so if we need to backtrack across lines its actually accurate
-        if (c == '\n') {
-            line++;
-            col = 0;
-        } else if (c != -1) {
-            col++;
-        }
-        oc.addToBuffer(c);                  // add char to the listing file buffer
+        if (c < 0) eofReads++;
         return c;
     }
 
     /**
      * Puts the c char back into the stream so that the next call of read will read the same char again
-     * Steps everything back to the previously documented position
+     * Stepping the cursor back also steps the position back, even across new lines
      * @param c
-     * @throws IOException
      */
-    private void unread(int c) throws IOException {
-        if (c == -1) {
-            return;
-        }
-        in.unread(c); 
-
-        if (!posStack.isEmpty()) { // as long as the stack aint empty
-            Pos p = posStack.pop(); // we pop
-            this.line = p.line; // and return the line and col numbers to the last position
-            this.col  = p.col;
-        }
-        oc.removeLastFromBuffer();  // removes last added element from the listing file buffer
-    }
-
-    /**
-     * Handles the white space/comments between tokens
-     * @return the next valid char
-     * @throws IOException
-     */
-    private int runCommentState() throws IOException {
-        while(true) {
-            int c = read();
-            if(c == -1) return -1; // EOF
-            if(isSpace(c)) continue; // skip whitespace 
-            
-            // reminder that comments in CD25 are /--
-            if (c == '/') { // if we hit a '/', it could be a comment
-                int n1 = read(); // read the next char after /, so we can begin checking
-                if (n1 == '-') { // if it is a -, we read the next char
-                    int n2 = read();
-                    if (n2 == '-') { // if we got another -, then we have our guy, sick em fellas
-                        while(true) { // consume it all, until a newline or EOF
-                            int x = read();
-                            if (x == -1 || x == '\n' || x == '\r') {
-                                break;
-                            }
-                        }
-                        continue; 
-                    } else { // if the next char aint -, then just unread the two chars 
-                        unread(n2); 
-                        unread(n1);
-                        return c;
-                    }
-                // reminder that multi line strings start with /** and end with **/
-                } else if (n1 == '*') { // handling multi line strings
-                    int n2 = read();
-                    if (n2 == '*') {
-                        int stars = 2; // we have just read 2 *'s 
-                        while(true) {
-                            int x = read(); // read the next char
-                            if (x == -1) return -1; // reached EOF, comment was never closed
-
-                            if (x == '*') { // if we encounter another star in the comment, increment the count
-                                stars++; 
-                                continue; 
-                            }
-                            if (x == '/') { // if we read a /
-                                if(stars >= 2) { // we check if we have read >= 2 stars previously (>= and not == since technically ****/ is completely legal, so as long as its more than 2 followed by a / its fine)
-                                    break; // found the closing comment
-                                } else { // otherwise this is just a random / in the comment, reset stars back to 0
-                                    stars = 0;
-                                    continue;
-                                }
-                            } 
-                            stars = 0; // any other char breaks star count
-                        }
-                        continue;
-                    } else {
-                        unread(n2);
-                        unread(n1);
-                        return c;
-                    }
-                } else { // if the next char isn't - or *, then just unread the char we just read
-                    unread(n1);
-                    return c;
-                }
-            }
-            return c;
-        }
+    private void unread(int c) {
+        in.unread(c); // reading -1 never moved the cursor, so that is never stepped back over
     }
 } 
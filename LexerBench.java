@@ -0,0 +1,66 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+
+/**
+ * Times the lexer and counts what it allocates, run with: java LexerBench [source file] [rounds]
+ *
+ * Without a file the four sample programs are repeated out to about 4 MB. Each round lexes the whole source once, the listing
+ * goes to a null writer, and the best round is reported per token: once as the parser lexes (scan(), no Token or lexeme) and
+ * once making a Token with its lexeme for every token, the way the old nextToken() did. Allocation is this thread's allocated
+ * bytes over the round, so it takes in the listing as well.
+ */
+final class LexerBench {
+    private static final int TARGET_CHARS = 4 << 20;
+
+    public static void main(String[] args) throws IOException {
+        String text = (args.length > 0) ? Files.readString(Path.of(args[0])) : samples();
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        System.out.println(text.length() + " chars");
+        report("scan", text, rounds, false);
+        report("nextToken", text, rounds, true);
+    }
+
+    private static void report(String what, String text, int rounds, boolean tokens) {
+        long bestNs = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+        int count = 0;
+        for (int r = 0; r < rounds + 3; r++) { // the first few warm up
+            long b0 = allocated(), t0 = System.nanoTime();
+            count = lex(text, tokens);
+            long t1 = System.nanoTime(), b1 = allocated();
+            if (r < 3) continue;
+            bestNs = Math.min(bestNs, t1 - t0);
+            bestBytes = Math.min(bestBytes, b1 - b0);
+        }
+        System.out.printf("%-10s %d tokens, %.1f ns/token, %.1f bytes/token%n", what, count, (double) bestNs / count, (double) bestBytes / count);
+    }
+
+    // lexes text to the end, returns how many tokens
+    private static int lex(String text, boolean tokens) {
+        Lexer lx = new Lexer(new SourceCursor(text), new OutputController(Writer.nullWriter()), new NamePool());
+        int n = 0;
+        if (tokens) {
+            while (lx.nextToken().tokenType != TokenType.T_EOF) n++;
+        } else {
+            while (lx.scan() != TokenType.T_EOF) n++;
+        }
+        return n;
+    }
+
+    private static String samples() throws IOException {
+        StringBuilder one = new StringBuilder();
+        for (String f : new String[] { "program1.txt", "program2.txt", "program3.txt", "program4.txt" }) {
+            Path p = Path.of(f);
+            if (Files.exists(p)) one.append(Files.readString(p)).append('\n');
+        }
+        if (one.length() == 0) throw new FileNotFoundException("no sample programs here, give a source file");
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < TARGET_CHARS) sb.append(one);
+        return sb.toString();
+    }
+
+    // bytes this thread has allocated so far
+    static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,587 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Checks the table driven Lexer against the state machine it replaced, run with: java LexerTest [random sources]
+ *
+ * OldLexer below is the lexer as it was before the char-class and transition tables, kept as it was apart from handing its
+ * listing chars and errors to lists instead of an OutputController. Both lex the sample programs and then random sources,
+ * half of them random chars from an alphabet of everything the tables treat differently (including chars past 127) and half
+ * of them random tokens and comment pieces. They have to hand out the same tokens (type, start, length, name id and lexeme)
+ * and the same listing, errors included. Prints what differs for the first source that fails and exits with 1.
+ *
+ * The one listing they don't agree on is a source ending in the first two chars of something longer (/-, /*, 1.): the old
+ * lexer put the second char back over the read past the end, so it listed that char twice and one blank line less. The
+ * listing is copied out of the source now and can't do that, so for those only the tokens and errors are compared.
+ */
+final class LexerTest {
+    private static final String ALPHABET = "aZz09._\"/-*!=<>+%^:;,[]()@#$~&|?'\\ \t\n\n\ré–";
+
+    private static final String[] PIECES = {
+        "x", "Ab3", "cd25", "CD25", "constants", "integer", "Real", "TRUE", "xor", "1", "10", "1.", "1.5", "1.5.2", "007", ".",
+        "!", "!=", "!!", "==", "=", "<=", ">=", "<<", ">>", "+=", "-=", "*=", "/=", "/", "/-", "/--", "/-- c", "/*", "/**",
+        "/** c **/", "**/", "***/", "*/", "\"s\"", "\"", "\"s", "@", "@@#", "~", "é", " ", "\t", "\n", "\n",
+    };
+
+    public static void main(String[] args) throws IOException {
+        int sources = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+        int run = 0;
+        for (String f : new String[] { "program1.txt", "program2.txt", "program3.txt", "program4.txt" }) {
+            Path p = Path.of(f);
+            if (!Files.exists(p)) continue;
+            if (!same(Files.readString(p))) System.exit(1);
+            run++;
+        }
+
+        Random rnd = new Random(9);
+        for (int i = 0; i < sources; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = rnd.nextInt(120);
+            for (int k = 0; k < n; k++) {
+                if (i % 2 == 0) sb.append(ALPHABET.charAt(rnd.nextInt(ALPHABET.length())));
+                else sb.append(PIECES[rnd.nextInt(PIECES.length)]).append(rnd.nextInt(3) == 0 ? " " : "");
+            }
+            if (!same(sb.toString())) System.exit(1);
+            run++;
+        }
+        System.out.println("ok, " + run + " sources");
+    }
+
+    // lexes s with both lexers, false (after printing why) if they differ
+    static boolean same(String s) throws IOException {
+        StringWriter newLst = new StringWriter();
+        OutputController oc = new OutputController(newLst);
+        List<String> now = tokens(new Lexer(new SourceCursor(s), oc, new NamePool()));
+        oc.commitBuffer();
+
+        List<Integer> chars = new ArrayList<>();
+        List<CompilerError> errors = new ArrayList<>();
+        OldLexer lx = new OldLexer(new SourceCursor(s), new NamePool(), chars, errors);
+        List<String> old = tokens(lx);
+        boolean quirk = lx.putBackOverEof;
+        String oldLst = oldListing(chars, errors);
+
+        if (now.equals(old) && (quirk ? errorsOf(newLst.toString()).equals(errorsOf(oldLst)) : newLst.toString().equals(oldLst))) {
+            return true;
+        }
+        System.out.println("FAIL on:\n" + s);
+        System.out.println("-- old tokens\n" + old + "\n-- table tokens\n" + now);
+        System.out.println("-- old listing\n" + oldLst + "\n-- table listing\n" + newLst);
+        return false;
+    }
+
+    private static String errorsOf(String listing) {
+        return listing.substring(listing.lastIndexOf("\n\tERRORS:"));
+    }
+
+    // every token as type@start+length#id"lexeme", up to and including T_EOF
+    private static List<String> tokens(TokenSource lx) {
+        List<String> out = new ArrayList<>();
+        TokenType tt;
+        do {
+            tt = lx.scan();
+            int st = lx.tokenStart(), len = lx.tokenLength(), id = lx.tokenNameId();
+            out.add(tt + "@" + st + "+" + len + "#" + id + "\"" + lx.lexeme(tt, st, len, id) + "\"");
+        } while (tt != TokenType.T_EOF);
+        return out;
+    }
+
+    // the listing the old OutputController wrote from its char buffer: a line number after every newline, a blank line for
+    // each read past the end, then the errors
+    private static String oldListing(List<Integer> chars, List<CompilerError> errors) {
+        StringBuilder sb = new StringBuilder();
+        int line = 1;
+        sb.append(line).append("  ");
+        for (int c : chars) {
+            if (c == '\n') sb.append('\n').append(++line).append("  ");
+            else if (c == -1) sb.append('\n');
+            else sb.append((char) c);
+        }
+        sb.append("\n\tERRORS:\n-----------------------------------");
+        if (errors.isEmpty()) sb.append("\nNo errors found.");
+        for (CompilerError e : errors) sb.append(e);
+        return sb.toString();
+    }
+
+    // the switch driven state machine the tables replaced, the reference the table driven Lexer is checked against
+    static final class OldLexer implements TokenSource {
+
+        private final SourceCursor in; // reads characters one at a time straight out of the source text
+        private final LineMap lines; // works out line and col from an offset, only when a token or error needs them
+        private final NamePool names; // every identifier gets interned here
+        private int tokStart = -1; // offset of the first char of the current token, -1 until the first token is found
+        private int tokLength = 0; // length of the lexeme of the token just scanned
+        private int tokNameId = -1; // NamePool id of the token just scanned if it was an identifier, else -1
+        private int state; // the state we are in
+        private final StringBuilder buff = new StringBuilder(64); // lexeme being built, reused for every token so only the final lexeme String is allocated
+        private final List<Integer> listing; // chars read and not put back, -1 for a read past the end, as the old listing buffer kept them
+        private final List<CompilerError> errors;
+        boolean putBackOverEof = false; // an unread took a read past the end off the listing instead of the char
+
+        // state constants for the state machine
+        private final int READY = 0;
+        private final int WORD = 1;
+        private final int DIGIT = 2;
+        private final int REAL = 3;
+        private final int OP = 4;
+        private final int STRING = 5;
+
+        // the big 3 of the compiler world
+        // the big keywords
+        private static final String[] KEYWORD_NAMES = {
+            "cd25", "constants", "types", "is", "arrays", "main", "begin", "end",
+            "array", "of", "func", "void", "const", "integer", "real", "boolean",
+            "for", "repeat", "until", "if", "else", "in", "out", "line",
+            "return", "not", "and", "or", "xor", "true", "false"
+        };
+        private static final TokenType[] KEYWORD_TYPES = {
+            TokenType.TCD25, TokenType.TCONS, TokenType.TTYPS, TokenType.TTTIS, TokenType.TARRS, TokenType.TMAIN, TokenType.TBEGN, TokenType.TTEND,
+            TokenType.TARAY, TokenType.TTTOF, TokenType.TFUNC, TokenType.TVOID, TokenType.TCNST, TokenType.TINTG, TokenType.TREAL, TokenType.TBOOL,
+            TokenType.TTFOR, TokenType.TREPT, TokenType.TUNTL, TokenType.TIFTH, TokenType.TELSE, TokenType.TINPT, TokenType.TOUTP, TokenType.TOUTL,
+            TokenType.TRETN, TokenType.TNOTT, TokenType.TTAND, TokenType.TTTOR, TokenType.TTXOR, TokenType.TTRUE, TokenType.TFALS
+        };
+
+        // perfect hash over the keywords, no two keywords share the same first char, last char and length
+        // so hashing those three gives every keyword its own slot, a lookup is then one slot and one compare, no strings made
+        private static final int KW_SLOTS = 64;
+        private static final String[] KW_NAME = new String[KW_SLOTS];
+        private static final TokenType[] KW_TYPE = new TokenType[KW_SLOTS];
+
+        // the big singles, indexed straight by the char
+        private static final TokenType[] ONE_CHAR_OPS = new TokenType[128];
+
+        // the big doubles, every one ends in =, < or >, so indexed by [which of those][first char]
+        private static final TokenType[][] TWO_CHAR_OPS = new TokenType[3][128];
+
+        // the lexeme of each operator token by token id, so an operator token never builds a string
+        private static final String[] OP_LEXEMES = new String[TokenType.values().length];
+
+        static {
+            for (int i = 0; i < KEYWORD_NAMES.length; i++) {
+                String kw = KEYWORD_NAMES[i];
+                int h = keywordHash(kw.charAt(0), kw.charAt(kw.length() - 1), kw.length());
+                if (KW_NAME[h] != null) { // only trips if someone adds a keyword that breaks the hash
+                    throw new IllegalStateException("keyword hash collision: " + kw + " and " + KW_NAME[h]);
+                }
+                KW_NAME[h] = kw;
+                KW_TYPE[h] = KEYWORD_TYPES[i];
+            }
+
+            op("=", TokenType.TEQUL);  op("+", TokenType.TPLUS);  op("-", TokenType.TMINS);
+            op("*", TokenType.TSTAR);  op("/", TokenType.TDIVD);  op("<", TokenType.TLESS);
+            op(">", TokenType.TGRTR);  op(",", TokenType.TCOMA);  op("[", TokenType.TLBRK);
+            op("]", TokenType.TRBRK);  op("(", TokenType.TLPAR);  op(")", TokenType.TRPAR);
+            op("%", TokenType.TPERC);  op("^", TokenType.TCART);  op(":", TokenType.TCOLN);
+            op(";", TokenType.TSEMI);  op(".", TokenType.TDOTT);
+
+            op(">>", TokenType.TGRGR); op("<<", TokenType.TLSLS); op("<=", TokenType.TLEQL);
+            op(">=", TokenType.TGEQL); op("!=", TokenType.TNEQL); op("==", TokenType.TEQEQ);
+            op("+=", TokenType.TPLEQ); op("-=", TokenType.TMNEQ); op("*=", TokenType.TSTEQ);
+            op("/=", TokenType.TDVEQ);
+        }
+
+        // slots a keyword by its (lower case) first char, last char and length
+        private static int keywordHash(int first, int last, int len) {
+            return ((first * 59) ^ (last * 59) ^ len) & (KW_SLOTS - 1);
+        }
+
+        // registers an operator in the one or two char table
+        private static void op(String lexeme, TokenType tt) {
+            if (lexeme.length() == 1) {
+                ONE_CHAR_OPS[lexeme.charAt(0)] = tt;
+            } else {
+                TWO_CHAR_OPS[secondCharSlot(lexeme.charAt(1))][lexeme.charAt(0)] = tt;
+            }
+            OP_LEXEMES[tt.getId()] = lexeme;
+        }
+
+        // which row of TWO_CHAR_OPS a second char belongs to, -1 if no double ends in it
+        private static int secondCharSlot(int c) {
+            return c == '=' ? 0 : c == '<' ? 1 : c == '>' ? 2 : -1;
+        }
+
+        // the double made by a followed by b, or null
+        private static TokenType twoCharOp(int a, int b) {
+            int slot = secondCharSlot(b);
+            return (slot < 0 || a >= 128) ? null : TWO_CHAR_OPS[slot][a];
+        }
+
+        /**
+         * Case insensitive keyword lookup run straight on the chars in the lexeme buffer
+         * Letters and digits are the only chars in a word, and c | 0x20 lower cases a letter while leaving a digit alone
+         * @return the keyword slot in KW_NAME/KW_TYPE, or -1 if the word is an identifier
+         */
+        private static int keywordSlot(CharSequence s) {
+            int len = s.length();
+            int h = keywordHash(s.charAt(0) | 0x20, s.charAt(len - 1) | 0x20, len);
+            String kw = KW_NAME[h];
+            if (kw == null || kw.length() != len) return -1;
+            for (int i = 0; i < len; i++) {
+                if ((s.charAt(i) | 0x20) != kw.charAt(i)) return -1;
+            }
+            return h;
+        }
+
+        OldLexer(SourceCursor in, NamePool names, List<Integer> listing, List<CompilerError> errors) {
+            this.in = in;
+            this.lines = in.lines();
+            this.names = names;
+            this.listing = listing;
+            this.errors = errors;
+            this.state = READY;
+        }
+
+        // for marking a tokens start offset, the char that starts it has just been read
+        private void markTokenStart() {
+            tokStart = in.pos() - 1;
+        }
+
+        // notes the lexeme length of the token we just finished, the lexeme itself is never built while scanning
+        private TokenType found(TokenType tt, int length) {
+            tokLength = length;
+            return tt;
+        }
+
+        // builds a lexical error pointing at the current token start
+        private CompilerError lexError(String message) {
+            return new CompilerError("Lexical", message, lines.line(tokStart), lines.col(tokStart));
+        }
+
+        // for skipping whitespace
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        // to identify the start of keywords and identifiers
+        private static boolean isLetter(int c) {
+            return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+        }
+
+        // to identify integers or real literals
+        private static boolean isDigit(int c) {
+            return (c >= '0' && c <= '9');
+        }
+
+        // as identifiers can contain letters and digits this is needed 
+        private static boolean isLetterOrDigit(int c) {
+            return isLetter(c) || isDigit(c);
+        }
+
+        // to indentify if its an operator char, any single char op plus ! for !=
+        private static boolean isOperatorChar(int c) {
+            return c == '!' || (c >= 0 && c < 128 && ONE_CHAR_OPS[c] != null);
+        }
+
+        // to figure out when we need to stop reading an undefined char, i.e read until we find a valid char
+        private static boolean isStopForUndef(int c) {
+            return c == -1 || isSpace(c) || isLetterOrDigit(c) || isOperatorChar(c) || c == '"';
+        }
+
+        /**
+         * Scans the next token without making a Token or a lexeme String for it
+         * Where it starts, how long its lexeme is and its name id are left in tokenStart(), tokenLength() and tokenNameId() until the next scan
+         * This is what TokenBuffer fills its columns from
+         * @return the type of the token, T_EOF once the source runs out
+         */
+        public TokenType scan() {
+            state = READY;
+            buff.setLength(0);     // clear the lexeme buffer (Eg: reading CD25. buff = "CD25")
+            tokNameId = -1;
+            TokenType token = null;
+            int c = 0;
+
+            // loop until token is found, error or EOF (read returns -1)
+            while (token == null)  {
+                if (state == READY) {
+                    c = runCommentState();         // skips WS/comments and returns first real char
+                    if (c == -1) break;            // EOF
+                    markTokenStart();              // mark a tokens start offset
+                    token = runReadyState(c);      // then run the ready state
+                } else {
+                    c = read();
+                    switch (state) {
+                        case DIGIT:
+                            token = runDigitState(c);
+                            break;
+                        case REAL:
+                            token = runRealState(c);
+                            break;
+                        case WORD:
+                            token = runWordState(c);
+                            break;
+                        case OP:
+                            token = runOpState(c);
+                            break;
+                        case STRING:
+                            token = runStringState(c);
+                            break;
+                    }
+                }
+                if (c == -1) { break; }     // EOF reached
+            }
+            return token != null ? token : found(TokenType.T_EOF, 0);
+        }
+
+        // where the last scanned token starts, its lexeme length and its name id
+        public int tokenStart() { return tokStart; }
+        public int tokenLength() { return tokLength; }
+        public int tokenNameId() { return tokNameId; }
+
+        // the line/col lookup for this source, shared with whoever stores our tokens
+        public LineMap lines() { return lines; }
+
+        /**
+         * Rebuilds the lexeme of a scanned token from the source, only done when something actually wants the String
+         * Operators and lower case keywords hand back the table string and identifiers the pooled name, so those never allocate
+         * A string literal starts at its opening quote but its lexeme doesn't include it, nothing else can start with a quote
+         */
+        public String lexeme(TokenType tt, int start, int length, int nameId) {
+            if (nameId >= 0) return names.name(nameId);
+            String fixed = OP_LEXEMES[tt.getId()];
+            if (fixed != null) return fixed;
+            if (length == 0) return "";
+            if (in.charAt(start) == '"') start++;
+            if (tt.getId() >= TokenType.TCD25.getId() && tt.getId() <= TokenType.TFALS.getId()) { // keyword
+                String kw = KW_NAME[keywordHash(in.charAt(start) | 0x20, in.charAt(start + length - 1) | 0x20, length)];
+                if (in.regionMatches(start, kw)) return kw;
+            }
+            return in.text(start, length);
+        }
+
+        /* Runs the logic for the READY state */
+        private TokenType runReadyState(int c) {
+            if (isDigit(c)) {
+                state = DIGIT;
+                buff.append((char) c);
+                return null;
+            }
+            if (isLetter(c)) {
+                state = WORD;
+                buff.append((char) c);
+                return null;
+            }
+            if (isOperatorChar(c)) {    // every single char op, plus ! for !=
+                state = OP;
+                buff.append((char) c);
+                return null;
+            }
+            if (c == '\"') {
+                state = STRING;     // we do not include the "" in the string itself
+                return null;
+            }
+
+            buff.append((char) c); // the beginning undefined char
+            while (true) {
+                int x = read();          // we continue to read       
+                if (isStopForUndef(x)) { // until we find a char that is valid
+                    unread(x);                  
+                    break;
+                }
+                buff.append((char) x); // otherwise continue adding undefined chars
+            }
+            errors.add(lexError("Unknown character, lexeme undefined."));
+            return found(TokenType.TUNDF, buff.length());
+        }
+
+        /* Runs the logic for the DIGIT state. */
+        private TokenType runDigitState(int c) {
+            TokenType token = null;
+
+            if (isDigit(c)) {
+                buff.append((char) c);
+            }
+            else if (c == 46) {     // check if c is a period
+                int nc = read();
+                if (isDigit(nc)) {  
+                    state = REAL;
+                    buff.append((char) c);
+                    buff.append((char) nc);
+                }
+                else {              // next char is not of real format, we found the end of the int token
+                    unread(nc);
+                    unread(c);
+                    token = found(TokenType.TILIT, buff.length());
+                }
+            }
+            else {                  // delimiter found, unread and return integer token
+                unread(c);
+                token = found(TokenType.TILIT, buff.length());
+            }
+            return token;
+        }
+
+        /* Runs the logic for the REAL state */
+        private TokenType runRealState(int c) {
+            TokenType token = null;
+            if (isDigit(c)) {
+                buff.append((char) c);
+            }
+            else {
+                unread(c);
+                token = found(TokenType.TFLIT, buff.length());
+            }
+            return token;  
+        }
+
+        /* Runs the logic for the WORD state */
+        private TokenType runWordState(int c) {
+            TokenType token = null;
+            if (isLetterOrDigit(c)) {
+                buff.append((char) c);
+            }
+            // read char is classed as a delimiter therefore check keywords for lexeme
+            else {
+                unread(c);
+                int kw = keywordSlot(buff);
+                if (kw >= 0) {
+                    token = found(KW_TYPE[kw], buff.length());
+                }
+                // lexeme not found in keyword table therefore token must be an identifier
+                // the pool hands out its id, only a brand new name makes a String
+                else {
+                    tokNameId = names.intern(buff);
+                    token = found(TokenType.TIDEN, buff.length());
+                }
+            }
+            return token;
+        }
+
+        /* Runs the logic for the OP state */
+        private TokenType runOpState(int c) {
+            TokenType token = null;
+            char oc = buff.charAt(0); // get the char in the buffer
+
+            if (oc == '!') { // ! by itself is undefined but != is defined
+                if (c == '=') { // we check if it has a = that follows it
+                    return found(TokenType.TNEQL, 2); // if it does then its just TNEQL
+                } else {
+                    unread(c);
+                    errors.add(lexError("Unknown character, lexeme undefined."));
+                    return found(TokenType.TUNDF, 1); // but if it doesnt its undefined
+                }
+            }
+
+            TokenType tt2 = twoCharOp(oc, c); // the old char and the new char together e.g. buff : <, c : =, together <=
+            if (tt2 != null) { // if it is in the table
+                return found(tt2, 2); // add the token
+            }
+            unread(c); // if it aint in the table then unread c to read again afterwards
+
+            TokenType tt1 = ONE_CHAR_OPS[oc]; // get the single
+            return found(tt1, 1); // return the token
+        }
+
+        /* Runs the logic for the STRING state */
+        private TokenType runStringState(int c) {
+            TokenType token = null;
+
+            if (c == -1) { // just in case for some reason an editor doesnt end with a new line, niche but it rounds it out
+                token = found(TokenType.TUNDF, buff.length());
+                errors.add(lexError("Strings cannot terminate with EOF."));   // adds a lexical error to be reported in the listing file
+            }
+            else if (c == '\n') {                        // string cannot terminate with a newline, error
+                token = found(TokenType.TUNDF, buff.length());
+                errors.add(lexError("Strings cannot terminate with newline."));
+            }
+            else if (c == '\"') {
+                token = found(TokenType.TSTRG, buff.length());
+            }
+            else {
+                buff.append((char) c);    // add any character to the string
+            }
+            return token;
+        }
+
+        /**
+         * Gets the next character from the source cursor,
+         * Positions come from the cursor offset so nothing needs tracking per char
+         * @return the next char
+         */
+        private int read() {
+            int c = in.read();
+            listing.add(c);
+            return c;
+        }
+
+        /**
+         * Puts the c char back into the stream so that the next call of read will read the same char again
+         * Stepping the cursor back also steps the position back, even across new lines
+         * @param c
+         */
+        private void unread(int c) {
+            if (c == -1) {
+                return;
+            }
+            in.unread(c); 
+            if (listing.get(listing.size() - 1) == -1) putBackOverEof = true;
+            listing.remove(listing.size() - 1);
+        }
+
+        /**
+         * Handles the white space/comments between tokens
+         * @return the next valid char
+         */
+        private int runCommentState() {
+            while(true) {
+                int c = read();
+                if(c == -1) return -1; // EOF
+                if(isSpace(c)) continue; // skip whitespace 
+
+                // reminder that comments in CD25 are /--
+                if (c == '/') { // if we hit a '/', it could be a comment
+                    int n1 = read(); // read the next char after /, so we can begin checking
+                    if (n1 == '-') { // if it is a -, we read the next char
+                        int n2 = read();
+                        if (n2 == '-') { // if we got another -, then we have our guy, sick em fellas
+                            while(true) { // consume it all, until a newline or EOF
+                                int x = read();
+                                if (x == -1 || x == '\n' || x == '\r') {
+                                    break;
+                                }
+                            }
+                            continue; 
+                        } else { // if the next char aint -, then just unread the two chars 
+                            unread(n2); 
+                            unread(n1);
+                            return c;
+                        }
+                    // reminder that multi line strings start with /** and end with **/
+                    } else if (n1 == '*') { // handling multi line strings
+                        int n2 = read();
+                        if (n2 == '*') {
+                            int stars = 2; // we have just read 2 *'s 
+                            while(true) {
+                                int x = read(); // read the next char
+                                if (x == -1) return -1; // reached EOF, comment was never closed
+
+                                if (x == '*') { // if we encounter another star in the comment, increment the count
+                                    stars++; 
+                                    continue; 
+                                }
+                                if (x == '/') { // if we read a /
+                                    if(stars >= 2) { // we check if we have read >= 2 stars previously (>= and not == since technically ****/ is completely legal, so as long as its more than 2 followed by a / its fine)
+                                        break; // found the closing comment
+                                    } else { // otherwise this is just a random / in the comment, reset stars back to 0
+                                        stars = 0;
+                                        continue;
+                                    }
+                                } 
+                                stars = 0; // any other char breaks star count
+                            }
+                            continue;
+                        } else {
+                            unread(n2);
+                            unread(n1);
+                            return c;
+                        }
+                    } else { // if the next char isn't - or *, then just unread the char we just read
+                        unread(n1);
+                        return c;
+                    }
+                }
+                return c;
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+// turns a char offset into the source back into a line and column number
+// the table of line starts is only built the first time someone asks for a position, then each lookup is a binary search
+final class LineMap {
+    private char[] buf; // the text, only needed until the table is built
+    private int end;
+    private int[] starts; // line starts, null until first lookup, line i sits at i before the gap and i + (length - count) after it
+    private int count; // how many lines there are
+    private int gap; // lines before the gap, starts from there on are held relative to end (see edit), count when never edited
+
+    LineMap(char[] buf, int end) {
+        this.buf = buf;
+        this.end = end;
+    }
+
+    // one pass over the source noting where every line begins
+    private void build() {
+        int[] s = new int[64];
+        int n = 0;
+        s[n++] = 0; // line 1 starts at the beginning
+        for (int i = 0; i < end; i++) {
+            if (buf[i] == '\n') {
+                if (n == s.length) s = Arrays.copyOf(s, n * 2);
+                s[n++] = i + 1;
+            }
+        }
+        count = n;
+        gap = n;
+        starts = s;
+        buf = null;
+    }
+
+    // builds the table now rather than on first lookup, so lexers on other threads can share it without racing to build it
+    LineMap built() {
+        if (starts == null) build();
+        return this;
+    }
+
+    /**
+     * Brings the map up to date after chars [offset, offset + removed) were replaced with inserted, in place
+     * The line starts sit in an array with a gap at the last edit, the ones after it held relative to the end of the text the same
+     * way IncrementalLexer holds its tokens, so an edit costs the lines it removes and adds plus moving the gap from the last edit
+     */
+    void edit(int offset, int removed, String inserted) {
+        if (starts == null) build();
+        moveGap(lineIndex(offset) + 1); // lines starting at or before offset don't move
+        while (gap < count && start(gap) <= offset + removed) { // started inside the removed chars
+            count--;
+        }
+        end += inserted.length() - removed; // which moves every line after the gap along with it
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) != '\n') continue;
+            if (count == starts.length) grow();
+            starts[gap++] = offset + i + 1;
+            count++;
+        }
+    }
+
+    // how many lines the source has, a trailing newline starts one more (empty) line
+    int lineCount() {
+        if (starts == null) build();
+        return count;
+    }
+
+    // offset of the first char of line i, counting from 0
+    int lineStart(int i) {
+        if (starts == null) build();
+        return start(i);
+    }
+
+    private int start(int i) {
+        return (i < gap) ? starts[i] : starts[i + (starts.length - count)] + end;
+    }
+
+    // index into starts of the line holding offset
+    private int lineIndex(int offset) {
+        if (starts == null) build();
+        int lo = 0, hi = count - 1;
+        while (lo < hi) { // find the last line start <= offset
+            int mid = (lo + hi + 1) >>> 1;
+            if (start(mid) <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    // index into starts of the line holding offset, looking forward from line hint first
+    // the lexers ask in source order, so this is nearly always hint itself or the line after
+    int lineIndex(int offset, int hint) {
+        if (starts == null) build();
+        if (hint < 0 || hint >= count || start(hint) > offset) return lineIndex(offset);
+        for (int i = hint; i < hint + 4; i++) {
+            if (i + 1 == count || start(i + 1) > offset) return i;
+        }
+        return lineIndex(offset);
+    }
+
+    // 1 based line number, offsets before the source has been read (-1) are on line 1
+    int line(int offset) {
+        if (offset < 0) return 1;
+        return lineIndex(offset) + 1;
+    }
+
+    // 1 based column number, offsets before the source has been read (-1) are at column 0
+    int col(int offset) {
+        if (offset < 0) return 0;
+        int i = lineIndex(offset); // builds the table first if needed
+        return offset - start(i) + 1;
+    }
+
+    // moves the gap so exactly i lines are in front of it, costs how far it moves
+    private void moveGap(int i) {
+        int shift = starts.length - count;
+        while (gap > i) {
+            gap--;
+            starts[gap + shift] = starts[gap] - end;
+        }
+        while (gap < i) {
+            starts[gap] = starts[gap + shift] + end;
+            gap++;
+        }
+    }
+
+    // double the array, keeping the lines after the gap at the end
+    private void grow() {
+        int after = count - gap;
+        int[] s = Arrays.copyOf(starts, starts.length * 2);
+        System.arraycopy(starts, starts.length - after, s, s.length - after, after);
+        starts = s;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * One pool of identifier names for the whole compiler
+ * The lexer interns every identifier here, so each distinct name exists once as a String and gets a small int id (0, 1, 2, ...)
+ * Tokens, tree nodes and the symbol table then pass the id around, and looking a name up is an int compare instead of a string hash
+ */
+final class NamePool {
+    private String[] names = new String[256]; // names[id] = the name with that id
+    private int[] hashes = new int[256]; // hashes[id] = hash of names[id], saves rehashing when the table grows
+    private int size = 0; // how many names have been handed an id
+    private int[] slots = new int[512]; // open addressing table of id + 1, 0 means empty, always a power of 2 long
+
+    // same hash as String.hashCode, but run over any char sequence so the lexer can ask without making a String
+    private static int hash(CharSequence s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(char[] s, int from, int len) {
+        int h = 0;
+        for (int i = from; i < from + len; i++) h = 31 * h + s[i];
+        return h;
+    }
+
+    // does the pooled name with this id spell out s
+    private boolean same(int id, CharSequence s) {
+        String n = names[id];
+        if (n.length() != s.length()) return false;
+        for (int i = 0; i < n.length(); i++) {
+            if (n.charAt(i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean same(int id, char[] s, int from, int len) {
+        String n = names[id];
+        if (n.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (n.charAt(i) != s[from + i]) return false;
+        }
+        return true;
+    }
+
+    // the slot s lives in, or the empty slot it would go in
+    private int slotOf(CharSequence s, int h) {
+        int mask = slots.length - 1;
+        int i = spread(h) & mask;
+        while (slots[i] != 0) {
+            int id = slots[i] - 1;
+            if (hashes[id] == h && same(id, s)) return i;
+            i = (i + 1) & mask; // linear probe
+        }
+        return i;
+    }
+
+    private int slotOf(char[] s, int from, int len, int h) {
+        int mask = slots.length - 1;
+        int i = spread(h) & mask;
+        while (slots[i] != 0) {
+            int id = slots[i] - 1;
+            if (hashes[id] == h && same(id, s, from, len)) return i;
+            i = (i + 1) & mask; // linear probe
+        }
+        return i;
+    }
+
+    /**
+     * Id for the name, handing out the next id the first time a name is seen
+     * The String is only made the first time too, so repeat uses of a name allocate nothing
+     */
+    int intern(CharSequence s) {
+        int h = hash(s);
+        int i = slotOf(s, h);
+        if (slots[i] != 0) return slots[i] - 1;
+        return add(i, s.toString(), h);
+    }
+
+    // same again for a name sitting in a char array, the lexer interns straight off the source
+    int intern(char[] s, int from, int len) {
+        int h = hash(s, from, len);
+        int i = slotOf(s, from, len, h);
+        if (slots[i] != 0) return slots[i] - 1;
+        return add(i, new String(s, from, len), h);
+    }
+
+    // gives a new name the next id and puts it in empty slot i
+    private int add(int i, String name, int h) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = h;
+        slots[i] = id + 1;
+        if (size * 2 > slots.length) grow(); // keep the table at most half full so probes stay short
+        return id;
+    }
+
+    // id of a name that has already been interned, -1 if it never has
+    int find(CharSequence s) {
+        int i = slotOf(s, hash(s));
+        return slots[i] - 1;
+    }
+
+    // the name behind an id
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // double the table and put every id back in its new slot
+    private void grow() {
+        int[] next = new int[slots.length * 2];
+        int mask = next.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = spread(hashes[id]) & mask;
+            while (next[i] != 0) i = (i + 1) & mask;
+            next[i] = id + 1;
+        }
+        slots = next;
+    }
+}
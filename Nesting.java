@@ -0,0 +1,96 @@
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * How deeply a program nests, counted off its tokens before it's parsed, and running work on a stack big enough for that
+ *
+ * Nesting is recursion in every phase: brackets and if/for/repeat blocks in the parser, ^ chains in the parser too since ^ is
+ * right associative, and a + b + c ... builds a tree as deep as the chain is long that the later phases walk recursively.
+ * So the depth at any token is the brackets and blocks open there plus the operators so far in the statement, and a program's
+ * depth is the deepest it gets. That never counts less than the tree really nests, only more (a < b counts the same as a + b),
+ * unless a stray end or ) in a broken program is counted as closing something the parser still has open.
+ * Ifs inside ifs are the dearest, measured at up to about 1.6K of stack a level with C1 compiled frames, which are the biggest.
+ */
+final class Nesting {
+    static final int IN_PLACE = 128; // no deeper than this runs on the caller's own stack, whatever size it is
+    private static final long STACK_PER_LEVEL = 2048;
+    private static final long MIN_STACK = 16L << 20; // the frames that don't nest, and headroom for what isn't counted
+
+    private int open = 0; // brackets and blocks open
+    private int ops = 0; // operators since the statement started
+    private int deepest = 0;
+
+    private Nesting() {}
+
+    // the deepest tokens [from, to) get
+    static int depth(BufferedTokens tokens, int from, int to) {
+        Nesting n = new Nesting();
+        for (int k = from; k < to; k++) n.add(tokens.type(k));
+        return n.deepest;
+    }
+
+    // the deepest a lexer's tokens get, lexing all of them
+    static int depth(TokenSource lexer) {
+        Nesting n = new Nesting();
+        for (TokenType tt = lexer.scan(); tt != TokenType.T_EOF; tt = lexer.scan()) n.add(tt);
+        return n.deepest;
+    }
+
+    private void add(TokenType tt) {
+        switch (tt) {
+            case TLPAR, TLBRK -> open++;
+            case TRPAR, TRBRK -> open = Math.max(0, open - 1);
+            case TBEGN, TIFTH, TTFOR, TREPT -> {
+                open++;
+                ops = 0;
+            }
+            case TTEND, TUNTL -> { // until ends a repeat's statements, its condition is the last bit of the statement
+                open = Math.max(0, open - 1);
+                ops = 0;
+            }
+            case TSEMI -> ops = 0;
+            case TPLUS, TMINS, TSTAR, TDIVD, TPERC, TCART, TLESS, TGRTR, TLEQL, TGEQL, TNEQL, TEQEQ, TNOTT, TTAND, TTTOR, TTXOR,
+                TLSLS, TGRGR -> ops++;
+            default -> {}
+        }
+        deepest = Math.max(deepest, open + ops);
+    }
+
+    // stack for work on a program nested depth deep
+    static long stackFor(int depth) {
+        return MIN_STACK + depth * STACK_PER_LEVEL;
+    }
+
+    // runs task on a thread with a stack sized for depth, or right here when it's shallow
+    static void run(int depth, Runnable task) {
+        call(depth, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // runs task on a thread with a stack sized for depth, or right here when it's shallow, and hands back what it returns
+    static <T> T call(int depth, Supplier<T> task) {
+        return (depth <= IN_PLACE) ? task.get() : onThread(depth, task);
+    }
+
+    /**
+     * Runs task on a thread of its own with a stack sized for depth and hands back what it returns
+     * Anything thrown is thrown again here, same as when it runs on the caller's own stack
+     */
+    static <T> T onThread(int depth, Supplier<T> task) {
+        FutureTask<T> f = new FutureTask<>(task::get);
+        new Thread(null, f, "deep", stackFor(depth)).start();
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted waiting on the deep thread");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compiles very deeply nested programs through every phase, run with: java NestingTest [levels]
+ *
+ * Each shape that turns into recursion somewhere ((((1))), 1^1^...^1, 1+1+...+1 and ifs inside ifs) is nested levels deep,
+ * 100000 by default, and goes through the lexer, parser, semantic analyser and code generator on a thread with the stack CD
+ * would give it (see Nesting), then through both TreePrinter walks on this thread's own stack. IncrementalParser then parses
+ * it and takes two edits on this thread's stack too: one at the innermost point and one to the program name, which has the
+ * whole program parsed again. Every shape has to come through without overflowing and without a single error. Prints the
+ * shapes that fail and exits with 1.
+ */
+final class NestingTest {
+    public static void main(String[] args) throws Exception {
+        int levels = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        boolean ok = true;
+        for (String shape : new String[] { "paren", "pow", "add", "if" }) {
+            String src = source(shape, levels);
+            String got = compile(src);
+            System.out.println(shape + " x" + levels + ": " + got);
+            if (!got.equals("ok")) ok = false;
+        }
+        if (!ok) System.exit(1);
+    }
+
+    // a program with one construct nested levels deep
+    static String source(String shape, int levels) {
+        StringBuilder body = new StringBuilder();
+        switch (shape) {
+            case "paren" -> body.append("    x = ").append("(".repeat(levels)).append('1').append(")".repeat(levels)).append(";\n");
+            case "pow" -> body.append("    x = 1").append("^1".repeat(levels - 1)).append(";\n");
+            case "add" -> body.append("    x = 1").append("+1".repeat(levels - 1)).append(";\n");
+            default -> body.append("    if (true)\n".repeat(levels)).append("    x = 1;\n").append("    end\n".repeat(levels));
+        }
+        body.append("    Out << x << Line;\n");
+        return "CD25 deep\nmain\n    x : integer\nbegin\n" + body + "end CD25 deep\n";
+    }
+
+    // "ok", or what went wrong
+    static String compile(String src) throws InterruptedException {
+        String[] res = { null };
+        StNode[] tree = { null };
+        Thread t = new Thread(null, () -> {
+            try {
+                OutputController oc = new OutputController(new StringWriter());
+                NamePool names = new NamePool();
+                SymbolTable table = new SymbolTable(names);
+                TokenStream ts = new TokenStream(new Lexer(new SourceCursor(src), oc, names));
+                ErrorReporter er = new ErrorReporter(oc);
+                StNode root = new Parser(ts, table, er).parseProgram();
+                ts.drain();
+                SemanticAnalyzer sa = new SemanticAnalyzer(table, er);
+                sa.analyze(root);
+                Emitter em = new Emitter();
+                new CodeGenerator(table, sa.layout(), em, new PrintStream(OutputStream.nullOutputStream())).generate(root);
+                List<CompilerError> errors = er.all();
+                res[0] = errors.isEmpty() ? "ok" : errors.size() + " errors, first " + errors.get(0);
+                tree[0] = root;
+            } catch (StackOverflowError e) {
+                res[0] = "stack overflow in " + where(e);
+            } catch (RuntimeException e) {
+                res[0] = e.toString();
+            }
+        }, "compile", Nesting.stackFor(Nesting.depth(new Lexer(new SourceCursor(src), new OutputController(), new NamePool()))));
+        t.start();
+        t.join();
+        if (tree[0] == null) return res[0];
+
+        try {
+            TreePrinter.printReport(tree[0], List.of(), new PrintStream(OutputStream.nullOutputStream()));
+        } catch (StackOverflowError e) {
+            return "stack overflow printing the tree in " + where(e);
+        }
+        if (!res[0].equals("ok")) return res[0];
+        return incremental(src);
+    }
+
+    // "ok", or what went wrong parsing src with IncrementalParser and editing it
+    static String incremental(String src) {
+        try {
+            IncrementalParser ip = new IncrementalParser(src, new NamePool());
+            ip.edit(src.lastIndexOf('1'), 1, "2"); // the innermost 1 in every shape
+            ip.edit(src.indexOf("deep"), 4, "deeper");
+        } catch (StackOverflowError e) {
+            return "stack overflow in incremental parsing in " + where(e);
+        }
+        return "ok";
+    }
+
+    // the first method of ours on the stack
+    private static String where(Throwable e) {
+        for (StackTraceElement s : e.getStackTrace()) {
+            if (!s.getClassName().startsWith("java")) return s.getClassName() + "." + s.getMethodName();
+        }
+        return "?";
+    }
+}
@@ -0,0 +1,402 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Holds every node of one syntax tree in parallel arrays, a node is just its index
+ *
+ * Children are a linked list through firstChild/nextSibling (lastChild makes adding one at the end free), so a node costs
+ * around 70 bytes over all its columns (links, position, name, the lexeme/type/symbol references, constant value, token range
+ * and segment) plus its slots, and no objects of its own, where it used to be a StNode plus an ArrayList plus its array.
+ * StNode is now only a view of one index, made when someone asks for a node, so the old API keeps working while callers move over.
+ *
+ * A node can only be added under one parent, adding it again would relink its siblings and break the first parent's list.
+ *
+ * Nodes with a fixed shape (see Ast.slotCount) also get a run of named slots in slotPool, filled in by putChild, so Ast can hand out
+ * a child by name without walking the siblings.
+ *
+ * Statements, statement lists and functions also note the tokens they were parsed from, [tokenFrom, tokenTo), and how far the
+ * parser had looked by the time it was done with them, tokenSeen, so after an edit IncrementalParser can tell which of them the
+ * edit didn't touch and hand those back to the parser as they are.
+ *
+ * For a tree that gets edited the positions and token numbers under each outermost node that has tokens (a function, main's
+ * statements) are kept relative to that segment, see segment(), so an edit moves whole segments after it with one add each.
+ */
+final class NodeArena {
+    static final int NONE = -1;
+    static final int STALE = -2; // token number of a node an edit went through, see shiftTokens
+    private static final StNodeKind[] KINDS = StNodeKind.values();
+
+    private byte[] kinds = new byte[256]; // StNodeKind ordinal
+    private int[] firstChild = new int[256];
+    private int[] lastChild = new int[256];
+    private int[] nextSibling = new int[256];
+    private int[] lines = new int[256];
+    private int[] cols = new int[256];
+    private int[] nameIds = new int[256]; // NamePool id when the lexeme is an identifier, -1 otherwise
+    private String[] lexemes = new String[256];
+    private Type[] types = new Type[256]; // filled in by the semantic analyser
+    private Symbol[] symbols = new Symbol[256];
+    private byte[] constKinds = new byte[256]; // what the node came to as a constant expression, see ConstEval
+    private long[] constBits = new long[256]; // and the value, in the lane its kind says
+    private int[] slotStart = new int[256]; // where the node's slots start in slotPool, NONE if it has none
+    private int[] slotPool = new int[512];
+    private int[] tokenFrom = new int[256]; // first token the node was parsed from, NONE for nodes that don't track it
+    private int[] tokenTo = new int[256]; // one past its last token
+    private int[] tokenSeen = new int[256]; // one past the last token the parser had looked at when it was done with the node, tokenTo or more
+    private int[] seg = new int[256]; // segment the node's position and tokens are relative to, NONE when they're as they are
+    private int[] segRoot = new int[16]; // top node of each segment
+    private int[] segLines = new int[16]; // how far everything in it has moved since it was last settled
+    private int[] segCols = new int[16]; // only moves the nodes on its first line
+    private int[] segTokens = new int[16];
+    private int[] segFirst = new int[16]; // first and last position in it as stored
+    private int[] segFirstCol = new int[16];
+    private int[] segLast = new int[16];
+    private int[] segLastCol = new int[16];
+    private int segCount = 0;
+    private int[] loose = new int[16]; // nodes of the tree that aren't in any segment, moved one by one
+    private int looseCount = 0;
+    private int[] order = new int[256]; // scratch for subtree()
+    private int slotTop = 0;
+    private int count = 0;
+
+    // a new node with no children, returns its index
+    int add(StNodeKind kind, String lexeme, int nameId, int line, int col) {
+        if (count == kinds.length) grow();
+        int n = count++;
+        kinds[n] = (byte) kind.ordinal();
+        firstChild[n] = NONE;
+        lastChild[n] = NONE;
+        nextSibling[n] = NONE;
+        lines[n] = line;
+        cols[n] = col;
+        nameIds[n] = nameId;
+        lexemes[n] = lexeme;
+        tokenFrom[n] = NONE;
+        tokenTo[n] = NONE;
+        tokenSeen[n] = NONE;
+        seg[n] = NONE;
+        constKinds[n] = ConstEval.UNSEEN;
+        int slots = Ast.slotCount(kind);
+        if (slots == 0) {
+            slotStart[n] = NONE;
+        } else {
+            if (slotTop + slots > slotPool.length) slotPool = Arrays.copyOf(slotPool, slotPool.length * 2);
+            slotStart[n] = slotTop;
+            Arrays.fill(slotPool, slotTop, slotTop + slots, NONE);
+            slotTop += slots;
+        }
+        return n;
+    }
+
+    // puts child last under parent, a child kept from an old tree (see IncrementalParser) drops the siblings it had there
+    void addChild(int parent, int child) {
+        if (lastChild[parent] == NONE) firstChild[parent] = child;
+        else nextSibling[lastChild[parent]] = child;
+        lastChild[parent] = child;
+        nextSibling[child] = NONE;
+    }
+
+    // puts now where old was under parent, in the child list and in any slot that held it
+    void replace(int parent, int old, int now) {
+        int prev = NONE;
+        for (int c = firstChild[parent]; c != NONE; prev = c, c = nextSibling[c]) {
+            if (c != old) continue;
+            if (prev == NONE) firstChild[parent] = now;
+            else nextSibling[prev] = now;
+            if (lastChild[parent] == old) lastChild[parent] = now;
+            nextSibling[now] = nextSibling[old];
+            break;
+        }
+        int slots = Ast.slotCount(kind(parent));
+        for (int k = 0; k < slots; k++) {
+            if (slotPool[slotStart[parent] + k] == old) slotPool[slotStart[parent] + k] = now;
+        }
+    }
+
+    // puts child last under parent and records it in the parent's slot
+    void putChild(int parent, int slot, int child) {
+        addChild(parent, child);
+        slotPool[slotStart[parent] + slot] = child;
+    }
+
+    /**
+     * Copies every node of other onto the end of this arena and returns where they start, node n of other becomes node offset + n
+     * Their links and slots are shifted to match, so a subtree built in its own arena (see ParallelFuncParser) can be added under
+     * a node here once it's copied. other must not have been split into segments
+     */
+    int append(NodeArena other) {
+        int offset = count;
+        int slotOffset = slotTop;
+        while (count + other.count > kinds.length) grow();
+        if (slotTop + other.slotTop > slotPool.length) slotPool = Arrays.copyOf(slotPool, Math.max(slotPool.length * 2, slotTop + other.slotTop));
+
+        int n = other.count;
+        System.arraycopy(other.kinds, 0, kinds, offset, n);
+        System.arraycopy(other.lines, 0, lines, offset, n);
+        System.arraycopy(other.cols, 0, cols, offset, n);
+        System.arraycopy(other.nameIds, 0, nameIds, offset, n);
+        System.arraycopy(other.lexemes, 0, lexemes, offset, n);
+        System.arraycopy(other.types, 0, types, offset, n);
+        System.arraycopy(other.symbols, 0, symbols, offset, n);
+        System.arraycopy(other.constKinds, 0, constKinds, offset, n);
+        System.arraycopy(other.constBits, 0, constBits, offset, n);
+        System.arraycopy(other.tokenFrom, 0, tokenFrom, offset, n);
+        System.arraycopy(other.tokenTo, 0, tokenTo, offset, n);
+        System.arraycopy(other.tokenSeen, 0, tokenSeen, offset, n);
+        Arrays.fill(seg, offset, offset + n, NONE);
+        for (int j = 0; j < n; j++) {
+            firstChild[offset + j] = shift(other.firstChild[j], offset);
+            lastChild[offset + j] = shift(other.lastChild[j], offset);
+            nextSibling[offset + j] = shift(other.nextSibling[j], offset);
+            slotStart[offset + j] = shift(other.slotStart[j], slotOffset);
+        }
+        for (int j = 0; j < other.slotTop; j++) {
+            slotPool[slotOffset + j] = shift(other.slotPool[j], offset);
+        }
+        count += n;
+        slotTop += other.slotTop;
+        return offset;
+    }
+
+    private static int shift(int link, int by) {
+        return (link == NONE) ? NONE : link + by;
+    }
+
+    /**
+     * Splits the tree under root into segments, for a tree that is going to be edited, after it was parsed from scratch or as a
+     * whole program again
+     * Each outermost node with tokens heads a segment of everything under it. shiftPositions and shiftTokens move a segment
+     * wholly after the edit by adding to its deltas, which line, col and the token numbers add back on read, and only go
+     * node by node through the segment the edit is in and the few nodes outside all of them (the program, globals, main's
+     * declarations). So an edit costs about one function, not the whole tree.
+     */
+    void segment(int root) {
+        int m = subtree(root);
+        for (int k = 0; k < m; k++) settleNode(order[k]); // out of the old segments, as they are now
+        segCount = 0;
+        looseCount = 0;
+        Deque<Integer> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            int n = todo.pop();
+            if (tokenFrom[n] != NONE) {
+                if (segCount == segRoot.length) growSegments();
+                segRoot[segCount] = n;
+                settle(segCount++);
+                continue;
+            }
+            if (looseCount == loose.length) loose = Arrays.copyOf(loose, looseCount * 2);
+            loose[looseCount++] = n;
+            for (int c = firstChild[n]; c != NONE; c = nextSibling[c]) todo.push(c);
+        }
+    }
+
+    // after now went in old's place (see replace), takes the new nodes into old's segment
+    void rebase(int old, int now) {
+        int s = seg[old];
+        if (s == NONE) return;
+        if (segRoot[s] == old) segRoot[s] = now;
+        settle(s);
+    }
+
+    /**
+     * Brings the token numbers up to date after an edit replaced tokens [from, from + removed) of the old count with inserted new ones
+     * Numbers past them move along. A node that started on one of them can't be trusted to parse the same way again, and nor can
+     * one the parser looked past the end of into them (an assignment parses the name after it to see if that starts another
+     * one) or up to where new ones went in, so all its numbers become STALE. The T_EOF after the last token sits where that
+     * token is, so an edit that reaches the end goes through any T_EOF looked at.
+     */
+    void shiftTokens(int from, int removed, int inserted, int count) {
+        if (removed == 0 && inserted == 0) return; // only whitespace or comments changed
+        int end = from + removed;
+        int by = inserted - removed;
+        int touchedTo = (end == count) ? Integer.MAX_VALUE : Math.max(end, from + 1); // looking into [from, touchedTo) sees the edit
+        for (int s = 0; s < segCount; s++) {
+            // nothing in a segment starts before its top node or looked further than it
+            int a = tokenFrom(segRoot[s]), c = tokenSeen(segRoot[s]);
+            if (a >= 0 && c <= from && c < end) continue;
+            if (a >= touchedTo) {
+                segTokens[s] += by;
+                continue;
+            }
+            int m = settle(s);
+            for (int k = 0; k < m; k++) shiftTokens(order[k], from, end, by, touchedTo);
+        }
+    }
+
+    private void shiftTokens(int n, int from, int end, int by, int touchedTo) {
+        int a = tokenFrom[n], b = tokenTo[n], c = tokenSeen[n];
+        if (a < 0) return;
+        if ((a >= from && a < end) || (b < touchedTo && c > from)) {
+            tokenFrom[n] = STALE;
+            tokenTo[n] = STALE;
+            tokenSeen[n] = STALE;
+            return;
+        }
+        if (a >= end) tokenFrom[n] += by;
+        if (b >= end) tokenTo[n] += by;
+        if (c >= end) tokenSeen[n] += by;
+    }
+
+    // moves every node at or after line:col along by an edit that ended there, byLines more lines and byCols more chars on its last line
+    void shiftPositions(int line, int col, int byLines, int byCols) {
+        if (byLines == 0 && byCols == 0) return;
+        long at = at(line, col);
+        for (int k = 0; k < looseCount; k++) shiftPosition(loose[k], line, at, byLines, byCols);
+        for (int s = 0; s < segCount; s++) {
+            int first = segFirst[s] + segLines[s];
+            int lastCol = segLastCol[s] + ((segLast[s] == segFirst[s]) ? segCols[s] : 0);
+            if (at(segLast[s] + segLines[s], lastCol) < at) continue; // all before the edit
+            if (at(first, segFirstCol[s] + segCols[s]) >= at) { // all after it
+                if (first == line) segCols[s] += byCols;
+                segLines[s] += byLines;
+                continue;
+            }
+            int m = settle(s);
+            for (int k = 0; k < m; k++) shiftPosition(order[k], line, at, byLines, byCols);
+            bounds(s, m);
+        }
+    }
+
+    private void shiftPosition(int n, int line, long at, int byLines, int byCols) {
+        if (at(lines[n], cols[n]) < at) return;
+        if (lines[n] == line) cols[n] += byCols;
+        lines[n] += byLines;
+    }
+
+    // line:col as one number that orders the same way
+    private static long at(int line, int col) {
+        return ((long) line << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    // puts the segment's deltas into its nodes' columns, leaves its nodes in order and returns how many
+    private int settle(int s) {
+        int m = subtree(segRoot[s]);
+        for (int k = 0; k < m; k++) settleNode(order[k]); // new nodes from a reparse aren't in it yet, they are as they are
+        segLines[s] = 0;
+        segCols[s] = 0;
+        segTokens[s] = 0;
+        for (int k = 0; k < m; k++) seg[order[k]] = s;
+        bounds(s, m);
+        return m;
+    }
+
+    // n's position and tokens as they are now, out of its segment
+    private void settleNode(int n) {
+        int s = seg[n];
+        if (s == NONE) return;
+        if (lines[n] == segFirst[s]) cols[n] += segCols[s];
+        lines[n] += segLines[s];
+        if (tokenFrom[n] >= 0) tokenFrom[n] += segTokens[s];
+        if (tokenTo[n] >= 0) tokenTo[n] += segTokens[s];
+        if (tokenSeen[n] >= 0) tokenSeen[n] += segTokens[s];
+        seg[n] = NONE;
+    }
+
+    // first and last position of the m settled nodes in order
+    private void bounds(int s, int m) {
+        long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+        for (int k = 0; k < m; k++) {
+            long p = at(lines[order[k]], cols[order[k]]);
+            lo = Math.min(lo, p);
+            hi = Math.max(hi, p);
+        }
+        segFirst[s] = (int) (lo >> 32);
+        segFirstCol[s] = (int) lo;
+        segLast[s] = (int) (hi >> 32);
+        segLastCol[s] = (int) hi;
+    }
+
+    // n and every node under it into order, returns how many, a level at a time so deep trees don't need a stack
+    private int subtree(int n) {
+        int m = 0;
+        order[m++] = n;
+        for (int k = 0; k < m; k++) {
+            for (int c = firstChild[order[k]]; c != NONE; c = nextSibling[c]) {
+                if (m == order.length) order = Arrays.copyOf(order, m * 2);
+                order[m++] = c;
+            }
+        }
+        return m;
+    }
+
+    int size() { return count; }
+
+    StNodeKind kind(int n) { return KINDS[kinds[n]]; }
+    int firstChild(int n) { return firstChild[n]; }
+    int nextSibling(int n) { return nextSibling[n]; }
+    int line(int n) { return (seg[n] == NONE) ? lines[n] : lines[n] + segLines[seg[n]]; }
+    int col(int n) { return (seg[n] == NONE || lines[n] != segFirst[seg[n]]) ? cols[n] : cols[n] + segCols[seg[n]]; }
+    int nameId(int n) { return nameIds[n]; }
+    String lexeme(int n) { return lexemes[n]; }
+    Type type(int n) { return types[n]; }
+    Symbol symbol(int n) { return symbols[n]; }
+    byte constKind(int n) { return constKinds[n]; }
+    long constBits(int n) { return constBits[n]; }
+    int tokenFrom(int n) { return moved(n, tokenFrom[n]); }
+    int tokenTo(int n) { return moved(n, tokenTo[n]); }
+    int tokenSeen(int n) { return moved(n, tokenSeen[n]); }
+    int slot(int n, int slot) { return (slotStart[n] == NONE) ? NONE : slotPool[slotStart[n] + slot]; } // NONE for an NUNDEF in its place
+
+    void setType(int n, Type t) { types[n] = t; }
+    void setSymbol(int n, Symbol s) { symbols[n] = s; }
+    void setConst(int n, byte kind, long bits) { constKinds[n] = kind; constBits[n] = bits; }
+    void setTokens(int n, int from, int to, int seen) { // for a node just parsed, it isn't in a segment yet
+        tokenFrom[n] = from;
+        tokenTo[n] = to;
+        tokenSeen[n] = seen;
+    }
+
+    // token number t of node n as it is now
+    private int moved(int n, int t) {
+        return (t < 0 || seg[n] == NONE) ? t : t + segTokens[seg[n]];
+    }
+
+    // the view of node n, or null for NONE
+    StNode node(int n) {
+        return (n == NONE) ? null : new StNode(this, n);
+    }
+
+    // makes room for this many nodes in all, so a parser that knows about how big the tree will be doesn't grow it step by step
+    void reserve(int nodes) {
+        if (nodes > kinds.length) grow(nodes);
+        if (nodes > slotPool.length) slotPool = Arrays.copyOf(slotPool, nodes); // most nodes have none, binary ops two
+    }
+
+    private void grow() {
+        grow(kinds.length * 2);
+    }
+
+    private void grow(int n) {
+        kinds = Arrays.copyOf(kinds, n);
+        firstChild = Arrays.copyOf(firstChild, n);
+        lastChild = Arrays.copyOf(lastChild, n);
+        nextSibling = Arrays.copyOf(nextSibling, n);
+        lines = Arrays.copyOf(lines, n);
+        cols = Arrays.copyOf(cols, n);
+        nameIds = Arrays.copyOf(nameIds, n);
+        lexemes = Arrays.copyOf(lexemes, n);
+        types = Arrays.copyOf(types, n);
+        symbols = Arrays.copyOf(symbols, n);
+        constKinds = Arrays.copyOf(constKinds, n);
+        constBits = Arrays.copyOf(constBits, n);
+        slotStart = Arrays.copyOf(slotStart, n);
+        tokenFrom = Arrays.copyOf(tokenFrom, n);
+        tokenTo = Arrays.copyOf(tokenTo, n);
+        tokenSeen = Arrays.copyOf(tokenSeen, n);
+        seg = Arrays.copyOf(seg, n);
+    }
+
+    private void growSegments() {
+        int n = segRoot.length * 2;
+        segRoot = Arrays.copyOf(segRoot, n);
+        segLines = Arrays.copyOf(segLines, n);
+        segCols = Arrays.copyOf(segCols, n);
+        segTokens = Arrays.copyOf(segTokens, n);
+        segFirst = Arrays.copyOf(segFirst, n);
+        segFirstCol = Arrays.copyOf(segFirstCol, n);
+        segLast = Arrays.copyOf(segLast, n);
+        segLastCol = Arrays.copyOf(segLastCol, n);
+    }
+}
@@ -3,31 +3,68 @@ import java.util.*;
 
 public class OutputController {
     private String file;    
-    private FileWriter fw;
+    private Writer fw;
     private int line;
-    private List<Integer> buff;
+    private SourceCursor source; // the listing is this source text up to listedTo, null until the lexer reports anything
+    private int listedTo = 0;
+    private int eofReads = 0; // a blank line is listed for each time the lexer read past the end
+    private List<CompilerError> lexErrors;
     private List<CompilerError> errors;
 
     public OutputController(String filename) {
         file = createFileName(filename);
         fw = initFileWriter();
-        buff = new ArrayList<>();
+        lexErrors = new ArrayList<>();
         errors = new ArrayList<>();
         line = 0;
     }
 
-    /* Adds a char to the lsiting file buffer, helps keep this buffer in sync with the chars
-     * read/ unread while lexing to save needing multiple file reads.
+    /* A controller that writes its listing to w instead of a file, for the test harnesses that compare listings. */
+    OutputController(Writer w) {
+        fw = w;
+        lexErrors = new ArrayList<>();
+        errors = new ArrayList<>();
+        line = 0;
+    }
+
+    /* A scratch controller for a lexer working on one chunk of the source (see ParallelLexer). Nothing is written to a file,
+     * it just holds what the lexer reported until the chunk is stitched back into the real controller.
      */
-    public void addToBuffer(int c) {
-        buff.add(c);
-    } 
+    OutputController() {
+        lexErrors = new ArrayList<>();
+        errors = new ArrayList<>();
+    }
 
-    /* Removes latest char in the lsiting file buffer, helps keep this buffer in sync with the chars    
-     * read/ unread while lexing to save needing multiple file reads.
+    /* Notes that the lexer has been through the source up to offset to, the listing is copied straight out of the source
+     * when it is written so nothing is buffered here per char.
      */
-    public void removeLastFromBuffer() {
-        buff.remove(buff.size() - 1);
+    void listUpTo(SourceCursor src, int to) {
+        source = src;
+        if (to > listedTo) listedTo = to;
+    }
+
+    /* Notes that the lexer ran into the end of the source n more times. */
+    void listEofReads(int n) {
+        eofReads += n;
+    }
+
+    /* Moves a scratch controller's listing extent and its first n lexical errors across to this one. */
+    void takeFrom(OutputController scratch, int n) {
+        if (scratch.source != null) listUpTo(scratch.source, scratch.listedTo);
+        eofReads += scratch.eofReads;
+        lexErrors.addAll(scratch.lexErrors.subList(0, n));
+    }
+
+    /* How many lexical errors have been reported so far. */
+    int lexErrorCount() {
+        return lexErrors.size();
+    }
+
+    /* Reports a lexical error to be outputted to the listing file. The lexer now runs alongside the parser, so these are
+     * kept apart and listed ahead of the syntax and semantic errors, same order as when the whole file was lexed first.
+     */
+    public void addLexError(CompilerError e) {
+        lexErrors.add(e);
     }
 
     /* Reports an error to be outputted to the listing file. */
@@ -35,56 +72,57 @@ public class OutputController {
         errors.add(e);
     }
 
-    /* Commits and writes the listing file buffer to the output file. This is called when the EOF is reached in the lexer. */
+    /* Writes the listing file: the source a line at a time with line numbers, then the errors. Everything goes through one
+     * buffered writer and is flushed once at the end. This is called once everything has been lexed and checked.
+     */
     public void commitBuffer() throws IOException {
         addLineNum();
-        for (int c : buff) { outputChar(c); }
+        if (source != null) outputSource();
+        for (; eofReads > 0; eofReads--) fw.append("\n");
         outputErrors();
+        fw.close();
     }
 
-    /* Outputs one char at a time to the output file. */
-    private void outputChar(int c) throws IOException {
-        if (c == '\n') {    // if char is newline, append and then increment line num
-            fw.append((char) c);
-            fw.flush();
-            addLineNum(); 
-            return;
-        }
-        if (c == -1) { 
-            fw.append("\n");
-            fw.flush();
-            return;
+    /* Copies the listed source across a whole line at a time, a line number goes after every newline. */
+    private void outputSource() throws IOException {
+        char[] buf = source.array();
+        LineMap lines = source.lines();
+        int n = lines.lineCount();
+        for (int i = 0; i < n; i++) {
+            int from = lines.lineStart(i);
+            if (from >= listedTo) break;
+            int to = Math.min(listedTo, (i + 1 < n) ? lines.lineStart(i + 1) : source.end());
+            fw.write(buf, from, to - from);
+            if (buf[to - 1] == '\n') addLineNum();
         }
-        fw.append((char) c);
-        fw.flush();
     }
 
     /* Outputs the errors to the listing file (if any) */
     private void outputErrors() throws IOException {
         fw.append("\n\tERRORS:\n-----------------------------------");
-        if (errors.size() > 0) {
+        if (lexErrors.size() > 0 || errors.size() > 0) {
+            for (CompilerError e : lexErrors) {
+                fw.append(e.toString());
+            }
             for (CompilerError e : errors) {
                 fw.append(e.toString());
-                fw.flush();
             }
         }
         else {
             fw.append("\nNo errors found.");
-            fw.flush();
         }
     }
 
     /* Handles the printing and incrementing of line numbers. */
     private void addLineNum() throws IOException {
         line++;
-        fw.append(String.valueOf(line) + "  ");
-        fw.flush();
+        fw.append(String.valueOf(line)).append("  ");
     }
 
-    /* Creates a new file writer object with correct filename: 'inputfilename.lst' */
-    private FileWriter initFileWriter() {
+    /* Creates a new buffered file writer with correct filename: 'inputfilename.lst' */
+    private Writer initFileWriter() {
         try {
-            FileWriter writer = new FileWriter(file, false);
+            Writer writer = new BufferedWriter(new FileWriter(file, false), 1 << 16);
             return writer;
         }
         catch (IOException e) {
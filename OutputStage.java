@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes the listing file and prints the report for each compiled file on a background thread
+ *
+ * CD hands over a Report once code generation is done and goes straight on to the next file. Everything in a Report is left alone
+ * by the compile thread from then on: the errors are copied, the assembly is already a String and the AST and listing belong to a
+ * file that is finished with. Reports are written one at a time in the order they came in, so stdout and the .lst files come out
+ * exactly as if every file was compiled and printed in turn. close() waits for the last one.
+ */
+final class OutputStage implements AutoCloseable {
+
+    // everything needed to write out one compiled file
+    record Report(String filename, OutputController listing, StNode root, List<CompilerError> errors, String assembly, String notes) {}
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "output");
+        t.setDaemon(true); // close() joins it, it shouldn't hold the JVM up on its own
+        return t;
+    });
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    void submit(Report r) {
+        pending.add(writer.submit(() -> write(r)));
+    }
+
+    // same order the compile used to print things in, the code generator's messages came out before the listing was written
+    private static void write(Report r) {
+        System.out.print(r.notes());
+        try {
+            r.listing().commitBuffer();
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + r.filename());
+            return;
+        }
+        System.out.println(r.assembly());
+        TreePrinter.printReport(r.root(), r.errors(), System.out);
+        TreePrinter.print(r.root());
+    }
+
+    // waits for every report to be written, anything that blew up while writing is thrown again here
+    public void close() {
+        writer.shutdown();
+        try {
+            for (Future<?> f : pending) f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
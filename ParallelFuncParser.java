@@ -0,0 +1,140 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parses the functions of a program that was lexed up front (see BufferedTokens) on a ForkJoinPool, the one the caller is running
+ * in or the common pool
+ *
+ * A pre-scan over the token columns finds each top level func ... end: begin, for and if open a block, end closes one, and the
+ * function is over at the end that closes its begin. The functions are cut into batches of about the same number of tokens and
+ * each batch is parsed by its own Parser, over a slice of just those tokens, into its own NodeArena. The arenas are copied into
+ * the real one in source order afterwards, so the NFUND nodes come out in the same order and shape the sequential parser builds.
+ *
+ * Only clean functions are kept. One that reported a syntax error, or whose body didn't stop right on its closing end, could have
+ * recovered differently with the rest of the program after it, so everything from the first such function on is dropped and the
+ * real parser carries on from there one function at a time. The errors then come out exactly as a sequential parse reports them.
+ */
+final class ParallelFuncParser {
+    static final int MIN_FUNCS = 8; // fewer functions than this aren't worth handing out
+    static final int MIN_CHARS = 64 << 10; // smaller files parse quicker than the functions can be handed out, CD streams their tokens
+    private static final int BATCHES_PER_THREAD = 4; // a few batches each so a thread that gets long functions doesn't hold the rest up
+
+    private ParallelFuncParser() {}
+
+    // the NFUND nodes kept, already in the caller's arena, and the token to carry on from (the closing end of the last one kept)
+    record Parsed(int[] roots, int resumeAt) {}
+
+    // one function's tokens, func is its func token and end the end that closes its body
+    private record Span(int func, int end) {}
+
+    /**
+     * Parses the functions from token `from` on, copying the clean ones into ast in source order
+     * Hands back no roots and resumeAt = from on a single thread pool, when there weren't enough functions to bother or the first
+     * one wasn't clean
+     */
+    static Parsed parse(BufferedTokens tokens, int from, NodeArena ast, SymbolTable table) {
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        int threads = pool.getParallelism();
+        if (threads < 2) return new Parsed(new int[0], from); // one thread, the copying would only cost
+        List<Span> spans = scan(tokens, from);
+        if (spans.size() < MIN_FUNCS) return new Parsed(new int[0], from);
+
+        List<Batch> batches = split(spans, threads * BATCHES_PER_THREAD);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Batch b : batches) {
+            tasks.add(pool.submit(() -> b.parse(tokens, table)));
+        }
+        for (ForkJoinTask<?> t : tasks) t.join();
+
+        // copy the batches across in order, stopping at the first function that wasn't clean
+        int[] roots = new int[spans.size()];
+        int kept = 0;
+        int resumeAt = from;
+        for (Batch b : batches) {
+            if (b.kept == 0) break;
+            int offset = ast.append(b.ast);
+            for (int k = 0; k < b.kept; k++) roots[kept++] = offset + b.roots[k];
+            resumeAt = b.spans.get(b.kept - 1).end();
+            if (b.kept < b.spans.size()) break;
+        }
+        return new Parsed(Arrays.copyOf(roots, kept), resumeAt);
+    }
+
+    // where every function from `from` on starts and ends, stops at anything that isn't another func after an end, or doesn't close
+    private static List<Span> scan(BufferedTokens tokens, int from) {
+        List<Span> spans = new ArrayList<>();
+        int n = tokens.end();
+        int k = from;
+        while (k < n && tokens.type(k) == TokenType.TFUNC) {
+            int func = k;
+            int depth = 0;
+            for (k++; k < n; k++) {
+                TokenType t = tokens.type(k);
+                if (t == TokenType.TBEGN) {
+                    depth++;
+                } else if (t == TokenType.TTFOR || t == TokenType.TIFTH) {
+                    if (depth == 0) return spans; // a statement before the body, leave this one to the real parser
+                    depth++;
+                } else if (t == TokenType.TTEND) {
+                    if (--depth == 0) break;
+                    if (depth < 0) return spans;
+                } else if (depth == 0 && (t == TokenType.TFUNC || t == TokenType.TMAIN)) {
+                    return spans; // never got to its body
+                }
+            }
+            if (k == n) return spans; // ran off the end without closing
+            spans.add(new Span(func, k));
+            k++;
+        }
+        return spans;
+    }
+
+    // contiguous runs of functions with about the same number of tokens in each
+    private static List<Batch> split(List<Span> spans, int want) {
+        int first = spans.get(0).func();
+        int total = spans.get(spans.size() - 1).end() + 1 - first;
+        int per = Math.max(1, total / Math.max(1, want));
+
+        List<Batch> batches = new ArrayList<>();
+        int start = 0;
+        for (int k = 0; k < spans.size(); k++) {
+            int size = spans.get(k).end() + 1 - spans.get(start).func();
+            if (size >= per || k == spans.size() - 1) {
+                batches.add(new Batch(spans.subList(start, k + 1)));
+                start = k + 1;
+            }
+        }
+        return batches;
+    }
+
+    // a run of functions parsed together on one thread
+    private static final class Batch {
+        final List<Span> spans;
+        final NodeArena ast = new NodeArena();
+        final int[] roots; // NFUND node of each clean function, in this batch's arena
+        int kept = 0; // how many functions from the front of the batch parsed clean
+
+        Batch(List<Span> spans) {
+            this.spans = spans;
+            this.roots = new int[spans.size()];
+        }
+
+        void parse(BufferedTokens tokens, SymbolTable table) {
+            int base = spans.get(0).func();
+            TokenStream ts = new TokenStream(tokens.slice(base, spans.get(spans.size() - 1).end() + 1), base); // same numbers as the whole file
+            ErrorReporter er = new ErrorReporter(new OutputController()); // scratch, nothing from here is reported
+            ast.reserve(spans.get(spans.size() - 1).end() + 1 - base);
+            Parser parser = new Parser(ts, table, er, ast);
+            try {
+                for (Span s : spans) {
+                    StNode f = parser.parseFunc();
+                    if (er.hasErrors() || ts.position() != s.end()) return;
+                    roots[kept++] = f.id();
+                    ts.consume(); // its end, the next func comes straight after
+                }
+            } catch (StackOverflowError e) {
+                // nested deeper than a pool thread's stack, the compile thread is sized for it (see CD) so it gets parsed there
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks parsing functions on the pool against the plain sequential parse, run with: java ParallelFuncParserTest [random programs]
+ *
+ * Random programs with enough functions to be handed out are parsed once by a Parser streaming tokens off a Lexer and once
+ * inside a ForkJoinPool(4) over the same source lexed up front, which is what has ParallelFuncParser parse the functions.
+ * Some functions get a syntax error or an unclosed block, so the sequential parse has to take over partway. Both trees have
+ * to print the same (see IncrementalParserTest.dump) and report the same errors in the same order. Programs made without the
+ * broken bodies also have to have had every function parsed on the pool, so the test can't pass by never going parallel.
+ * Prints the program and the first difference and exits with 1.
+ */
+final class ParallelFuncParserTest {
+    // function bodies, the last few are broken
+    private static final String[] STATS = {
+        "x = a + 1;", "Out << x << Line;", "if (a < b) x = 2; end", "if (a) x = 1; else x = 2; end", "for (i = 0; i < a) x += i; end",
+        "repeat (t = 1) t *= 2; until t > 3", "return a * 2;", "x = f0(a, b + 1);", "In >> x;", "x = arr[i].val ^ 2;",
+        "x = 1", "x = ;", "if (a < b) x = 1;", "for (i = 0 i < a) end", "x = (a + ;",
+    };
+    private static final int BROKEN = 5; // how many of the STATS at the end are
+
+    public static void main(String[] args) throws Exception {
+        int programs = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+        Random rnd = new Random(17);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < programs; i++) {
+                boolean broken = i % 3 == 0;
+                if (!run(program(rnd, broken), pool, !broken)) System.exit(1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("ok, " + programs + " programs");
+    }
+
+    private static String program(Random rnd, boolean broken) {
+        StringBuilder sb = new StringBuilder("CD25 par\n");
+        int funcs = ParallelFuncParser.MIN_FUNCS + rnd.nextInt(40);
+        for (int f = 0; f < funcs; f++) {
+            sb.append("func f").append(f).append("(a : integer, b : integer) : integer\n    x : integer, i : integer, t : integer\nbegin\n");
+            int n = 1 + rnd.nextInt(6);
+            for (int k = 0; k < n; k++) {
+                int pick = broken && rnd.nextInt(30) == 0 ? STATS.length - 1 - rnd.nextInt(BROKEN) : rnd.nextInt(STATS.length - BROKEN);
+                sb.append("    ").append(STATS[pick]).append('\n');
+            }
+            sb.append("end\n\n");
+        }
+        return sb.append("main\n    x : integer\nbegin\n    x = f0(1, 2);\nend CD25 par\n").toString();
+    }
+
+    // false (after printing why) when the parallel parse differs from the sequential one, or clean wasn't all parsed on the pool
+    static boolean run(String src, ForkJoinPool pool, boolean clean) {
+        List<String> seqErrors = new ArrayList<>(), parErrors = new ArrayList<>();
+        String seq = parse(new Lexer(new SourceCursor(src), new OutputController(), new NamePool()), seqErrors);
+        String par = pool.submit(() -> {
+            NamePool names = new NamePool();
+            return parse(new ParallelLexer(new SourceCursor(src), new OutputController(), names, src.length()), parErrors);
+        }).join();
+
+        String wrong = null;
+        if (!seqErrors.equals(parErrors)) {
+            wrong = "errors differ\n   sequential " + seqErrors + "\n   parallel   " + parErrors;
+        } else if (!seq.equals(par)) {
+            String[] s = seq.split("\n"), p = par.split("\n");
+            for (int i = 0; wrong == null; i++) {
+                String si = (i < s.length) ? s[i] : "<none>", pi = (i < p.length) ? p[i] : "<none>";
+                if (!si.equals(pi)) wrong = "node " + i + "\n   sequential " + si + "\n   parallel   " + pi;
+            }
+        } else if (clean) {
+            int kept = pool.submit(() -> onPool(src)).join();
+            if (kept != funcs(src)) wrong = "only " + kept + " of " + funcs(src) + " functions were parsed on the pool";
+        }
+        if (wrong == null) return true;
+        System.out.println("FAIL: " + wrong + "\n--- program\n" + src);
+        return false;
+    }
+
+    // the tree as IncrementalParserTest prints it, the syntax errors into errors
+    private static String parse(TokenSource tokens, List<String> errors) {
+        NamePool names = new NamePool();
+        ErrorReporter er = new ErrorReporter(new OutputController());
+        StNode root = new Parser(new TokenStream(tokens), new SymbolTable(names), er).parseProgram();
+        for (CompilerError e : er.all()) errors.add(e.toString());
+        return IncrementalParserTest.dump(root);
+    }
+
+    // how many functions ParallelFuncParser keeps from the first func on
+    private static int onPool(String src) {
+        NamePool names = new NamePool();
+        ParallelLexer pl = new ParallelLexer(new SourceCursor(src), new OutputController(), names, src.length());
+        int first = 0;
+        while (pl.type(first) != TokenType.TFUNC) first++;
+        return ParallelFuncParser.parse(pl, first, new NodeArena(), new SymbolTable(names)).roots().length;
+    }
+
+    private static int funcs(String src) {
+        return src.split("\nfunc ", -1).length - 1;
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Lexes a big source file in chunks on a ForkJoinPool, then hands the tokens out one at a time like a normal Lexer
+ *
+ * The source is cut just after a newline roughly every chunkSize chars. Tokens never run over a newline, so the only thing a cut
+ * can land inside is a multi line comment (a string stops at the newline). Each chunk is lexed as if it began outside one,
+ * keeping the tokens that start inside the chunk and noting where the token after them starts.
+ *
+ * Stitching walks the chunks in order. A chunk is only used if its first token starts exactly where the chunk before it said the
+ * next token would, then both lexers are sitting at the same token start with nothing pending, so they agree from there on.
+ * Otherwise the cut landed in a comment and the chunk is lexed again on this thread from where the one before it left off.
+ *
+ * Line/col come from the shared LineMap so nothing needs shifting. Each chunk interns into its own NamePool, the ids are
+ * mapped onto the real pool while stitching in source order, so names get the same ids the plain Lexer would give them.
+ * Lexical errors and how far the listing goes go through scratch OutputControllers and are copied across for the chunks that are kept.
+ * Stitching stops at the first chunk that reaches the end of the file (a comment left open can run there from any chunk), so
+ * the reads past the end are only counted once.
+ */
+final class ParallelLexer implements BufferedTokens {
+    static final int DEFAULT_CHUNK = 1 << 20; // chars per chunk, ~1M
+    static final int THRESHOLD = 4 << 20; // files smaller than this aren't worth splitting, CD lexes them in one chunk or as it parses
+
+    private final SourceCursor src;
+    private final OutputController oc;
+    private final NamePool names;
+    private final Lexer lexemes; // never scanned, only used to rebuild lexemes against the real pool
+
+    // every token in the file, in columns, once lexing is done
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] nameIds = new int[1024];
+    private int count = 0;
+
+    private int next = 0; // index of the next token scan() hands out
+    private int lastStart = -1; // start of the last token handed out, T_EOF reports this as its start like the Lexer does
+
+    ParallelLexer(SourceCursor src, OutputController oc, NamePool names) {
+        this(src, oc, names, DEFAULT_CHUNK);
+    }
+
+    ParallelLexer(SourceCursor src, OutputController oc, NamePool names, int chunkSize) {
+        this.src = src;
+        this.oc = oc;
+        this.names = names;
+        src.lines().built(); // build the line table before any worker needs it
+        this.lexemes = new Lexer(src, oc, names);
+        lexAll(Math.max(1, chunkSize));
+    }
+
+    // what one chunk lexer found
+    private static final class Chunk {
+        final int from, to; // the chunk covers [from, to)
+        final boolean last; // the chunk that runs to the end of the file
+        final OutputController scratch;
+        final NamePool pool;
+        byte[] types = new byte[256];
+        int[] starts = new int[256];
+        int[] lengths = new int[256];
+        int[] nameIds = new int[256];
+        int count = 0;
+        int first; // where the first token the chunk found starts, same as after if it found none
+        int after; // where the token after the chunk starts, the end of the source if there is none
+        int errors; // lexical errors that belong to the kept tokens
+
+        Chunk(int from, int to, boolean last, NamePool pool) {
+            this.from = from;
+            this.to = to;
+            this.last = last;
+            this.pool = pool;
+            this.scratch = new OutputController();
+        }
+
+        // lex from a position until the next token would start at or past the end of the chunk
+        void lex(SourceCursor whole, int at) {
+            Lexer lx = new Lexer(new SourceCursor(whole, at), scratch, pool);
+            int end = whole.end();
+            while (true) {
+                int errorsBefore = scratch.lexErrorCount();
+                TokenType tt = lx.scan();
+                int st = lx.tokenStart();
+                if (tt == TokenType.T_EOF || st >= to) {
+                    after = (tt == TokenType.T_EOF) ? end : st;
+                    errors = (tt == TokenType.T_EOF) ? scratch.lexErrorCount() : errorsBefore; // the next token's errors aren't ours
+                    break;
+                }
+                if (count == types.length) {
+                    types = Arrays.copyOf(types, count * 2);
+                    starts = Arrays.copyOf(starts, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                    nameIds = Arrays.copyOf(nameIds, count * 2);
+                }
+                types[count] = (byte) tt.getId();
+                starts[count] = st;
+                lengths[count] = lx.tokenLength();
+                nameIds[count] = lx.tokenNameId();
+                count++;
+            }
+            first = (count > 0) ? starts[0] : after;
+        }
+    }
+
+    private void lexAll(int chunkSize) {
+        // cut just after a newline at or past every chunkSize chars
+        List<Chunk> chunks = new ArrayList<>();
+        int end = src.end();
+        int from = 0;
+        do { // an empty file still gets one (empty) chunk to find its T_EOF
+            int to = Math.min(end, from + chunkSize);
+            while (to < end && src.charAt(to - 1) != '\n') to++;
+            chunks.add(new Chunk(from, to, to == end, new NamePool()));
+            from = to;
+        } while (from < end);
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk c : chunks) {
+            tasks.add(ForkJoinPool.commonPool().submit(() -> c.lex(src, c.from)));
+        }
+        for (ForkJoinTask<?> t : tasks) t.join();
+
+        stitch(chunks);
+    }
+
+    private void stitch(List<Chunk> chunks) {
+        int expected = 0; // where the next token really starts, as far as the chunks stitched so far know
+        for (Chunk c : chunks) {
+            if (c.from > 0 && c.first != expected) { // the first chunk starts where the file does, so it is always right
+                if (expected >= c.to && !c.last) continue; // a comment runs right over this chunk, nothing starts in it
+                // the cut landed inside a comment, lex the chunk again from where the real token stream is
+                Chunk redo = new Chunk(c.from, c.to, c.last, names);
+                redo.lex(src, expected);
+                c = redo;
+            }
+            for (int k = 0; k < c.count; k++) {
+                int id = c.nameIds[k];
+                if (id >= 0 && c.pool != names) id = names.intern(c.pool.name(id)); // map onto the real pool in source order
+                add(c.types[k], c.starts[k], c.lengths[k], id);
+            }
+            oc.takeFrom(c.scratch, c.errors);
+            expected = c.after;
+            if (expected == src.end()) break; // this chunk reached the T_EOF and listed its EOF reads, there is nothing after it
+        }
+    }
+
+    private void add(byte type, int start, int length, int nameId) {
+        if (count == types.length) {
+            types = Arrays.copyOf(types, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            nameIds = Arrays.copyOf(nameIds, count * 2);
+        }
+        types[count] = type;
+        starts[count] = start;
+        lengths[count] = length;
+        nameIds[count] = nameId;
+        count++;
+    }
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // how many tokens the file lexed to, not counting T_EOF
+    int count() {
+        return count;
+    }
+
+    public int first() {
+        return 0;
+    }
+
+    public int end() {
+        return count;
+    }
+
+    // the columns of token n, any n below count()
+    // they aren't touched after the constructor, so slices of them can be read at once from different threads
+    public TokenType type(int n) {
+        return TYPES[types[n]];
+    }
+
+    public int start(int n) {
+        return starts[n];
+    }
+
+    public int length(int n) {
+        return lengths[n];
+    }
+
+    public int nameId(int n) {
+        return nameIds[n];
+    }
+
+    public TokenType scan() {
+        if (next < count) {
+            lastStart = starts[next];
+            return TYPES[types[next++]];
+        }
+        next = count + 1; // past the end, tokenStart() reports lastStart from now on
+        return TokenType.T_EOF;
+    }
+
+    public int tokenStart() {
+        return (next <= count) ? starts[next - 1] : lastStart;
+    }
+
+    public int tokenLength() {
+        return (next <= count) ? lengths[next - 1] : 0;
+    }
+
+    public int tokenNameId() {
+        return (next <= count) ? nameIds[next - 1] : -1;
+    }
+
+    public String lexeme(TokenType tt, int start, int length, int nameId) {
+        return lexemes.lexeme(tt, start, length, nameId);
+    }
+
+    public LineMap lines() {
+        return src.lines();
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Checks ParallelLexer against a plain Lexer over the same source, run with: java ParallelLexerTest [random sources]
+ *
+ * Both have to hand out the same tokens (type, start, length, name id and lexeme) and leave the same listing behind, errors
+ * and the blank lines for reads past the end included. Each fixed case is lexed at every chunk size from 1 char up, so cuts
+ * land on every line of it, then random sources made of the pieces that matter to a cut (comments open and closed, strings
+ * cut off by a newline, bad chars) are lexed at a few chunk sizes each. Prints what differs for the first source that fails
+ * and exits with 1.
+ */
+final class ParallelLexerTest {
+    // sources that have broken the stitching before
+    private static final String[] CASES = {
+        "",
+        "\n",
+        "a b\n",
+        "a b\n/** x\ny\nz\nw\n", // a comment left open in an early chunk runs to the end, its EOF reads were counted twice
+        "/**\n",
+        "a\n/**\nb\n**/ c\nd\n",
+        "a /-- b\nc \"str\nd\"\n",
+        "CD25 p\nmain\n  x : int\nbegin\n  x = 1 + 2;\nend CD25 p\n",
+        "@ # \n$ x\n/** never\nclosed",
+    };
+
+    // what random sources are made of
+    private static final String[] PIECES = {
+        "a", "b1", "abc", "CD25", "main", "begin", "end", "int", "real", "12", "3.5", "1.", "+", "-", "*", "/", "<=", ">=",
+        "!=", "==", "=", "<<", ">>", ";", ",", ":", "[", "]", "(", ")", "\"s t\"", "\"open", "/-- line", "/**", "**/",
+        "/** in */", "@", "#", "!", "&", " ", " ", "\n", "\n", "\n", "\t",
+    };
+
+    public static void main(String[] args) throws IOException {
+        int sources = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int run = 0;
+        for (String s : CASES) {
+            for (int chunk = 1; chunk <= s.length() + 1; chunk++) {
+                if (!same(s, chunk)) System.exit(1);
+                run++;
+            }
+        }
+
+        Random rnd = new Random(8);
+        for (int i = 0; i < sources; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = rnd.nextInt(200);
+            for (int k = 0; k < n; k++) {
+                sb.append(PIECES[rnd.nextInt(PIECES.length)]);
+                if (rnd.nextInt(3) == 0) sb.append(' ');
+            }
+            String s = sb.toString();
+            for (int chunk : new int[] { 1, 2 + rnd.nextInt(8), 10 + rnd.nextInt(100), s.length() + 1 }) {
+                if (!same(s, chunk)) System.exit(1);
+                run++;
+            }
+        }
+        System.out.println("ok, " + run + " runs");
+    }
+
+    // lexes s both ways, false (after printing why) if they differ
+    static boolean same(String s, int chunk) throws IOException {
+        StringWriter serialLst = new StringWriter(), parallelLst = new StringWriter();
+        List<String> serial = lex(s, serialLst, -1);
+        List<String> parallel = lex(s, parallelLst, chunk);
+
+        if (serial.equals(parallel) && serialLst.toString().equals(parallelLst.toString())) return true;
+        System.out.println("FAIL at chunk size " + chunk + " on:\n" + s);
+        System.out.println("-- serial tokens\n" + serial + "\n-- parallel tokens\n" + parallel);
+        System.out.println("-- serial listing\n" + serialLst + "\n-- parallel listing\n" + parallelLst);
+        return false;
+    }
+
+    // every token as type@start+length#id"lexeme", the listing goes to lst; chunk < 0 lexes with a plain Lexer
+    private static List<String> lex(String s, Writer lst, int chunk) throws IOException {
+        SourceCursor src = new SourceCursor(s);
+        OutputController oc = new OutputController(lst);
+        NamePool names = new NamePool();
+        TokenSource lx = (chunk < 0) ? new Lexer(src, oc, names) : new ParallelLexer(src, oc, names, chunk);
+
+        List<String> out = new ArrayList<>();
+        TokenType tt;
+        do {
+            tt = lx.scan();
+            int st = lx.tokenStart(), len = lx.tokenLength(), id = lx.tokenNameId();
+            out.add(tt + "@" + st + "+" + len + "#" + id + "\"" + lx.lexeme(tt, st, len, id) + "\"");
+        } while (tt != TokenType.T_EOF);
+        oc.commitBuffer();
+        return out;
+    }
+}
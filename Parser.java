@@ -1,11 +1,13 @@
-import java.util.Set;
+import java.util.*;
 
 public class Parser {
     private final TokenStream ts;
     private final ErrorReporter er;
     private final SymbolTable table;
+    private final NodeArena ast; // every node of the tree lives in here
+    private Map<Integer, Integer> reusable = Map.of(); // old statements and functions by first token, see IncrementalParser
 
-    private static final Set<TokenType> STAT_FOLLOW = Set.of(
+    private static final TokenSet STAT_FOLLOW = TokenSet.of(
         TokenType.TSEMI,   // end of a simple statement
         TokenType.TTEND,   // end of block
         TokenType.TELSE,   // else
@@ -13,7 +15,7 @@ public class Parser {
         TokenType.T_EOF    // safety
     );
 
-    private static final Set<TokenType> INIT_FOLLOW = Set.of(
+    private static final TokenSet INIT_FOLLOW = TokenSet.of(
         TokenType.TCOMA,    // next init statement
         TokenType.TTYPS,    // types block
         TokenType.TARRS,    // arrays block
@@ -21,7 +23,7 @@ public class Parser {
         TokenType.TMAIN     // main
     );
 
-    private static final Set<TokenType> TYPE_FOLLOW = Set.of(
+    private static final TokenSet TYPE_FOLLOW = TokenSet.of(
         TokenType.TCOMA,
         TokenType.TTEND,
         TokenType.TARRS,
@@ -29,14 +31,14 @@ public class Parser {
         TokenType.TMAIN
     );
 
-    private static final Set<TokenType> DECL_FOLLOW = Set.of(
+    private static final TokenSet DECL_FOLLOW = TokenSet.of(
         TokenType.TTEND,
         TokenType.TARRS,
         TokenType.TFUNC,
         TokenType.TMAIN
     );
 
-    private static final Set<TokenType> ASGN_OPS = Set.of(
+    private static final TokenSet ASGN_OPS = TokenSet.of(
         TokenType.TEQUL,  // =
         TokenType.TPLEQ,  // +=
         TokenType.TMNEQ,  // -=
@@ -44,7 +46,7 @@ public class Parser {
         TokenType.TDVEQ   // /=
     );
 
-    private static final Set<TokenType> STAT_START = Set.of(
+    private static final TokenSet STAT_START = TokenSet.of(
         TokenType.TINPT,  // In
         TokenType.TOUTP,  // Out
         TokenType.TRETN,  // Return
@@ -52,86 +54,192 @@ public class Parser {
         TokenType.TTFOR
     );
 
-    private static final Set<TokenType> ARRDECL_FOLLOW = Set.of(
+    // what a statement can start with, STAT_START above is only the ones safe to resync on
+    private static final TokenSet STAT_FIRST = TokenSet.of(
+        TokenType.TINPT,  // In
+        TokenType.TOUTP,  // Out
+        TokenType.TRETN,  // Return
+        TokenType.TIDEN,  // AsgnStat or CallStat
+        TokenType.TTFOR,
+        TokenType.TIFTH,
+        TokenType.TREPT
+    );
+
+    // the blocks that can come after the types block
+    private static final TokenSet TYPES_END = TokenSet.of(
+        TokenType.TARRS,
+        TokenType.TFUNC,
+        TokenType.TMAIN
+    );
+
+    private static final TokenSet SIMPLE_TYPES = TokenSet.of(
+        TokenType.TINTG,
+        TokenType.TREAL,
+        TokenType.TBOOL
+    );
+
+    private static final TokenSet RETURN_TYPES = SIMPLE_TYPES.union(TokenSet.of(TokenType.TVOID));
+
+    private static final TokenSet ARRDECL_FOLLOW = TokenSet.of(
         TokenType.TCOMA,
         TokenType.TFUNC,
         TokenType.TMAIN
     );
 
-    private static final Set<TokenType> FUNC_FOLLOW = Set.of(
+    private static final TokenSet FUNC_FOLLOW = TokenSet.of(
         TokenType.TFUNC,
         TokenType.TMAIN
     );
 
-    private static final Set<TokenType> PARAM_FOLLOW = Set.of(
+    private static final TokenSet PARAM_FOLLOW = TokenSet.of(
         TokenType.TCOMA,
         TokenType.TTEND,
         TokenType.TMAIN
     );
 
-    private static final Set<TokenType> DLIST_FOLLOW = Set.of(
+    private static final TokenSet DLIST_FOLLOW = TokenSet.of(
         TokenType.TCOMA,
         TokenType.TBEGN,
         TokenType.TTEND,
         TokenType.TMAIN
     );
 
-    private static final Set<TokenType> IF_FOLLOW = Set.of(
+    private static final TokenSet IF_FOLLOW = TokenSet.of(
         TokenType.TTEND
     );
 
+    // binding power of every binary operator by TokenType id, 0 for tokens that aren't one
+    private static final int BP_LOGIC = 1, BP_REL = 2, BP_ADD = 3, BP_MUL = 4, BP_POW = 5;
+    private static final int[] BINDING = new int[TokenType.values().length];
+    private static final StNodeKind[] BINARY_KIND = new StNodeKind[TokenType.values().length]; // the node each one builds
+
+    static {
+        binary(TokenType.TTAND, BP_LOGIC, StNodeKind.NAND);
+        binary(TokenType.TTTOR, BP_LOGIC, StNodeKind.NOR);
+        binary(TokenType.TTXOR, BP_LOGIC, StNodeKind.NXOR);
+        binary(TokenType.TEQEQ, BP_REL, StNodeKind.NEQL);
+        binary(TokenType.TNEQL, BP_REL, StNodeKind.NNEQ);
+        binary(TokenType.TGRTR, BP_REL, StNodeKind.NGRT);
+        binary(TokenType.TGEQL, BP_REL, StNodeKind.NGEQ);
+        binary(TokenType.TLESS, BP_REL, StNodeKind.NLSS);
+        binary(TokenType.TLEQL, BP_REL, StNodeKind.NLEQ);
+        binary(TokenType.TPLUS, BP_ADD, StNodeKind.NADD);
+        binary(TokenType.TMINS, BP_ADD, StNodeKind.NSUB);
+        binary(TokenType.TSTAR, BP_MUL, StNodeKind.NMUL);
+        binary(TokenType.TDIVD, BP_MUL, StNodeKind.NDIV);
+        binary(TokenType.TPERC, BP_MUL, StNodeKind.NMOD);
+        binary(TokenType.TCART, BP_POW, StNodeKind.NPOW);
+    }
+
+    private static void binary(TokenType tt, int bp, StNodeKind kind) {
+        BINDING[tt.getId()] = bp;
+        BINARY_KIND[tt.getId()] = kind;
+    }
+
     public Parser(TokenStream ts, SymbolTable table, ErrorReporter er) {
+        this(ts, table, er, new NodeArena());
+        // a tree has a few less nodes than tokens, so when they're all lexed already the arena can be made big enough up front
+        if (ts.source() instanceof BufferedTokens b) ast.reserve(b.end() - b.first());
+    }
+
+    // a parser building into an arena of its own choosing, ParallelFuncParser gives each batch of functions its own
+    Parser(TokenStream ts, SymbolTable table, ErrorReporter er, NodeArena ast) {
         this.ts = ts;
         this.table = table;
         this.er = er;
+        this.ast = ast;
+    }
+
+    // a new node in the arena, not under anything yet
+    private StNode node(StNodeKind kind, String lexeme, int nameId, int line, int col) {
+        return ast.node(ast.add(kind, lexeme, nameId, line, col));
+    }
+
+    private StNode node(StNodeKind kind, String lexeme, int line, int col) {
+        return node(kind, lexeme, -1, line, col);
+    }
+
+    /**
+     * wraps a token up as a leaf node, e.g. x = 5
+     * Token id = ts.expect(TokenType.TIDEN), ts.expect(TokenType.TEQUL), Token lit = ts.expect(TokenType.TILIT)
+     * return node(StNodeKind.NASGN, null, id.line, id.col).put(Ast.Assign.TARGET, leaf(StNodeKind.NSIMV, id)).put(Ast.Assign.VALUE, leaf(StNodeKind.NILIT, lit))
+     */
+    private StNode leaf(StNodeKind kind, Token t) {
+        return node(kind, (t != null ? t.lexeme : null),
+                          (t != null ? t.nameId : -1),
+                          (t != null ? t.line : -1),
+                          (t != null ? t.col : -1));
+    }
+
+    // special placeholder for undefined node, keeps tree consistent
+    private StNode undefAt(Token t) {
+        return ast.node(undefId(t));
+    }
+
+    private int undefId(Token t) {
+        return add(StNodeKind.NUNDEF, null,
+                   (t != null ? t.line : -1),
+                   (t != null ? t.col : -1));
+    }
+
+    // a new node by number, for the expression parser, which only makes a view once it's done (see parseBinary)
+    private int add(StNodeKind kind, String lexeme, int line, int col) {
+        return ast.add(kind, lexeme, -1, line, col);
+    }
+
+    // the current token as a leaf, consumed, read straight off the token columns
+    private int leafHere(StNodeKind kind) {
+        int n = ast.add(kind, ts.peekLexeme(), ts.peekNameId(), ts.peekLine(), ts.peekCol());
+        ts.consume();
+        return n;
     }
 
     public StNode parseProgram() {
-        StNode prog = new StNode(StNodeKind.NPROG, null, ts.peek().line, ts.peek().col);
+        StNode prog = node(StNodeKind.NPROG, null, ts.peekLine(), ts.peekCol());
         
         // CD25
         Token tCD25 = ts.expect(TokenType.TCD25);
         if(tCD25 == null) {
             er.syntax("expected 'cd25' at program start", ts.peek());
-            prog.add(StNode.undefAt(ts.peek()));
+            prog.add(undefAt(ts.peek()));
         }
 
         // CD25 progId
         Token progId = ts.expect(TokenType.TIDEN);
         if(progId == null) {
             er.syntax("expected program identifier after 'cd25'", ts.peek());
-            prog.add(StNode.undefAt(ts.peek()));
+            prog.put(Ast.Program.NAME, undefAt(ts.peek()));
         } else {
-            prog.add(StNode.leaf(StNodeKind.NSIMV, progId));
+            prog.put(Ast.Program.NAME, leaf(StNodeKind.NSIMV, progId));
         }
 
-        prog.add(parseGlobals());
+        prog.put(Ast.Program.GLOBALS, parseGlobals());
 
-        if (ts.peek().tokenType == TokenType.TFUNC) {
-            prog.add(parseFuncs());
+        if (ts.peekType() == TokenType.TFUNC) {
+            prog.put(Ast.Program.FUNCS, parseFuncs());
         }
 
-        prog.add(parseMainBody());
+        prog.put(Ast.Program.MAIN, parseMainBody());
 
         return prog;
     }
 
     private StNode parseGlobals() {
-        StNode glob = new StNode(StNodeKind.NGLOB, null, ts.peek().line, ts.peek().col);
-        if (ts.expect(TokenType.TCONS) != null) {
-            glob.add(parseConsts());
+        StNode glob = node(StNodeKind.NGLOB, null, ts.peekLine(), ts.peekCol());
+        if (ts.match(TokenType.TCONS)) {
+            glob.put(Ast.Globals.CONSTS, parseConsts());
         }
-        if (ts.expect(TokenType.TTYPS) != null) {
-            glob.add(parseTypes());
+        if (ts.match(TokenType.TTYPS)) {
+            glob.put(Ast.Globals.TYPES, parseTypes());
         }
-        if (ts.expect(TokenType.TARRS) != null) {
-            glob.add(parseArrays());
+        if (ts.match(TokenType.TARRS)) {
+            glob.put(Ast.Globals.ARRAYS, parseArrays());
         }
         return glob;
     }
 
     private StNode parseConsts() {
-        StNode initList = new StNode(StNodeKind.NILIST, null, ts.peek().line, ts.peek().col);
+        StNode initList = node(StNodeKind.NILIST, null, ts.peekLine(), ts.peekCol());
 
         initList.add(parseInit());
 
@@ -147,29 +255,29 @@ public class Parser {
         if (iden == null) {
             er.syntax("expected identifier in constant declaration", ts.peek());
             ts.syncTo(INIT_FOLLOW);
-            return new StNode(StNodeKind.NINIT, null, ts.peek().line, ts.peek().col);  // return dummy node to maintain AST
+            return node(StNodeKind.NINIT, null, ts.peekLine(), ts.peekCol());  // return dummy node to maintain AST
         }
-        if (ts.expect(TokenType.TTTIS) == null) {
+        if (!ts.match(TokenType.TTTIS)) {
             er.syntax("expected 'is' in constant declaration", ts.peek());
             ts.syncTo(INIT_FOLLOW);
-            return new StNode(StNodeKind.NINIT, null, ts.peek().line, ts.peek().col);
+            return node(StNodeKind.NINIT, null, ts.peekLine(), ts.peekCol());
         }
 
-        StNode init = new StNode(StNodeKind.NINIT, iden.lexeme, ts.peek().line, ts.peek().col);
-        init.add(StNode.leaf(StNodeKind.NSIMV, iden));
+        StNode init = node(StNodeKind.NINIT, iden.lexeme, iden.nameId, ts.peekLine(), ts.peekCol());
+        init.put(Ast.ConstInit.NAME, leaf(StNodeKind.NSIMV, iden));
         StNode expr = parseBool();
-        init.add(expr);
+        init.put(Ast.ConstInit.VALUE, expr);
         return init;
     }
 
     private StNode parseTypes() {
-        StNode typeList = new StNode(StNodeKind.NTYPEL, null, ts.peek().line, ts.peek().col);
+        StNode typeList = node(StNodeKind.NTYPEL, null, ts.peekLine(), ts.peekCol());
 
         typeList.add(parseType());
 
         while(ts.match(TokenType.TTEND)) {
             // breakout of type block if another block is encountered
-            if (ts.peek().tokenType == TokenType.TARRS || ts.peek().tokenType == TokenType.TFUNC || ts.peek().tokenType == TokenType.TMAIN) {
+            if (TYPES_END.contains(ts.peekType())) {
                 break;
             }
             typeList.add(parseType());
@@ -182,27 +290,27 @@ public class Parser {
         if (iden == null) {
             er.syntax("expected an identifier for the type", iden);
             ts.syncTo(TYPE_FOLLOW);
-            return StNode.undefAt(iden);
+            return undefAt(iden);
         }
-        if (ts.expect(TokenType.TTTIS) == null) {
+        if (!ts.match(TokenType.TTTIS)) {
             er.syntax("expected 'is' in type declaration", ts.peek());
             ts.syncTo(TYPE_FOLLOW);
-            return StNode.undefAt(iden);
+            return undefAt(iden);
         }
         // type is an array
-        if (ts.peek().tokenType == TokenType.TARAY) {
+        if (ts.peekType() == TokenType.TARAY) {
             ts.consume();
             return parseArrayType(iden);
         }
         // type is a struct
-        StNode structType =  new StNode(StNodeKind.NRTYPE, null, ts.peek().line, ts.peek().col);
-        structType.add(new StNode(StNodeKind.NSIMV, iden.lexeme, ts.peek().line, ts.peek().col));
-        structType.add(parseFields());
+        StNode structType =  node(StNodeKind.NRTYPE, null, ts.peekLine(), ts.peekCol());
+        structType.put(Ast.StructType.NAME, node(StNodeKind.NSIMV, iden.lexeme, iden.nameId, ts.peekLine(), ts.peekCol()));
+        structType.put(Ast.StructType.FIELDS, parseFields());
         return structType;
     }
 
     private StNode parseFields() {
-        StNode fieldList = new StNode(StNodeKind.NFLIST, null, ts.peek().line, ts.peek().col);
+        StNode fieldList = node(StNodeKind.NFLIST, null, ts.peekLine(), ts.peekCol());
         
         fieldList.add(parseDecl());
 
@@ -213,39 +321,39 @@ public class Parser {
     }
 
     private StNode parseDecl() {
-        StNode decl = new StNode(StNodeKind.NSDECL, null, ts.peek().line, ts.peek().col);
+        StNode decl = node(StNodeKind.NSDECL, null, ts.peekLine(), ts.peekCol());
         Token iden = ts.expect(TokenType.TIDEN);
         if (iden == null) {
             er.syntax("expected identifier in simple declaration", ts.peek());
             ts.syncTo(DECL_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        decl.add(StNode.leaf(StNodeKind.NSIMV, iden));
-        if (ts.expect(TokenType.TCOLN) == null) {
+        decl.put(Ast.SimpleDecl.NAME, leaf(StNodeKind.NSIMV, iden));
+        if (!ts.match(TokenType.TCOLN)) {
             er.syntax("expected ':' in simple declaration", ts.peek());
             ts.syncTo(DECL_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         Token stype = ts.peek();
-        if (stype.tokenType == TokenType.TINTG || stype.tokenType == TokenType.TREAL || stype.tokenType == TokenType.TBOOL) {
+        if (SIMPLE_TYPES.contains(stype.tokenType)) {
             ts.consume();
-            decl.add(StNode.leaf(StNodeKind.NSTYPE, stype));    // added custom StNode here
+            decl.put(Ast.SimpleDecl.TYPE, leaf(StNodeKind.NSTYPE, stype));    // added custom StNode here
         }
         else {
             er.syntax("expected type in simple declaration", ts.peek());
             ts.syncTo(DECL_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         return decl;
     }
 
     private boolean startsSimpleDecl() {
-        return ts.peek().tokenType == TokenType.TIDEN
-        && ts.lookahead(1).tokenType == TokenType.TCOLN;
+        return ts.peekType() == TokenType.TIDEN
+        && ts.lookaheadType(1) == TokenType.TCOLN;
     }
 
     private StNode parseSimpleDeclList() {
-        StNode decls = new StNode(StNodeKind.NSDLST, null, ts.peek().line, ts.peek().col);
+        StNode decls = node(StNodeKind.NSDLST, null, ts.peekLine(), ts.peekCol());
 
         decls.add(parseDecl());
 
@@ -260,38 +368,38 @@ public class Parser {
     }
 
     private StNode parseArrayType(Token iden) {
-        StNode node = new StNode(StNodeKind.NATYPE, null, ts.peek().line, ts.peek().col);
+        StNode node = node(StNodeKind.NATYPE, null, ts.peekLine(), ts.peekCol());
         // add typeId child
-        node.add(new StNode(StNodeKind.NSIMV, iden.lexeme, ts.peek().line, ts.peek().col));
-        if (ts.expect(TokenType.TLBRK) == null) {
+        node.put(Ast.ArrayType.NAME, node(StNodeKind.NSIMV, iden.lexeme, iden.nameId, ts.peekLine(), ts.peekCol()));
+        if (!ts.match(TokenType.TLBRK)) {
             er.syntax("expected '[' for array type declaration", ts.peek());
             ts.syncTo(TYPE_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         // add expr child
-        node.add(parseExpr());
-        if (ts.expect(TokenType.TRBRK) == null) {
+        node.put(Ast.ArrayType.SIZE, parseExpr());
+        if (!ts.match(TokenType.TRBRK)) {
             er.syntax("expected ']' for array type declaration", ts.peek());
             ts.syncTo(TYPE_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.expect(TokenType.TTTOF) == null) {
+        if (!ts.match(TokenType.TTTOF)) {
             er.syntax("expected 'of' for array type declaration", ts.peek());
             ts.syncTo(TYPE_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         Token structId = ts.expect(TokenType.TIDEN);
         if ( structId == null) {
             er.syntax("expected a struct identifier for the type", ts.peek());
             ts.syncTo(TYPE_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        node.add(new StNode(StNodeKind.NSIMV, structId.lexeme, ts.peek().line, ts.peek().col));
+        node.put(Ast.ArrayType.ELEM, node(StNodeKind.NSIMV, structId.lexeme, structId.nameId, ts.peekLine(), ts.peekCol()));
         return node;
     }
     
     private StNode parseArrays() {
-        StNode arrDecls = new StNode(StNodeKind.NALIST, null, ts.peek().line, ts.peek().col);
+        StNode arrDecls = node(StNodeKind.NALIST, null, ts.peekLine(), ts.peekCol());
         
         arrDecls.add(parseArrDecl());
 
@@ -302,36 +410,46 @@ public class Parser {
     }
 
     private StNode parseArrDecl() {
-        StNode decl = new StNode(StNodeKind.NARRD, null, ts.peek().line, ts.peek().col);
+        StNode decl = node(StNodeKind.NARRD, null, ts.peekLine(), ts.peekCol());
         Token iden = ts.expect(TokenType.TIDEN);
         if (iden == null) {
             er.syntax("expected identifier for array declaration", ts.peek());
             ts.syncTo(ARRDECL_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        decl.add(StNode.leaf(StNodeKind.NSIMV, iden));
-        if (ts.expect(TokenType.TCOLN) == null) {
+        decl.put(Ast.ArrayDecl.NAME, leaf(StNodeKind.NSIMV, iden));
+        if (!ts.match(TokenType.TCOLN)) {
             er.syntax("expected ':' in array declaration", ts.peek());
             ts.syncTo(ARRDECL_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         iden = ts.expect(TokenType.TIDEN);
         if (iden == null) {
             er.syntax("expected type identifier for array declaration", ts.peek());
             ts.syncTo(ARRDECL_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        decl.add(StNode.leaf(StNodeKind.NSIMV, iden));
+        decl.put(Ast.ArrayDecl.TYPE, leaf(StNodeKind.NSIMV, iden));
         return decl;
     }
 
     private StNode parseFuncs() {
-        StNode funcs = new StNode(StNodeKind.NFUNCS, null, ts.peek().line, ts.peek().col);
-        
-        funcs.add(parseFunc());
+        StNode funcs = node(StNodeKind.NFUNCS, null, ts.peekLine(), ts.peekCol());
+
+        // when the program is already lexed its functions can be parsed on the pool first, unless they're being reused from an old tree
+        // that leaves us on the end of the last one it kept, and we carry on from there the usual way
+        boolean ahead = false;
+        if (ts.source() instanceof BufferedTokens tokens && reusable.isEmpty()) {
+            ParallelFuncParser.Parsed done = ParallelFuncParser.parse(tokens, ts.position(), ast, table);
+            for (int root : done.roots()) funcs.add(ast.node(root));
+            ts.skipTo(done.resumeAt());
+            ahead = done.roots().length > 0;
+        }
+
+        if (!ahead) funcs.add(parseFunc());
 
         while (ts.match(TokenType.TTEND)) {
-            if (ts.peek().tokenType == TokenType.TMAIN) {
+            if (ts.peekType() == TokenType.TMAIN) {
                 break;
             }
             funcs.add(parseFunc());
@@ -339,59 +457,70 @@ public class Parser {
         return funcs;
     }
 
-    private StNode parseFunc() {
-        StNode func = new StNode(StNodeKind.NFUND, null, ts.peek().line, ts.peek().col);
-        if (ts.expect(TokenType.TFUNC) == null) {
+    // a function, noting the tokens it came from up to its closing end
+    StNode parseFunc() {
+        int from = ts.position();
+        StNode func = reused(from, true);
+        if (func == null) {
+            func = parseFuncDecl();
+            ast.setTokens(func.id(), from, ts.position(), ts.seen());
+        }
+        return func;
+    }
+
+    private StNode parseFuncDecl() {
+        StNode func = node(StNodeKind.NFUND, null, ts.peekLine(), ts.peekCol());
+        if (!ts.match(TokenType.TFUNC)) {
             er.syntax("expected 'func' for function declaration", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         Token iden = ts.expect(TokenType.TIDEN);
         if (iden == null) {
             er.syntax("expected identifier for function declaration", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        func.add(StNode.leaf(StNodeKind.NSIMV, iden));
-        if (ts.expect(TokenType.TLPAR) == null) {
+        func.put(Ast.FuncDecl.NAME, leaf(StNodeKind.NSIMV, iden));
+        if (!ts.match(TokenType.TLPAR)) {
             er.syntax("expected '(' in function declaration", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         // plist
-        if (ts.peek().tokenType != TokenType.TRPAR) {
-            func.add(parseParams());
+        if (ts.peekType() != TokenType.TRPAR) {
+            func.put(Ast.FuncDecl.PARAMS, parseParams());
         }
-        if (ts.expect(TokenType.TRPAR) == null) {
+        if (!ts.match(TokenType.TRPAR)) {
             er.syntax("expected ')' in function declaration", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.expect(TokenType.TCOLN) == null) {
+        if (!ts.match(TokenType.TCOLN)) {
             er.syntax("expected ':' in function declaration", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        func.add(parseReturnType());
-        if (ts.peek().tokenType != TokenType.TBEGN) {
-            func.add(parseDList());
+        func.put(Ast.FuncDecl.RET, parseReturnType());
+        if (ts.peekType() != TokenType.TBEGN) {
+            func.put(Ast.FuncDecl.LOCALS, parseDList());
         }
-        if (ts.expect(TokenType.TBEGN) == null) {
+        if (!ts.match(TokenType.TBEGN)) {
             er.syntax("expected 'begin' in function body", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        func.add(parseStats());
+        func.put(Ast.FuncDecl.BODY, parseStats());
         return func;
     }
 
     private StNode parseDList() {
-        StNode dlist = new StNode(StNodeKind.NDLIST, null, ts.peek().line, ts.peek().col);
+        StNode dlist = node(StNodeKind.NDLIST, null, ts.peekLine(), ts.peekCol());
         
         dlist.add(parseDListItem());
 
         while (ts.match(TokenType.TCOMA)) {
-            if (ts.peek().tokenType == TokenType.TBEGN) {
+            if (ts.peekType() == TokenType.TBEGN) {
                 break;
             }
             dlist.add(parseDListItem());
@@ -404,18 +533,18 @@ public class Parser {
         if (iden == null) {
             er.syntax("expected identifier in local declaration", ts.peek());
             ts.syncTo(DLIST_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.expect(TokenType.TCOLN) == null) {
+        if (!ts.match(TokenType.TCOLN)) {
             er.syntax("expected ':' in local declaration", ts.peek());
             ts.syncTo(DLIST_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         Token type = ts.peek();
-        if (type.tokenType == TokenType.TINTG || type.tokenType == TokenType.TREAL || type.tokenType == TokenType.TBOOL) {
-            StNode decl = new StNode(StNodeKind.NSDECL, null, ts.peek().line, ts.peek().col);
-            decl.add(StNode.leaf(StNodeKind.NSIMV, iden));
-            decl.add(StNode.leaf(StNodeKind.NSTYPE, type));
+        if (SIMPLE_TYPES.contains(type.tokenType)) {
+            StNode decl = node(StNodeKind.NSDECL, null, ts.peekLine(), ts.peekCol());
+            decl.put(Ast.SimpleDecl.NAME, leaf(StNodeKind.NSIMV, iden));
+            decl.put(Ast.SimpleDecl.TYPE, leaf(StNodeKind.NSTYPE, type));
             ts.consume();
             return decl;
         }
@@ -424,20 +553,20 @@ public class Parser {
 
     private StNode parseReturnType() {
         Token rtype = ts.peek();
-        if (rtype.tokenType == TokenType.TVOID || rtype.tokenType == TokenType.TINTG || rtype.tokenType == TokenType.TREAL || rtype.tokenType == TokenType.TBOOL) {
-            StNode type = new StNode(StNodeKind.NSTYPE, rtype.lexeme, ts.peek().line, ts.peek().col);
+        if (RETURN_TYPES.contains(rtype.tokenType)) {
+            StNode type = node(StNodeKind.NSTYPE, rtype.lexeme, rtype.nameId, ts.peekLine(), ts.peekCol());
             ts.consume();
             return type;
         }
         else {
             er.syntax("unexpected function return type", ts.peek());
             ts.syncTo(FUNC_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
     }
 
     private StNode parseParams() {
-        StNode params = new StNode(StNodeKind.NPLIST, null, ts.peek().line, ts.peek().col);
+        StNode params = node(StNodeKind.NPLIST, null, ts.peekLine(), ts.peekCol());
         
         params.add(parseParam());
 
@@ -449,30 +578,30 @@ public class Parser {
 
     private StNode parseParam() {
         if (ts.match(TokenType.TCNST)) {
-            StNode constParam = new StNode(StNodeKind.NARRC, null, ts.peek().line, ts.peek().col);
-            constParam.add(parseArrDecl());
+            StNode constParam = node(StNodeKind.NARRC, null, ts.peekLine(), ts.peekCol());
+            constParam.put(Ast.Param.DECL, parseArrDecl());
             return constParam;
         }
         Token iden = ts.expect(TokenType.TIDEN);
         if (iden == null) {
             er.syntax("expected identifier in parameter declaration", ts.peek());
             ts.syncTo(PARAM_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.expect(TokenType.TCOLN) == null) {
+        if (!ts.match(TokenType.TCOLN)) {
             er.syntax("expected ':' in parameter declaration", ts.peek());
             ts.syncTo(PARAM_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         // NSIMP
         Token type = ts.peek();
-        if (type.tokenType == TokenType.TINTG || type.tokenType == TokenType.TREAL || type.tokenType == TokenType.TBOOL) {
-            StNode nsimp = new StNode(StNodeKind.NSIMP, null, ts.peek().line, ts.peek().col);
-            StNode sdecl = new StNode(StNodeKind.NSDECL, null, ts.peek().line, ts.peek().col);
+        if (SIMPLE_TYPES.contains(type.tokenType)) {
+            StNode nsimp = node(StNodeKind.NSIMP, null, ts.peekLine(), ts.peekCol());
+            StNode sdecl = node(StNodeKind.NSDECL, null, ts.peekLine(), ts.peekCol());
             ts.consume();
-            sdecl.add(StNode.leaf(StNodeKind.NSIMV, iden));
-            sdecl.add(StNode.leaf(StNodeKind.NSTYPE, type));
-            nsimp.add(sdecl);
+            sdecl.put(Ast.SimpleDecl.NAME, leaf(StNodeKind.NSIMV, iden));
+            sdecl.put(Ast.SimpleDecl.TYPE, leaf(StNodeKind.NSTYPE, type));
+            nsimp.put(Ast.Param.DECL, sdecl);
             return nsimp;
         }
         // NARRP
@@ -480,43 +609,43 @@ public class Parser {
         if (typeIden == null) {
             er.syntax("expected type identifier in parameter declaration", ts.peek());
             ts.syncTo(PARAM_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        StNode arrParam = new StNode(StNodeKind.NARRP, null, ts.peek().line, ts.peek().col);
-        arrParam.add(StNode.leaf(StNodeKind.NSIMV, iden));
-        arrParam.add(StNode.leaf(StNodeKind.NSIMV, typeIden));
+        StNode arrParam = node(StNodeKind.NARRP, null, ts.peekLine(), ts.peekCol());
+        arrParam.put(Ast.ArrayDecl.NAME, leaf(StNodeKind.NSIMV, iden));
+        arrParam.put(Ast.ArrayDecl.TYPE, leaf(StNodeKind.NSIMV, typeIden));
         return arrParam;
     }
 
     private StNode parseMainBody() {
-        StNode n = new StNode(StNodeKind.NMAIN, null, ts.peek().line, ts.peek().col);
+        StNode n = node(StNodeKind.NMAIN, null, ts.peekLine(), ts.peekCol());
 
         // main
-        if(ts.expect(TokenType.TMAIN) == null) {
+        if(!ts.match(TokenType.TMAIN)) {
             er.syntax("expected 'main'", ts.peek());
         }
         
         // declare list
         if (startsSimpleDecl()) {
-            n.add(parseSimpleDeclList());
+            n.put(Ast.MainBody.LOCALS, parseSimpleDeclList());
         } else {
-            n.add(new StNode(StNodeKind.NSDLST, null, ts.peek().line, ts.peek().col));
+            n.put(Ast.MainBody.LOCALS, node(StNodeKind.NSDLST, null, ts.peekLine(), ts.peekCol()));
         }
 
         // begin
-        if(ts.expect(TokenType.TBEGN) == null) {
+        if(!ts.match(TokenType.TBEGN)) {
             er.syntax("expected 'begin' before statements", ts.peek());
         }
 
-        n.add(parseStats());
+        n.put(Ast.MainBody.BODY, parseStats());
 
         // end
-        if(ts.expect(TokenType.TTEND) == null) {
+        if(!ts.match(TokenType.TTEND)) {
             er.syntax("expected 'end' after statements", ts.peek());
         }
 
         // end CD25
-        if(ts.expect(TokenType.TCD25) == null) {
+        if(!ts.match(TokenType.TCD25)) {
             er.syntax("expected trailing 'cd25'", ts.peek());
         }
 
@@ -525,63 +654,63 @@ public class Parser {
         if (tail == null) {
             er.syntax("expected identifier after trailing 'cd25'", ts.peek());
         } else {
-            n.add(StNode.leaf(StNodeKind.NSIMV, tail));
+            n.put(Ast.MainBody.NAME, leaf(StNodeKind.NSIMV, tail));
         }
 
         return n;
     }
 
     private StNode parseIfStat() {
-        if (ts.expect(TokenType.TIFTH) == null) {
+        if (!ts.match(TokenType.TIFTH)) {
             er.syntax("expected 'if' in an IF statement declaration.", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.expect(TokenType.TLPAR) == null) {
+        if (!ts.match(TokenType.TLPAR)) {
             er.syntax("expected '(' in if statement declaration", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.peek().tokenType == TokenType.TRPAR) {
+        if (ts.peekType() == TokenType.TRPAR) {
             er.syntax("expected boolean in if statement declaration", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         StNode bool = parseBool();
-        if (ts.expect(TokenType.TRPAR) == null) {
+        if (!ts.match(TokenType.TRPAR)) {
             er.syntax("expected ')' in if statement declaration", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.peek().tokenType == TokenType.TTEND) {
+        if (ts.peekType() == TokenType.TTEND) {
             er.syntax("expected statements following if declaration", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         StNode stats = parseStats();
         // no else statements attached
         if (ts.match(TokenType.TTEND)) {
-            StNode ifNode = new StNode(StNodeKind.NIFTH, null, ts.peek().line, ts.peek().col);
-            ifNode.add(bool);
-            ifNode.add(stats);
+            StNode ifNode = node(StNodeKind.NIFTH, null, ts.peekLine(), ts.peekCol());
+            ifNode.put(Ast.IfStat.COND, bool);
+            ifNode.put(Ast.IfStat.BODY, stats);
             return ifNode;
         }
         // else statements
-        if (ts.expect(TokenType.TELSE) == null) {
+        if (!ts.match(TokenType.TELSE)) {
             er.syntax("expected 'else' following if statements if not end", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if (ts.peek().tokenType == TokenType.TTEND) {
+        if (ts.peekType() == TokenType.TTEND) {
             er.syntax("expected statements following else declaration", ts.peek());
             ts.syncTo(IF_FOLLOW);
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         StNode elseStats = parseStats();
-        StNode ifElseNode = new StNode(StNodeKind.NIFTE, null, ts.peek().line, ts.peek().col);
-        ifElseNode.add(bool);
-        ifElseNode.add(stats);
-        ifElseNode.add(elseStats);
+        StNode ifElseNode = node(StNodeKind.NIFTE, null, ts.peekLine(), ts.peekCol());
+        ifElseNode.put(Ast.IfStat.COND, bool);
+        ifElseNode.put(Ast.IfStat.BODY, stats);
+        ifElseNode.put(Ast.IfStat.ELSE_BODY, elseStats);
         ts.consume(); // consume end node
 
         return ifElseNode;
@@ -590,24 +719,78 @@ public class Parser {
     // parsing fuckin everything
     // technically i could probs collapse some of these into one, but this keeps it best in terms of clarity to the pdf
     private StNode parseStats() {
-        StNode stats = new StNode(StNodeKind.NSTATS, null, ts.peek().line, ts.peek().col);
+        int start = ts.position();
+        StNode stats = node(StNodeKind.NSTATS, null, ts.peekLine(), ts.peekCol());
+
+        while(startsStat(ts.peekType())) {
+            int from = ts.position();
+            StNode old = reused(from, false);
+            if (old != null) {
+                stats.add(old);
+                continue;
+            }
 
-        while(startsStat(ts.peek().tokenType)) {
             StNode s = parseStat();
             stats.add(s);
 
             if (requiresSemicolon(s.kind)) {
-                if(ts.expect(TokenType.TSEMI) == null) {
+                if(!ts.match(TokenType.TSEMI)) {
                     er.syntax("expected ';' after statement", ts.previous());
                     ts.syncToEither(STAT_FOLLOW, STAT_START);
                     ts.match(TokenType.TSEMI);
                 }
             }
+            ast.setTokens(s.id(), from, ts.position(), ts.seen());
         }
 
+        ast.setTokens(stats.id(), start, ts.position(), ts.seen());
         return stats;
     }
 
+    /**
+     * Parses a statement list again after an edit, from the current token (see IncrementalParser)
+     * A statement or function in reusable that starts on the token the parser gets to is put in the tree as it is and its tokens
+     * skipped, rather than parsed again
+     */
+    StNode reparseStats(Map<Integer, Integer> reusable) {
+        this.reusable = reusable;
+        try {
+            return parseStats();
+        } finally {
+            this.reusable = Map.of();
+        }
+    }
+
+    // same for a function
+    StNode reparseFunc(Map<Integer, Integer> reusable) {
+        this.reusable = reusable;
+        try {
+            return parseFunc();
+        } finally {
+            this.reusable = Map.of();
+        }
+    }
+
+    // same for the whole program
+    StNode reparseProgram(Map<Integer, Integer> reusable) {
+        this.reusable = reusable;
+        try {
+            return parseProgram();
+        } finally {
+            this.reusable = Map.of();
+        }
+    }
+
+    // the old function or statement that starts at token from and moves on past it, null when there isn't one
+    private StNode reused(int from, boolean func) {
+        if (reusable.isEmpty()) return null;
+        Integer old = reusable.get(from);
+        if (old == null || (ast.kind(old) == StNodeKind.NFUND) != func) return null;
+        ts.skipTo(ast.tokenTo(old));
+        ts.seenTo(ast.tokenSeen(old));
+        return ast.node(old);
+    }
+
     private boolean requiresSemicolon(StNodeKind t) {
         return t != StNodeKind.NFORL
         && t != StNodeKind.NIFTH
@@ -616,17 +799,11 @@ public class Parser {
     }
 
     private boolean startsStat(TokenType t) {
-        return t == TokenType.TINPT // In
-        || t == TokenType.TOUTP // Out
-        || t == TokenType.TRETN // Return
-        || t == TokenType.TIDEN // AsgnStat or CallStat
-        || t == TokenType.TTFOR
-        || t == TokenType.TIFTH
-        || t == TokenType.TREPT;
+        return STAT_FIRST.contains(t);
     }
 
     private StNode parseStat() {
-        TokenType t = ts.peek().tokenType;
+        TokenType t = ts.peekType();
         if (t == TokenType.TINPT || t == TokenType.TOUTP) return parseIoStat();
         if (t == TokenType.TRETN) return parseReturnStat();
         if (t == TokenType.TIDEN) return parseAsgnOrCall();
@@ -635,7 +812,7 @@ public class Parser {
         if (t == TokenType.TREPT) return parseRepeatStat();
 
         er.syntax("invalid statement start", ts.peek());
-        return StNode.undefAt(ts.peek());
+        return undefAt(ts.peek());
 
     }
 
@@ -651,36 +828,37 @@ public class Parser {
 
         if (tRep == null) {
             er.syntax("expected 'repeat'", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
-        if (ts.expect(TokenType.TLPAR) == null) {
+        if (!ts.match(TokenType.TLPAR)) {
             er.syntax("expected '(' after 'repeat'", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         StNode init = parseAssignList();
 
-        if (ts.expect(TokenType.TRPAR) == null) {
+        if (!ts.match(TokenType.TRPAR)) {
             er.syntax("expected ')' after assignment", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         StNode body = parseStats();
 
-        if (ts.expect(TokenType.TUNTL) == null) {
+        if (!ts.match(TokenType.TUNTL)) {
             er.syntax("expected 'until' after repeat body", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         StNode cond = parseBool();
 
         if (cond == null) {
             er.syntax("expected condition after until statement", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
-        return new StNode(StNodeKind.NREPT, null, tRep.line, tRep.col).add(init).add(body).add(cond);
+        return node(StNodeKind.NREPT, null, tRep.line, tRep.col)
+            .put(Ast.RepeatStat.INIT, init).put(Ast.RepeatStat.BODY, body).put(Ast.RepeatStat.COND, cond);
     }
 
     // <forstat> ::= for (<asgnlist> ; <bool>) <stats> end 
@@ -689,41 +867,42 @@ public class Parser {
 
         if (tFor == null) {
             er.syntax("expected 'for'", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
-        if (ts.expect(TokenType.TLPAR) == null) {
+        if (!ts.match(TokenType.TLPAR)) {
             er.syntax("expected '(' after 'for'", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         StNode init = parseAssignList();
 
-        if (ts.expect(TokenType.TSEMI) == null) {
+        if (!ts.match(TokenType.TSEMI)) {
             er.syntax("expected ';' after for initializer", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         StNode cond = parseBool();
 
         if (cond == null) {
             er.syntax("expected condition in for statement", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
-        if (ts.expect(TokenType.TRPAR) == null) {
+        if (!ts.match(TokenType.TRPAR)) {
             er.syntax("expected ')' after for condition", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         StNode body = parseStats();
 
-        if (ts.expect(TokenType.TTEND) == null) {
+        if (!ts.match(TokenType.TTEND)) {
             er.syntax("expected 'end' after for condition", ts.peek()); 
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
-        return new StNode(StNodeKind.NFORL, null, tFor.line, tFor.col).add(init).add(cond).add(body);
+        return node(StNodeKind.NFORL, null, tFor.line, tFor.col)
+            .put(Ast.ForStat.INIT, init).put(Ast.ForStat.COND, cond).put(Ast.ForStat.BODY, body);
     }
 
     /**
@@ -734,50 +913,50 @@ public class Parser {
     private StNode parseIoStat() {
         // In >>
         if(ts.match(TokenType.TINPT)) {
-            if(ts.expect(TokenType.TGRGR) == null) { 
+            if(!ts.match(TokenType.TGRGR)) { 
                 er.syntax("expected '>>' after 'In'", ts.peek()); 
-                return StNode.undefAt(ts.peek());
+                return undefAt(ts.peek());
             }
             // In >> <vlist>
             StNode vlist = parseVList();
-            return new StNode(StNodeKind.NINPUT, null, vlist.line, vlist.col).add(vlist);
+            return node(StNodeKind.NINPUT, null, vlist.line, vlist.col).put(Ast.IoStat.LIST, vlist);
         }
         
         // Out <<
         Token outTok = ts.expect(TokenType.TOUTP);
         if(outTok == null) {
             er.syntax("expected 'Out'", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
-        if(ts.expect(TokenType.TLSLS) == null) {
+        if(!ts.match(TokenType.TLSLS)) {
             er.syntax("expected '<<' after 'Out'", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         if(ts.match(TokenType.TOUTL)) {
             // Out << Line
-            return new StNode(StNodeKind.NOUTL, null, outTok.line, outTok.col);
+            return node(StNodeKind.NOUTL, null, outTok.line, outTok.col);
         }
 
         // Out << <prlist> << Line
         StNode list = parsePrList();
         if(ts.match(TokenType.TLSLS)) {
-            if(ts.expect(TokenType.TOUTL) == null) {
+            if(!ts.match(TokenType.TOUTL)) {
                 er.syntax("expected 'Line' after '<<'", ts.peek());
-                return StNode.undefAt(ts.peek());
+                return undefAt(ts.peek());
             }
-            return new StNode(StNodeKind.NOUTL, null, outTok.line, outTok.col).add(list);
+            return node(StNodeKind.NOUTL, null, outTok.line, outTok.col).put(Ast.IoStat.LIST, list);
         }
         // Out << <prlist>
-        return new StNode(StNodeKind.NOUTP, null, outTok.line, outTok.col).add(list);
+        return node(StNodeKind.NOUTP, null, outTok.line, outTok.col).put(Ast.IoStat.LIST, list);
     }
 
     private StNode parseAsgnOrCall() {
-        if (ts.peek().tokenType != TokenType.TIDEN) {
+        if (ts.peekType() != TokenType.TIDEN) {
             er.syntax("expected identifier to start assignment or call", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
-        if (ts.lookahead(1).tokenType == TokenType.TLPAR) {
+        if (ts.lookaheadType(1) == TokenType.TLPAR) {
             return parseCallStat();
         }
 
@@ -789,33 +968,36 @@ public class Parser {
         StNode left = parseVar();
         if (left == null) {
             er.syntax("invalid variable in assignment", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         Token opTok = ts.peek();
         StNode op = parseAsgnOp();
         if (op == null) {
             er.syntax("expected assignment operator (=, +=, -=, *=, /=)", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
         
-        TokenType nxt = ts.peek().tokenType;
+        TokenType nxt = ts.peekType();
         if (nxt == TokenType.TSEMI || STAT_FOLLOW.contains(nxt)) {
             er.syntax("expected expression after assignment operator", opTok);
-            return op.add(left).add(StNode.undefAt(opTok));
+            return op.put(Ast.Assign.TARGET, left).put(Ast.Assign.VALUE, undefAt(opTok));
         }
 
         int m = ts.mark();
         StNode right = parseBool();
 
-        if (right == null || (isPureVarNode(right) && ASGN_OPS.contains(ts.peek().tokenType))) {
+        if (right == null || (isPureVarNode(right) && ASGN_OPS.contains(ts.peekType()))) {
             ts.reset(m); // roll back
             er.syntax("expected expression after assignment operator", opTok);
-            right = StNode.undefAt(opTok);
+            right = undefAt(opTok);
+        }
+        else {
+            ts.release(m); // keeping what we parsed, the stream can drop those tokens now
         }
 
         
-        return op.add(left).add(right);
+        return op.put(Ast.Assign.TARGET, left).put(Ast.Assign.VALUE, right);
     }
 
     /**
@@ -823,29 +1005,30 @@ public class Parser {
      * <calltail> ::= <elist> | ε 
      */
     private StNode parseCallStat() {
-        int line = ts.peek().line;
-        int col = ts.peek().col;
+        int line = ts.peekLine();
+        int col = ts.peekCol();
         StNode call = parseFnCall();
-        return new StNode(StNodeKind.NCALL, null, line, col).add(call);
+        return node(StNodeKind.NCALL, null, line, col).put(Ast.CallStat.CALL, call);
     }
 
     private StNode parseAsgnOp() {
-        Token t = ts.peek();
-        if (t.tokenType == TokenType.TEQUL) {
+        TokenType tt = ts.peekType();
+        int line = ts.peekLine(), col = ts.peekCol();
+        if (tt == TokenType.TEQUL) {
             ts.consume();
-            return new StNode(StNodeKind.NASGN, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TPLEQ) {
+            return node(StNodeKind.NASGN, null, line, col);
+        } else if (tt == TokenType.TPLEQ) {
             ts.consume();
-            return new StNode(StNodeKind.NPLEQ, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TMNEQ) {
+            return node(StNodeKind.NPLEQ, null, line, col);
+        } else if (tt == TokenType.TMNEQ) {
             ts.consume();
-            return new StNode(StNodeKind.NMNEQ, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TSTEQ) {
+            return node(StNodeKind.NMNEQ, null, line, col);
+        } else if (tt == TokenType.TSTEQ) {
             ts.consume();
-            return new StNode(StNodeKind.NSTEA, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TDVEQ) {
+            return node(StNodeKind.NSTEA, null, line, col);
+        } else if (tt == TokenType.TDVEQ) {
             ts.consume();
-            return new StNode(StNodeKind.NDVEQ, null, t.line, t.col);
+            return node(StNodeKind.NDVEQ, null, line, col);
         }
         return null;
     }
@@ -855,25 +1038,25 @@ public class Parser {
         Token r = ts.expect(TokenType.TRETN);
         if (r == null) {
             er.syntax("expected 'return'", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefAt(ts.peek());
         }
 
         if (ts.match(TokenType.TVOID)) {
-            return new StNode(StNodeKind.NRETN, null, r.line, r.col);
+            return node(StNodeKind.NRETN, null, r.line, r.col);
         }
 
         StNode expr = parseBool();
         if(expr == null) {
             er.syntax("expected 'expression' after return statement", ts.peek());
-            return new StNode(StNodeKind.NRETN, null, r.line, r.col).add(StNode.undefAt(ts.peek()));
+            return node(StNodeKind.NRETN, null, r.line, r.col).put(Ast.Return.VALUE, undefAt(ts.peek()));
         }
 
-        return new StNode(StNodeKind.NRETN, null, r.line, r.col).add(expr);
+        return node(StNodeKind.NRETN, null, r.line, r.col).put(Ast.Return.VALUE, expr);
     }
 
     // <vlist> ::= <var> { , <var> } 
     private StNode parseVList() {
-        StNode n = new StNode(StNodeKind.NVLIST, null, ts.peek().line, ts.peek().col);
+        StNode n = node(StNodeKind.NVLIST, null, ts.peekLine(), ts.peekCol());
 
         n.add(parseVar());
         while(ts.match(TokenType.TCOMA)) {
@@ -889,49 +1072,58 @@ public class Parser {
      * <vartail2> ::= .<id> | ε 
      */
     private StNode parseVar() {
-        Token id = ts.expect(TokenType.TIDEN);
+        return ast.node(parseVarId());
+    }
 
-        if (id == null) {
+    // <var> as a node number, like the rest of the expression parser below
+    private int parseVarId() {
+        if (ts.peekType() != TokenType.TIDEN) {
             er.syntax("expected variable name (identifier)", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefId(ts.peek());
         }
-
-        StNode base = StNode.leaf(StNodeKind.NSIMV, id);
+        int line = ts.peekLine(), col = ts.peekCol();
+        int base = leafHere(StNodeKind.NSIMV);
 
         if (ts.match(TokenType.TLBRK)) {
-            StNode index = parseExpr();
+            int index = parseBinary(BP_ADD);
 
-            if (ts.expect(TokenType.TRBRK) == null) {
+            if (!ts.match(TokenType.TRBRK)) {
                 er.syntax("expected closing ']' after expression", ts.peek());
-                return StNode.undefAt(ts.peek());
+                return undefId(ts.peek());
             }
 
             if (ts.match(TokenType.TDOTT)) {
-                Token field = ts.expect(TokenType.TIDEN);
-                if (field == null) {
+                if (ts.peekType() != TokenType.TIDEN) {
                     er.syntax("expected identifier after '.'", ts.peek());
-                    return StNode.undefAt(ts.peek());
+                    return undefId(ts.peek());
                 }
-
-                return new StNode(StNodeKind.NARRV, null, id.line, id.col).add(base).add(index).add(StNode.leaf(StNodeKind.NSIMV, field));
+                int field = leafHere(StNodeKind.NSIMV);
+                int n = add(StNodeKind.NARRV, null, line, col);
+                ast.putChild(n, Ast.FieldElem.ARRAY, base);
+                ast.putChild(n, Ast.FieldElem.INDEX, index);
+                ast.putChild(n, Ast.FieldElem.FIELD, field);
+                return n;
             }
 
-            return new StNode(StNodeKind.NAELT, null, id.line, id.col).add(base).add(index);
+            int n = add(StNodeKind.NAELT, null, line, col);
+            ast.putChild(n, Ast.ArrayElem.ARRAY, base);
+            ast.putChild(n, Ast.ArrayElem.INDEX, index);
+            return n;
         }
 
         return base;
     }
 
     private StNode parseAssignList() {
-        if (ts.peek().tokenType == TokenType.TIDEN) {
+        if (ts.peekType() == TokenType.TIDEN) {
             return parseAList();
         }
 
-        return new StNode(StNodeKind.NALIST, null, ts.peek().line, ts.peek().col);
+        return node(StNodeKind.NALIST, null, ts.peekLine(), ts.peekCol());
     }
 
     private StNode parseAList() {
-        StNode n = new StNode(StNodeKind.NALIST, null, ts.peek().line, ts.peek().col);
+        StNode n = node(StNodeKind.NALIST, null, ts.peekLine(), ts.peekCol());
 
         n.add(parseAssignStat());
         while(ts.match(TokenType.TCOMA)) {
@@ -942,12 +1134,12 @@ public class Parser {
     }
 
     // <elist> ::= <bool> { , <bool> }
-    private StNode parseEList() {
-        StNode n = new StNode(StNodeKind.NALIST, null, ts.peek().line, ts.peek().col);
+    private int parseEList() {
+        int n = add(StNodeKind.NALIST, null, ts.peekLine(), ts.peekCol());
 
-        n.add(parseBool());
+        ast.addChild(n, parseBinary(BP_LOGIC));
         while(ts.match(TokenType.TCOMA)) {
-            n.add(parseBool());
+            ast.addChild(n, parseBinary(BP_LOGIC));
         }
 
         return n;
@@ -958,125 +1150,7 @@ public class Parser {
      * <bool’> ::= <logop> <rel> <bool’> | ε 
      */
     private StNode parseBool() {
-        StNode left = parseRel();
-        if (left == null) {
-            er.syntax("expected relational expression", ts.peek());
-            return StNode.undefAt(ts.peek());
-        }
-
-        while(true) {
-            StNode logOp = parseLogOp();
-            if (logOp == null) {
-                break;
-            }
-
-            StNode right = parseRel();
-            if (right == null) {
-                er.syntax("expected relational expression after boolean operator", ts.peek());
-                return StNode.undefAt(ts.peek());
-            }
-
-            logOp.add(left).add(right);
-            left = logOp;
-        }
-        return left;
-    }
-
-    /**
-     * <rel> ::= not <expr> <relop> <expr> | <expr> <relTail> 
-     * <relTail> ::= <relop> <expr> | ε
-     */
-    private StNode parseRel() {
-        Token t = ts.peek();
-
-        // not <expr> <relop> <expr>
-        if (t.tokenType == TokenType.TNOTT) {
-            ts.consume();
-
-            StNode left = parseExpr();
-            if (left == null) {
-                er.syntax("expected expression after 'not'", ts.peek());
-                return StNode.undefAt(ts.peek());
-            }
-
-            StNode op = parseRelOp();
-            if (op == null) {
-                er.syntax("expected relational operator after expression", ts.peek());
-                return StNode.undefAt(ts.peek());
-            }
-
-            StNode right = parseExpr();
-            if (right == null) {
-                er.syntax("expected expression after relational operator", ts.peek());
-                return StNode.undefAt(ts.peek());
-            }
-
-            op.add(left).add(right);
-            return new StNode(StNodeKind.NNOT, null, t.line, t.col).add(op);
-        }
-
-        // <expr> <relTail>
-        StNode left = parseExpr();
-        if (left == null) {
-            er.syntax("expected expression in relational", ts.peek());
-            return StNode.undefAt(ts.peek());
-        }
-
-        // <relop> <expr> | ε
-        StNode op = parseRelOp();
-        if (op == null) {
-            return left;
-        }
-
-        StNode right = parseExpr();
-        if (right == null) {
-            er.syntax("expected expressionafter relational operator", ts.peek());
-            return StNode.undefAt(ts.peek());
-        }
-
-        return op.add(left).add(right);
-
-    }
-
-    // <logop> ::= and | or | xor
-    private StNode parseLogOp() {
-        Token t = ts.peek();
-        if (t.tokenType == TokenType.TTAND) {
-            ts.consume();
-            return new StNode(StNodeKind.NAND, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TTTOR) {
-            ts.consume();
-            return new StNode(StNodeKind.NOR, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TTXOR) {
-            ts.consume();
-            return new StNode(StNodeKind.NXOR, null, t.line, t.col);
-        }
-        return null;
-    }
-
-    // <relop> ::= == | != || > | <= | < | >= 
-    private StNode parseRelOp() {
-        Token t = ts.peek();
-        if (t.tokenType == TokenType.TEQEQ) {
-            ts.consume();
-            return new StNode(StNodeKind.NEQL, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TNEQL) {
-            ts.consume();
-            return new StNode(StNodeKind.NNEQ, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TGRTR) {
-            ts.consume();
-            return new StNode(StNodeKind.NGRT, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TGEQL) {
-            ts.consume();
-            return new StNode(StNodeKind.NGEQ, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TLESS) {
-            ts.consume();
-            return new StNode(StNodeKind.NLSS, null, t.line, t.col);
-        } else if (t.tokenType == TokenType.TLEQL) {
-            ts.consume();
-            return new StNode(StNodeKind.NLEQ, null, t.line, t.col);
-        }
-        return null;
+        return ast.node(parseBinary(BP_LOGIC));
     }
 
     /**
@@ -1084,89 +1158,125 @@ public class Parser {
      * <expr’> ::= + <term> <expr’> | - <term> <expr’> | ε
      */
     private StNode parseExpr() {
-        StNode left = parseTerm();
-        while(true) {
-            if(ts.match(TokenType.TPLUS)) {
-                left = new StNode(StNodeKind.NADD, null, ts.peek().line, ts.peek().col).add(left).add(parseTerm());
-            } else if (ts.match(TokenType.TMINS)) {
-                left = new StNode(StNodeKind.NSUB, null, ts.peek().line, ts.peek().col).add(left).add(parseTerm());
-            } else break;
-        }
-        return left;
+        return ast.node(parseBinary(BP_ADD));
     }
 
     /**
-     * <term> ::= <fact> <term’>
-     * <term’> ::= * <fact> <term’> | / <fact> <term’> | % <fact> <term’> | ε
+     * Precedence climbing over the BINDING table, takes the place of the old bool -> rel -> expr -> term -> fact -> exponent chain
+     * so an operand costs one or two frames instead of six
+     * Parses every operator that binds at least as tight as minBp and builds the same trees the chain did:
+     * and/or/xor and + - * / % group to the left, ^ groups to the right,
+     * and a relational op only applies to a plain expression, so a < b < c stops after a < b same as <rel> did
+     * <rel> ::= not <expr> <relop> <expr> | <expr> <relTail>
+     * <term> ::= <fact> { (* | / | %) <fact> }
+     * <fact> ::= <exponent> [ ^ <fact> ]
+     * Everything from here down works on node numbers and reads the token columns, so an operand makes no StNode or Token,
+     * parseBool and parseExpr make the one view the statement parsers want
      */
-    private StNode parseTerm() {
-        StNode left = parseFact();
-        while(true) {
-            if(ts.match(TokenType.TSTAR)) {
-                left = new StNode(StNodeKind.NMUL, null, ts.peek().line, ts.peek().col).add(left).add(parseFact());
-            } else if (ts.match(TokenType.TDIVD)) {
-                left = new StNode(StNodeKind.NDIV, null, ts.peek().line, ts.peek().col).add(left).add(parseFact());
-            } else if (ts.match(TokenType.TPERC)) {
-                left = new StNode(StNodeKind.NMOD, null, ts.peek().line, ts.peek().col).add(left).add(parseFact());
-            } else break;
+    private int parseBinary(int minBp) {
+        boolean relAllowed = true; // only until a relational or logical op has been applied at this level
+        int left;
+        if (minBp <= BP_REL && ts.peekType() == TokenType.TNOTT) {
+            left = parseNotRel();
+            relAllowed = false;
+        } else {
+            left = parseExpo();
+        }
+
+        while (true) {
+            TokenType tt = ts.peekType();
+            int bp = BINDING[tt.getId()];
+            if (bp < minBp || (bp == BP_REL && !relAllowed)) break;
+
+            if (bp <= BP_REL) {
+                // logical and relational nodes sit on the operator
+                int op = add(BINARY_KIND[tt.getId()], null, ts.peekLine(), ts.peekCol());
+                ts.consume();
+                int right = parseBinary((bp == BP_LOGIC) ? BP_REL : BP_ADD);
+                left = binary(op, left, right);
+                relAllowed = false;
+            } else {
+                // arithmetic nodes have always sat on the token after the operator
+                ts.consume();
+                int op = add(BINARY_KIND[tt.getId()], null, ts.peekLine(), ts.peekCol());
+                int right = parseBinary((bp == BP_POW) ? BP_POW : bp + 1); // ^ binds its right side at its own level, so it nests right
+                left = binary(op, left, right);
+            }
         }
         return left;
     }
 
-    /**
-     * <fact> ::= <exponent> <fact’> 
-     * <fact’> ::= ^ <exponent> <fact’> | ε 
-     */
-    private StNode parseFact() {
-        StNode left = parseExpo();
-    
-        if (ts.match(TokenType.TCART)) {
-            Token caret = ts.peek(); // store location if you want
-            StNode right = parseFact(); // handles both <exponent> and <fact’>
-            return new StNode(StNodeKind.NPOW, null, caret.line, caret.col)
-                       .add(left)
-                       .add(right);
+    // op with left and right under it
+    private int binary(int op, int left, int right) {
+        ast.putChild(op, Ast.BinOp.LEFT, left);
+        ast.putChild(op, Ast.BinOp.RIGHT, right);
+        return op;
+    }
+
+    // not <expr> <relop> <expr>, the not sits over the whole relation
+    private int parseNotRel() {
+        int line = ts.peekLine(), col = ts.peekCol();
+        ts.consume();
+
+        int left = parseBinary(BP_ADD);
+        int op = parseRelOp();
+        if (op == NodeArena.NONE) {
+            er.syntax("expected relational operator after expression", ts.peek());
+            return undefId(ts.peek());
         }
-    
-        return left;
+        int right = parseBinary(BP_ADD);
+
+        binary(op, left, right);
+        int not = add(StNodeKind.NNOT, null, line, col);
+        ast.putChild(not, Ast.Not.OPERAND, op);
+        return not;
+    }
+
+    // <relop> ::= == | != || > | <= | < | >= 
+    private int parseRelOp() {
+        TokenType tt = ts.peekType();
+        if (BINDING[tt.getId()] != BP_REL) return NodeArena.NONE;
+        int op = add(BINARY_KIND[tt.getId()], null, ts.peekLine(), ts.peekCol());
+        ts.consume();
+        return op;
     }
 
     // <exponent> ::= <var> | <inlit> | <reallit> | <fncall> | true | false | (<bool>) 
-    private StNode parseExpo() {
-        Token expo = ts.peek();
-        if (expo.tokenType == TokenType.TILIT) {
-            ts.consume();
-            return new StNode(StNodeKind.NILIT, expo.lexeme, expo.line, expo.col);
-        }
-        if (expo.tokenType == TokenType.TFLIT) {
+    private int parseExpo() {
+        TokenType tt = ts.peekType();
+        int line = ts.peekLine(), col = ts.peekCol();
+        if (tt == TokenType.TILIT || tt == TokenType.TFLIT) {
+            String lexeme = ts.peekLexeme();
             ts.consume();
-            return new StNode(StNodeKind.NFLIT, expo.lexeme, expo.line, expo.col);
+            return add((tt == TokenType.TILIT) ? StNodeKind.NILIT : StNodeKind.NFLIT, lexeme, line, col);
         }
-        if (expo.tokenType == TokenType.TTRUE) {
+        if (tt == TokenType.TTRUE) {
             ts.consume();
-            return new StNode(StNodeKind.NTRUE, null, expo.line, expo.col);
+            return add(StNodeKind.NTRUE, null, line, col);
         }
-        if (expo.tokenType == TokenType.TFALS) {
+        if (tt == TokenType.TFALS) {
             ts.consume();
-            return new StNode(StNodeKind.NFALS, null, expo.line, expo.col);
+            return add(StNodeKind.NFALS, null, line, col);
         }
-        if (expo.tokenType == TokenType.TIDEN) {
-            if (ts.lookahead(1).tokenType == TokenType.TLPAR) {
-                return parseFnCall();
+        if (tt == TokenType.TIDEN) {
+            if (ts.lookaheadType(1) == TokenType.TLPAR) {
+                return parseFnCallId();
             }
-            return parseVar();
+            return parseVarId();
         }
-        if (expo.tokenType == TokenType.TLPAR) {
+        if (tt == TokenType.TLPAR) {
+            Token open = ts.peek();
             ts.consume();
-            StNode inner = parseBool();
-            if (ts.expect(TokenType.TRPAR) == null) {
-                er.syntax("expected ')' to close '('", expo);
-                return StNode.undefAt(ts.peek());
+            int inner = parseBinary(BP_LOGIC);
+            if (!ts.match(TokenType.TRPAR)) {
+                er.syntax("expected ')' to close '('", open);
+                return undefId(ts.peek());
             }
             return inner;
         }
+        Token expo = ts.peek();
         er.syntax("expected operand (<var> | <inlit> | <reallit> | <fncall> | true | false | (<bool>))", expo);
-        return StNode.undefAt(expo);
+        return undefId(expo);
     }
 
 
@@ -1175,33 +1285,40 @@ public class Parser {
      * <fntail> ::= <elist> | ε
      */
     private StNode parseFnCall() {
+        return ast.node(parseFnCallId());
+    }
+
+    private int parseFnCallId() {
         Token name = ts.expect(TokenType.TIDEN);
         if (name == null) {
             er.syntax("expected function name (identifier)", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefId(ts.peek());
         }
-        if (ts.expect(TokenType.TLPAR) == null) {
+        if (!ts.match(TokenType.TLPAR)) {
             er.syntax("expected '(' after function name", ts.peek());
-            return StNode.undefAt(ts.peek());
+            return undefId(ts.peek());
         }
 
-        StNode args;
-        if (ts.peek().tokenType == TokenType.TRPAR) {
+        int args;
+        if (ts.peekType() == TokenType.TRPAR) {
             ts.consume();
-            args = new StNode(StNodeKind.NEXPL, null, name.line, name.col);
+            args = add(StNodeKind.NEXPL, null, name.line, name.col);
         } else {
             args = parseEList();
 
-            if (ts.expect(TokenType.TRPAR) == null) {
+            if (!ts.match(TokenType.TRPAR)) {
                 er.syntax("expected ')' after argument list", name);
             }
         }
-        return new StNode(StNodeKind.NFCALL, null, name.line, name.col).add(StNode.leaf(StNodeKind.NSIMV, name)).add(args);
+        int call = add(StNodeKind.NFCALL, null, name.line, name.col);
+        ast.putChild(call, Ast.FnCall.NAME, ast.add(StNodeKind.NSIMV, name.lexeme, name.nameId, name.line, name.col));
+        ast.putChild(call, Ast.FnCall.ARGS, args);
+        return call;
     }
 
     // <prlist> ::= <printitem> { , <printitem>  }
     private StNode parsePrList() {
-        StNode n = new StNode(StNodeKind.NPRLST, null, ts.peek().line, ts.peek().col);
+        StNode n = node(StNodeKind.NPRLST, null, ts.peekLine(), ts.peekCol());
 
         n.add(parsePrintItem());
         while(ts.match(TokenType.TCOMA)) {
@@ -1213,9 +1330,9 @@ public class Parser {
 
     // printitem ::= <expr> | <string>
     private StNode parsePrintItem() {
-        if(ts.peek().tokenType == TokenType.TSTRG) {
+        if(ts.peekType() == TokenType.TSTRG) {
             Token s = ts.expect(TokenType.TSTRG);
-            return StNode.leaf(StNodeKind.NSTRG, s);
+            return leaf(StNodeKind.NSTRG, s);
         }
         return parseExpr();
     }
@@ -1,21 +1,43 @@
 import java.util.*;
+import java.util.concurrent.*;
 
 public final class SemanticAnalyzer {
     private final SymbolTable table;
     private final ErrorReporter er;
-    private Type currentFuncReturnType = null;
-    private boolean sawReturnInCurrentFunc = false;
+    private SymbolTable.Snapshot globals; // globals and function signatures, frozen once they're all declared
+    private FuncScope fn = null; // the function or main body being checked, null at global scope
 
-    // code gen stuff
-    private static final int WORD_BYTES = 8;
-    private int globalsNextOff = 0;     // base=1
-    private int funcLocalsNextOff = 16; // base=2 locals start at +16
-    private int funcParamsNextOff = -8; // base=2 params start at -8
-    private boolean inFunction = false; // true while inside a NFUND
+    private final Layout layout; // where globals, locals and params go, handed to the code generator afterwards
+    private final Type.Interner types = new Type.Interner(); // the program's arrays and structs, only declared at global scope
+
+    private static final int BATCHES_PER_THREAD = 4; // same as ParallelFuncParser, so one long function doesn't hold the rest up
+
+    // what checking one function body (or main) keeps track of, its own so bodies can be checked side by side
+    private static final class FuncScope {
+        final Type returnType; // null when the function's return type was bad, return then reads as outside a function
+        final Layout.Frame frame; // where its locals and params go
+        boolean sawReturn = false;
+
+        FuncScope(Type returnType, Layout.Frame frame) {
+            this.returnType = returnType;
+            this.frame = frame;
+        }
+    }
 
     public SemanticAnalyzer(SymbolTable table, ErrorReporter er) {
+        this(table, er, new Layout());
+    }
+
+    private SemanticAnalyzer(SymbolTable table, ErrorReporter er, Layout layout) {
         this.table = table;
         this.er = er;
+        this.layout = layout;
+    }
+
+    // checks function bodies on a pool thread, over the frozen globals and into its own reporter (see checkFuncBodies)
+    private SemanticAnalyzer(SymbolTable.Snapshot globals, Layout layout) {
+        this(new SymbolTable(globals), new ErrorReporter(new OutputController()), layout);
+        this.globals = globals;
     }
 
     public void analyze(StNode root) {
@@ -26,9 +48,10 @@ public final class SemanticAnalyzer {
         // 1. check the programe header and footer match
         checkProgramName(root);
 
-        StNode nglob = firstChild(root, StNodeKind.NGLOB);
-        StNode nfuncs = firstChild(root, StNodeKind.NFUNCS);
-        StNode nmain = firstChild(root, StNodeKind.NMAIN);
+        Ast.Program prog = Ast.Program.of(root);
+        StNode nglob = prog.globals();
+        StNode nfuncs = prog.funcs();
+        StNode nmain = prog.main();
 
         // 2. analyze globals
         if (nglob != null) visitGlobals(nglob);
@@ -37,6 +60,8 @@ public final class SemanticAnalyzer {
         if (nfuncs != null) declareFuncSignatures(nfuncs);
 
         // 4. for each function, enter their scope, define params/locals and validate its body
+        // the bodies only see globals and signatures, so they all start from the same frozen snapshot of them
+        globals = table.freeze();
         if (nfuncs != null) checkFuncBodies(nfuncs);
 
         // 5. analyze main body
@@ -46,16 +71,26 @@ public final class SemanticAnalyzer {
         table.exit();
     }
 
+    // the globals and function signatures of the last program analyzed, frozen, null before analyze
+    SymbolTable.Snapshot globals() {
+        return globals;
+    }
+
+    // the memory layout of the program analyzed, for the code generator
+    Layout layout() {
+        return layout;
+    }
+
     /******** Helpers *********/
 
-    // convert source type name into an actual type value so NSTYPE holding "integer" returns new Type.Int();
+    // convert source type name into an actual type value so NSTYPE holding "integer" returns Type.INT
     private Type baseTypeFromLexeme(String lx) {
         if (lx == null) return null;
         switch (lx.toLowerCase()) {
-            case "integer": return new Type.Int();
-            case "real":    return new Type.Real();
-            case "boolean": return new Type.Bool();
-            case "void":    return new Type.VoidT();
+            case "integer": return Type.INT;
+            case "real":    return Type.REAL;
+            case "boolean": return Type.BOOL;
+            case "void":    return Type.VOID;
             default:
                 Symbol s = table.resolve(lx);
                 if (s != null && s.kind() == SymbolKind.TYPE) {
@@ -118,28 +153,15 @@ public final class SemanticAnalyzer {
         return t.toString();
     }
 
-    // returns the first direct child of node n of a certain node kind
-    // e.g. firstChidl(NFUND, NPLIST) -> the parameter list node
-    private static StNode firstChild(StNode n, StNodeKind k) {
-        if (n == null) return null;
-        for (StNode c : n.children()) {
-            if (c.kind == k) {
-                return c;
-            }
-        }
-        return null;
+    // the spelling of a name slot, null when the parser left it empty
+    // e.g. nameOf(Ast.FuncDecl.of(f).name()) -> the function identifier
+    private static String nameOf(StNode id) {
+        return (id != null) ? id.lexeme : null;
     }
 
-    // extracts the name associated with a node
-    // e.g. firstName(NFUND) -> returns the function identifier
-    private static String firstName(StNode n) {
-        if (n == null) return null;
-        for (StNode c : n.children()) {
-            if (c.kind == StNodeKind.NSIMV) {
-                return c.lexeme;
-            }
-        }
-        return n.lexeme;
+    // resolve the name a node carries, by its pooled id when it came straight off an identifier token
+    private Symbol lookup(StNode n) {
+        return (n.nameId >= 0) ? table.resolve(n.nameId) : table.resolve(n.lexeme);
     }
 
     // create a token at this point, for tracking line and col nums accurately
@@ -160,28 +182,21 @@ public final class SemanticAnalyzer {
     // reads a functions parameter list
     private List<Type> paramTypesOf(StNode f) {
         List<Type> out = new ArrayList<>();
-        StNode plist = firstChild(f, StNodeKind.NPLIST);
+        StNode plist = Ast.FuncDecl.of(f).params();
         if (plist == null) return out;
 
         for (StNode p : plist.children()) {
             switch (p.kind) {
                 case NSIMP -> {
-                    for (StNode sd : p.children()) {
-                        if (sd.kind == StNodeKind.NSDECL) {
-                            Type t = typeFromNode(firstChild(sd, StNodeKind.NSTYPE));
-                            out.add(t);
-                        }
+                    StNode sd = Ast.Param.of(p).decl();
+                    if (sd != null && sd.kind == StNodeKind.NSDECL) {
+                        Type t = typeFromNode(Ast.SimpleDecl.of(sd).type());
+                        out.add(t);
                     }
                 }
 
                 case NARRP, NARRC -> {
-                    StNode arrd = firstChild(p, StNodeKind.NARRD);
-                    String typeName = null;
-                    if (arrd != null && arrd.children().size() >= 2) {
-                        typeName = arrd.children().get(1).lexeme;
-                    } else if (p.children().size() >= 2 && p.children().get(1).kind == StNodeKind.NSIMV) {
-                        typeName = p.children().get(1).lexeme;
-                    }
+                    String typeName = nameOf(arrayParamDecl(p).type());
                     Type named = (typeName != null) ? baseTypeFromLexeme(typeName) : null;
                     out.add(named);
                 }
@@ -193,6 +208,13 @@ public final class SemanticAnalyzer {
     }
 
 
+    // NARRP holds its name and type itself, NARRC wraps an NARRD (or an NUNDEF, which has neither)
+    private static Ast.ArrayDecl arrayParamDecl(StNode p) {
+        if (p.kind == StNodeKind.NARRP) return Ast.ArrayDecl.of(p);
+        StNode arrd = Ast.Param.of(p).decl();
+        return (arrd != null && arrd.kind == StNodeKind.NARRD) ? Ast.ArrayDecl.of(arrd) : new Ast.ArrayDecl(null, null);
+    }
+
     // check if a name already exists in a scope
     private void defineOrDup(Symbol s, StNode at) {
         if (!table.define(s)) {
@@ -208,9 +230,9 @@ public final class SemanticAnalyzer {
 
     // if either type is real, result is real, otherwise its in an int
     private Type numericResult (Type a, Type b) {
-        if (a instanceof Type.Error || b instanceof Type.Error) return new Type.Error();
+        if (a instanceof Type.Error || b instanceof Type.Error) return Type.ERROR;
         if (Type.isNumeric(a) && Type.isNumeric(b)) {
-            return (a instanceof Type.Real || b instanceof Type.Real) ? new Type.Real() : new Type.Int();
+            return (a instanceof Type.Real || b instanceof Type.Real) ? Type.REAL : Type.INT;
         }
         return null;
     }
@@ -227,15 +249,17 @@ public final class SemanticAnalyzer {
             }
     
             case NNOT -> {
-                return n.children().size() == 1 && isConstExpr(n.children().get(0));
+                StNode operand = Ast.Not.of(n).operand();
+                return operand != null && isConstExpr(operand);
             }
     
             case NADD, NSUB, NMUL, NDIV, NMOD, NPOW,
                  NEQL, NNEQ, NGRT, NLSS, NGEQ, NLEQ,
                  NAND, NOR, NXOR -> {
-                return n.children().size() == 2 &&
-                       isConstExpr(n.children().get(0)) &&
-                       isConstExpr(n.children().get(1));
+                Ast.BinOp op = Ast.BinOp.of(n);
+                return op.left() != null && op.right() != null &&
+                       isConstExpr(op.left()) &&
+                       isConstExpr(op.right());
             }
     
             case NSIMV, NARRV, NAELT, NFCALL -> {
@@ -243,8 +267,8 @@ public final class SemanticAnalyzer {
             }
     
             default -> {
-                if (!n.children().isEmpty() && n.children().size() == 1) {
-                    return isConstExpr(n.children().get(0));
+                if (!n.isLeaf() && n.childCount() == 1) {
+                    return isConstExpr(n.child(0));
                 }
                 return false;
             }
@@ -260,9 +284,9 @@ public final class SemanticAnalyzer {
         Type t;
         switch (n.kind) {
             // literals
-            case NILIT -> t = new Type.Int();
-            case NFLIT -> t = new Type.Real();
-            case NTRUE, NFALS -> t = new Type.Bool();
+            case NILIT -> t = Type.INT;
+            case NFLIT -> t = Type.REAL;
+            case NTRUE, NFALS -> t = Type.BOOL;
 
             // variables
             case NSIMV -> t = typeOfId(n.lexeme, n);
@@ -279,7 +303,7 @@ public final class SemanticAnalyzer {
 
             case NFCALL -> t = typeOfNfCall(n);
 
-            default -> t = new Type.Error();
+            default -> t = Type.ERROR;
         }
 
         n.setType(t);
@@ -291,36 +315,14 @@ public final class SemanticAnalyzer {
         // act on proper program node
         if (prog == null || prog.kind != StNodeKind.NPROG) return; 
 
-        // find the header program id
-        String head = null;
-        for (StNode c: prog.children()) {
-            if (c.kind == StNodeKind.NSIMV) {
-                head = c.lexeme;
-                break;
-            }
-        }
+        Ast.Program p = Ast.Program.of(prog);
 
-        // find NMAIN under NPROG
-        StNode nmain = null;
-        for (StNode c: prog.children()) {
-            if (c.kind == StNodeKind.NMAIN) {
-                nmain = c;
-                break;
-            }
-        }
+        // the header program id, an NUNDEF when it was missing
+        StNode headId = p.name();
+        String head = (headId != null && headId.kind == StNodeKind.NSIMV) ? headId.lexeme : null;
 
-        // last trailing simv directly under nmain
-        String tail = null;
-        if (nmain != null) {
-            List <StNode> kids = nmain.children();
-            for (int i = kids.size() - 1; i >= 0; i--) {
-                StNode c = kids.get(i);
-                if (c.kind == StNodeKind.NSIMV) {
-                    tail = c.lexeme;
-                    break;
-                }
-            }
-        }
+        // the trailing id after main
+        String tail = (p.main() != null) ? nameOf(Ast.MainBody.of(p.main()).name()) : null;
 
         // compare the names to check if its consistent
         if (head != null && tail != null && !head.equals(tail)) {
@@ -330,9 +332,10 @@ public final class SemanticAnalyzer {
 
     // array declarations, const initializers etc.
     private void visitGlobals(StNode nglob) {
-        StNode consts = firstChild(nglob, StNodeKind.NILIST);
-        StNode structs = firstChild(nglob, StNodeKind.NTYPEL);
-        StNode arrs = firstChild(nglob, StNodeKind.NALIST);
+        Ast.Globals g = Ast.Globals.of(nglob);
+        StNode consts = g.consts();
+        StNode structs = g.types();
+        StNode arrs = g.arrays();
 
         if (consts != null) { declareConsts(consts); }
         if (structs != null) { declareStructs(structs); }
@@ -343,20 +346,20 @@ public final class SemanticAnalyzer {
         for (StNode c: consts.children()) {
             if (c.kind != StNodeKind.NINIT) continue;
 
-            String cname = firstName(c);
+            Ast.ConstInit init = Ast.ConstInit.of(c);
+            String cname = nameOf(init.name());
             if (cname == null) {
                 er.semantic("Semantic: constant missing identifier", tokenAt(c, TokenType.TCNST));
                 continue;
             }
 
-            // size < 2 means that we have an id probably but no expr
-            if (c.children().size() < 2) {
+            // get just the <expr> of the init, we have an id probably but no expr when it's missing
+            StNode expr = init.value();
+            if (expr == null) {
                 er.semantic("Semantic: constant missing expression", tokenAt(c, TokenType.TCNST));
                 continue;
             }
-            
-            // get just the <expr> of the init
-            StNode expr = c.children().get(1);
+
             // make sure the expression is even valid for const
             if (!isConstExpr(expr)) {
                 er.semantic("Semantic: constant '" + cname + "' must use a constant expression",
@@ -373,108 +376,39 @@ public final class SemanticAnalyzer {
                 continue;
             }
 
-            Object cVal = evalExpr(expr);
+            byte kind = ConstEval.eval(expr);
+            long bits = expr.constBits();
 
             // if the type is int but the value is a double and the double is a whole number i.e. 3.0, then its safe to convert it to int
-            if (cType instanceof Type.Int && cVal instanceof Double d && isWhole(d)) {
-                cVal = d.intValue();
-            } else if (cType instanceof Type.Real && cVal instanceof Integer i) { // the opposite
-                cVal = i.doubleValue(); 
+            if (cType instanceof Type.Int && kind == ConstEval.REAL && isWhole(ConstEval.asReal(expr))) {
+                kind = ConstEval.INT;
+                bits = (int) ConstEval.asReal(expr);
+            } else if (cType instanceof Type.Real && kind == ConstEval.INT) { // the opposite
+                kind = ConstEval.REAL;
+                bits = Double.doubleToRawLongBits(ConstEval.asInt(expr));
             }
 
-            // if evalExpr returned null then for some reason whatevers there, we cant evaluate
-            if (cVal == null) {
+            // for some reason whatevers there, we cant evaluate
+            if (kind == ConstEval.NOT_CONST) {
                 er.semantic("Semantic: expression for constant '" + cname + "' is not evaluable",
                             tokenAt(c, TokenType.TCNST));
                 continue;
             }
 
             // to make sure the type and value actually match
-            if (cType instanceof Type.Int   && !(cVal instanceof Integer) ||
-                cType instanceof Type.Real  && !(cVal instanceof Double)  ||
-                cType instanceof Type.Bool  && !(cVal instanceof Boolean)) {
+            if (cType instanceof Type.Int   && kind != ConstEval.INT  ||
+                cType instanceof Type.Real  && kind != ConstEval.REAL ||
+                cType instanceof Type.Bool  && kind != ConstEval.BOOL) {
                 er.semantic("Semantic: constant '" + cname + "' type/value mismatch; expected " + printable(cType),
                             tokenAt(c, TokenType.TCNST));
                 continue;
             }
 
-            ConstSymbol cSym = new ConstSymbol(cname, cType, cVal);
+            ConstSymbol cSym = new ConstSymbol(cname, cType, bits);
             defineOrDup(cSym, c);
         }
     }
 
-    private Object evalExpr(StNode expr) {
-        
-        switch (expr.kind) {
-            case NILIT: return Integer.parseInt(expr.lexeme);
-            case NFLIT: return Double.parseDouble(expr.lexeme);
-            case NTRUE: return Boolean.TRUE;
-            case NFALS: return Boolean.FALSE;
-
-            case NNOT: {
-                Object a = evalExpr(expr.children().get(0));
-                return (a instanceof Boolean b) ? !b : null;
-            }
-
-            /**
-             * Explaining for one as it just applies to the rest
-             * if either side of the expression is a real, do the operation as if they are both doubles
-             * if neither side of the expression is a real, do the operation as if they were ints (technically toI not rly needed here, but used for consistency) 
-             */
-            case NADD: return num2(expr, (x,y) -> isReal(x,y) ? (toD(x) + toD(y)) : (toI(x) + toI(y))); 
-            case NSUB: return num2(expr, (x,y) -> isReal(x,y) ? (toD(x) - toD(y)) : (toI(x) - toI(y)));
-            case NMUL: return num2(expr, (x,y) -> isReal(x,y) ? (toD(x) * toD(y)) : (toI(x) * toI(y)));
-            case NDIV: return num2(expr, (x,y) -> isReal(x,y) ? (toD(x) / toD(y)) : safeIntDiv(toI(x), toI(y))); // safeIntDiv makes sure y isnt 0
-
-            // same thing as safeIntDiv, safeIntMod checks if y is 0, but applies %
-            case NMOD: return num2(expr, (x,y) -> safeIntMod(toI(x), toI(y)));
-            /**
-             * e.g. 3 ^ 2
-             * a = int
-             * b = int
-             * if a isnt a int or double return null, if b is anything but an int return null
-             * type cast exponent since its an object type rn
-             * if a is a double, pattern match, create new double da, apply the operation
-             * otherwise apply the operation but as if they were ints (Math.pow returns double so custom method)
-             */
-            case NPOW: {
-                Object a = evalExpr(expr.children().get(0));
-                Object b = evalExpr(expr.children().get(1));
-                if (!(a instanceof Integer || a instanceof Double) || !(b instanceof Integer)) return null;
-                int e = (Integer) b;
-                if (a instanceof Double da) return Math.pow(da, e);
-                return intPow((Integer) a, e);
-            }
-
-            case NEQL: return rel(expr, (x,y) -> cmp(x,y) == 0);
-            case NNEQ: return rel(expr, (x,y) -> cmp(x,y) != 0);
-            case NGRT: return rel(expr, (x,y) -> cmp(x,y) > 0);
-            case NLSS: return rel(expr, (x,y) -> cmp(x,y) < 0);
-            case NGEQ: return rel(expr, (x,y) -> cmp(x,y) >= 0);
-            case NLEQ: return rel(expr, (x,y) -> cmp(x,y) <= 0);
-
-            case NAND: {
-                Object a = evalExpr(expr.children().get(0));
-                Object b = evalExpr(expr.children().get(1));
-                return (a instanceof Boolean x && b instanceof Boolean y) ? (x && y) : null;
-            }
-            case NOR: {
-                Object a = evalExpr(expr.children().get(0));
-                Object b = evalExpr(expr.children().get(1));
-                return (a instanceof Boolean x && b instanceof Boolean y) ? (x || y) : null;
-            }
-            case NXOR: {
-                Object a = evalExpr(expr.children().get(0));
-                Object b = evalExpr(expr.children().get(1));
-                return (a instanceof Boolean x && b instanceof Boolean y) ? (x ^ y) : null;
-            }
-
-            default:
-                if (expr.children().size() == 1) return evalExpr(expr.children().get(0));
-                return null;
-        }
-    }
-    
     // this refers to the <types> section changed to structs to save confusion with our Type class
     private void declareStructs(StNode ntypel) {
         if (ntypel == null || ntypel.kind != StNodeKind.NTYPEL) return;
@@ -482,58 +416,60 @@ public final class SemanticAnalyzer {
         for (StNode t : ntypel.children()) {
             switch (t.kind) {
                 case NRTYPE -> { 
-                    String typeName = firstName(t);
+                    Ast.StructType st = Ast.StructType.of(t);
+                    String typeName = nameOf(st.name());
                     if (typeName == null) {
                         er.semantic("Semantic: struct type missing name", tokenAt(t, TokenType.TIDEN));
                         continue;
                     }
                     LinkedHashMap<String, Type> fields = new LinkedHashMap<>();
-                    StNode flist = firstChild(t, StNodeKind.NFLIST);
+                    StNode flist = st.fields();
                     if (flist != null) {
                         for (StNode sd : flist.children()) {
                             if (sd.kind != StNodeKind.NSDECL) continue;
-                            String fname = firstName(sd);
-                            Type ftype = typeFromNode(firstChild(sd, StNodeKind.NSTYPE));
+                            Ast.SimpleDecl field = Ast.SimpleDecl.of(sd);
+                            String fname = nameOf(field.name());
+                            Type ftype = typeFromNode(field.type());
                             if (fname == null || ftype == null) {
                                 er.semantic("Semantic: bad field in type '" + typeName + "'", tokenAt(sd, TokenType.TIDEN));
-                                ftype = new Type.Error();
+                                ftype = Type.ERROR;
                             }
                             fields.put(fname, ftype);
                         }
                     }
-                    defineOrDup(new TypeSymbol(typeName, new Type.Struct(fields)), t);
+                    defineOrDup(new TypeSymbol(typeName, types.struct(fields)), t);
                 }
 
                 case NATYPE -> {
-                    List<StNode> kids = t.children();
-                    if (kids.size() < 3) {
+                    Ast.ArrayType at = Ast.ArrayType.of(t);
+                    if (at.name() == null || at.size() == null || at.elem() == null) {
                         er.semantic("Semantic: malformed array type", tokenAt(t, TokenType.TLBRK));
                         continue;
                     }
-                    String typeName = kids.get(0).lexeme;     
-                    StNode sizeNode = kids.get(1);            
-                    String elemName = kids.get(2).lexeme;     
+                    String typeName = at.name().lexeme;
+                    StNode sizeNode = at.size();
+                    String elemName = at.elem().lexeme;
 
                     Type elemType = baseTypeFromLexeme(elemName);
                     if (elemType == null) {
                         er.semantic("Semantic: unknown element type '" + elemName + "' for type '" + typeName + "'", tokenAt(t, TokenType.TIDEN));
-                        elemType = new Type.Error();
+                        elemType = Type.ERROR;
                     }
                     if (elemType instanceof Type.VoidT) {
                         er.semantic("Semantic: array element type cannot be void for type '" + typeName + "'", tokenAt(t, TokenType.TLBRK));
-                        elemType = new Type.Error();
+                        elemType = Type.ERROR;
                     }
 
-                    Object szVal = evalExpr(sizeNode);
-                    Integer size = (szVal instanceof Integer i) ? i
-                                : (szVal instanceof Double d && isWhole(d)) ? d.intValue()
-                                : null;
-                    if (size == null || size < 0) {
+                    byte szKind = ConstEval.eval(sizeNode);
+                    int size = (szKind == ConstEval.INT) ? ConstEval.asInt(sizeNode)
+                             : (szKind == ConstEval.REAL && isWhole(ConstEval.asReal(sizeNode))) ? (int) ConstEval.asReal(sizeNode)
+                             : -1;
+                    if (size < 0) {
                         er.semantic("Semantic: invalid array size for type '" + typeName + "'", tokenAt(t, TokenType.TLBRK));
                         size = 0;
                     }
 
-                    defineOrDup(new TypeSymbol(typeName, new Type.Array(elemType, size)), t);
+                    defineOrDup(new TypeSymbol(typeName, types.array(elemType, size)), t);
                 }
 
                 default -> {
@@ -545,12 +481,7 @@ public final class SemanticAnalyzer {
 
     private void declareArrays(StNode arrs) {
         for (StNode d : arrs.children()) {
-            if (d.kind == StNodeKind.NARRD) {
-                defineArrayDecl(d, firstName(d));
-            } else { // in the event that the node is like an extra step down, wrapped by a different node
-                StNode arrd = firstChild(d, StNodeKind.NARRD);
-                if (arrd != null) defineArrayDecl(arrd, firstName(arrd));
-            }
+            if (d.kind == StNodeKind.NARRD) defineArrayDecl(d); // anything else is an NUNDEF the parser left
         }
     }
 
@@ -565,18 +496,18 @@ public final class SemanticAnalyzer {
         for (StNode f : nfuncs.children()) {
             if (f.kind != StNodeKind.NFUND) continue;
 
-            String fname = firstName(f);
+            Ast.FuncDecl fd = Ast.FuncDecl.of(f);
+            String fname = nameOf(fd.name());
             if (fname == null) {
                 er.semantic("Semantic: function missing name", tokenAt(nfuncs, TokenType.TFUNC));
                 continue;
             }
 
-            StNode rtNode = firstChild(f, StNodeKind.NSTYPE);
-            Type rType = typeFromNode(rtNode);
+            Type rType = typeFromNode(fd.ret());
 
             if (rType == null) {
                 er.semantic("Semantic: unknown or missing return type for function '" + fname + "'", tokenAt(nfuncs, TokenType.TFUNC));
-                rType = new Type.Error();
+                rType = Type.ERROR;
             }
 
             List<Type> paramTypes = paramTypesOf(f);
@@ -603,38 +534,110 @@ public final class SemanticAnalyzer {
     private void checkFuncBodies(StNode nfuncs) {
         if (nfuncs == null || nfuncs.kind != StNodeKind.NFUNCS) return;
 
+        List<StNode> funcs = new ArrayList<>();
         for (StNode f : nfuncs.children()) {
-            if (f.kind == StNodeKind.NFUND) {
-                checkFuncBody(f);
+            if (f.kind == StNodeKind.NFUND) funcs.add(f);
+        }
+
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        if (threads < 2 || funcs.size() < ParallelFuncParser.MIN_FUNCS) {
+            checkFuncBodies(funcs);
+            return;
+        }
+        checkInParallel(funcs, threads * BATCHES_PER_THREAD);
+    }
+
+    // checks the bodies here on this thread, over the frozen globals same as a pool thread but straight into this reporter
+    private void checkFuncBodies(List<StNode> funcs) {
+        SemanticAnalyzer on = new SemanticAnalyzer(new SymbolTable(globals), er, layout);
+        on.globals = globals;
+        for (StNode f : funcs) on.checkFuncBody(f);
+    }
+
+    /**
+     * Checks the bodies on the common ForkJoinPool, a run of them per task
+     * Each task has its own analyzer with its own table over the frozen globals and its own reporter, a body only reads the
+     * globals and writes to its own nodes and symbols so nothing is shared but the snapshot. The errors are copied into the real
+     * reporter afterwards a batch at a time in source order, so they come out just as a sequential check reports them.
+     * A table over the snapshot only ever reads the NamePool (see SymbolTable.idOf), so the threads can share it.
+     */
+    private void checkInParallel(List<StNode> funcs, int want) {
+        List<Batch> batches = new ArrayList<>();
+        int per = Math.max(1, (funcs.size() + want - 1) / want);
+        for (int k = 0; k < funcs.size(); k += per) {
+            batches.add(new Batch(funcs.subList(k, Math.min(funcs.size(), k + per)), globals, layout));
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Batch b : batches) tasks.add(ForkJoinPool.commonPool().submit(b::check));
+        for (ForkJoinTask<?> t : tasks) t.join();
+
+        for (Batch b : batches) {
+            List<CompilerError> found = b.on.er.all();
+            for (int k = 0; k < b.errorsKept; k++) er.report(found.get(k));
+            if (b.checked < b.funcs.size()) {
+                // one ran out of stack on the pool, the rest go on this thread which is sized for it (see CD)
+                List<StNode> rest = b.funcs.subList(b.checked, b.funcs.size());
+                for (StNode f : rest) forget(f);
+                checkFuncBodies(rest);
             }
         }
     }
 
+    // a run of function bodies checked together on one thread
+    private static final class Batch {
+        final List<StNode> funcs;
+        final SemanticAnalyzer on;
+        int checked = 0; // how many bodies from the front were checked through
+        int errorsKept = 0; // errors the on.er got from those
+
+        Batch(List<StNode> funcs, SymbolTable.Snapshot globals, Layout layout) {
+            this.funcs = funcs;
+            this.on = new SemanticAnalyzer(globals, layout);
+        }
+
+        void check() {
+            try {
+                for (StNode f : funcs) {
+                    on.checkFuncBody(f);
+                    checked++;
+                    errorsKept = on.er.count();
+                }
+            } catch (StackOverflowError e) {
+                // nested deeper than a pool thread's stack, left for the caller
+            }
+        }
+    }
+
+    // drops the types and symbols a half done check left on a function's nodes, so checking it again reports everything
+    private static void forget(StNode f) {
+        Deque<StNode> todo = new ArrayDeque<>();
+        todo.push(f);
+        while (!todo.isEmpty()) {
+            StNode n = todo.pop();
+            n.setType(null);
+            n.setSymbol(null);
+            for (StNode c = n.firstChild(); c != null; c = c.nextSibling()) todo.push(c);
+        }
+    }
+
     private void checkFuncBody(StNode fund) {
-        Type prevRet = currentFuncReturnType;
-        currentFuncReturnType = typeFromNode(firstChild(fund, StNodeKind.NSTYPE));
-        boolean prevSaw = sawReturnInCurrentFunc;
-        sawReturnInCurrentFunc = false;
-
-        boolean prevInFn = inFunction;
-        inFunction = true;
-        int prevLocals = funcLocalsNextOff;
-        int prevParams = funcParamsNextOff;
-        funcLocalsNextOff = 16;
-        funcParamsNextOff = -8;
+        Ast.FuncDecl fd = Ast.FuncDecl.of(fund);
+        FuncScope prev = fn;
+        fn = new FuncScope(typeFromNode(fd.ret()), layout.newFrame(fund));
 
         table.enter();
 
-        StNode plist = firstChild(fund, StNodeKind.NPLIST);
+        StNode plist = fd.params();
         if (plist != null) defineParams(plist);
-        StNode dlist = firstChild(fund, StNodeKind.NDLIST);
+        StNode dlist = fd.locals();
         if (dlist != null) {
             for (StNode d : dlist.children()) {
                 declareLocal(d);
             }
         }
 
-        StNode stats = firstChild(fund, StNodeKind.NSTATS);
+        StNode stats = fd.body();
         if (stats != null) {
             for (StNode s : stats.children()) {
                 visitStat(s);
@@ -643,16 +646,11 @@ public final class SemanticAnalyzer {
 
         table.exit();
 
-        inFunction = prevInFn;
-        funcLocalsNextOff = prevLocals;
-        funcParamsNextOff = prevParams;
-
-        if (!(currentFuncReturnType instanceof Type.VoidT) && !sawReturnInCurrentFunc) {
-            er.semantic("Semantic: function " + firstName(fund) + " is missting a return statement", tokenAt(fund, TokenType.TFUNC));
+        if (!(fn.returnType instanceof Type.VoidT) && !fn.sawReturn) {
+            er.semantic("Semantic: function " + nameOf(fd.name()) + " is missting a return statement", tokenAt(fund, TokenType.TFUNC));
         }
 
-        currentFuncReturnType = prevRet;
-        sawReturnInCurrentFunc = prevSaw;
+        fn = prev;
     }
 
     /**
@@ -663,20 +661,13 @@ public final class SemanticAnalyzer {
      */
     private void visitMain(StNode nmain) {
 
-        Type prevRet = currentFuncReturnType;
-        boolean prevSaw = sawReturnInCurrentFunc;
-        currentFuncReturnType = new Type.VoidT();
-        sawReturnInCurrentFunc = false;
-
-        boolean prevInFn   = inFunction;
-        int prevLocals     = funcLocalsNextOff;
-
-        inFunction = true;
-        funcLocalsNextOff = 16;   // same as functions
+        FuncScope prev = fn;
+        fn = new FuncScope(Type.VOID, layout.newFrame(nmain)); // a frame same as a function's
 
         table.enter();
 
-        StNode dlist = firstChild(nmain, StNodeKind.NSDLST);
+        Ast.MainBody main = Ast.MainBody.of(nmain);
+        StNode dlist = main.locals();
 
         if (dlist != null) {
             for (StNode d : dlist.children()) {
@@ -684,7 +675,7 @@ public final class SemanticAnalyzer {
             }
         }
 
-        StNode stats = firstChild(nmain, StNodeKind.NSTATS);
+        StNode stats = main.body();
         if (stats != null) {
             for (StNode s : stats.children()) {
                 visitStat(s);
@@ -694,22 +685,16 @@ public final class SemanticAnalyzer {
 
         table.exit();
 
-        inFunction = prevInFn;
-        funcLocalsNextOff = prevLocals;
-        currentFuncReturnType = prevRet;
-        sawReturnInCurrentFunc = prevSaw;
+        fn = prev;
     }
 
     // declare locals
     private void declareLocal(StNode d) {
         switch (d.kind) {
             case NSDECL -> defineSimpleDecl(d);
-            case NARRD -> defineArrayDecl(d, firstName(d));
+            case NARRD -> defineArrayDecl(d);
 
-            default -> {
-                StNode arrd = firstChild(d, StNodeKind.NARRD);
-                if (arrd != null) defineArrayDecl(arrd, firstName(d));
-            }
+            default -> {}
         }
     }
 
@@ -719,19 +704,19 @@ public final class SemanticAnalyzer {
         for (StNode p : plist.children()) {
             switch (p.kind) {
                 case NSIMP -> {
-                    for (StNode sd : p.children()) {
-                        if (sd.kind == StNodeKind.NSDECL) { // <-- FIX: was "!="
-                            String pname = firstName(sd);
-                            Type pt = typeFromNode(firstChild(sd, StNodeKind.NSTYPE));
-                            defineParamSymbol(pname, pt, false, sd);
-                        }
+                    StNode sd = Ast.Param.of(p).decl();
+                    if (sd != null && sd.kind == StNodeKind.NSDECL) {
+                        Ast.SimpleDecl decl = Ast.SimpleDecl.of(sd);
+                        String pname = nameOf(decl.name());
+                        Type pt = typeFromNode(decl.type());
+                        defineParamSymbol(pname, pt, false, sd);
                     }
                 }
 
                 case NARRP -> { // non-const array param
-                    String pname = firstName(p); // first child NSIMV(arr)
-                    String tname = (p.children().size() >= 2 && p.children().get(1).kind == StNodeKind.NSIMV)
-                                    ? p.children().get(1).lexeme : null;
+                    Ast.ArrayDecl decl = arrayParamDecl(p);
+                    String pname = nameOf(decl.name());
+                    String tname = nameOf(decl.type());
                     if (pname == null || tname == null) {
                         er.semantic("Semantic: malformed array parameter", tokenAt(p, TokenType.TIDEN));
                         continue;
@@ -740,18 +725,10 @@ public final class SemanticAnalyzer {
                     defineParamSymbol(pname, pt, false, p);
                 }
 
-                case NARRC -> { // const array param (can come wrapped in NARRD)
-                    StNode arrd = firstChild(p, StNodeKind.NARRD);
-                    String pname, tname;
-                    if (arrd != null && arrd.children().size() >= 2) {
-                        pname = firstName(arrd);
-                        tname = arrd.children().get(1).lexeme;
-                    } else {
-                        // also accept the flat two-child shape
-                        pname = firstName(p);
-                        tname = (p.children().size() >= 2 && p.children().get(1).kind == StNodeKind.NSIMV)
-                                    ? p.children().get(1).lexeme : null;
-                    }
+                case NARRC -> { // const array param, wrapped around an NARRD
+                    Ast.ArrayDecl decl = arrayParamDecl(p);
+                    String pname = nameOf(decl.name());
+                    String tname = nameOf(decl.type());
                     if (pname == null || tname == null) {
                         er.semantic("Semantic: malformed const array parameter", tokenAt(p, TokenType.TCNST));
                         continue;
@@ -769,15 +746,12 @@ public final class SemanticAnalyzer {
     private void defineParamSymbol(String pname, Type ptype, boolean isConst, StNode at) {
         if (ptype == null) {
             er.semantic("Semantic: unknown parameter type for '" + pname + "'", tokenAt(at, TokenType.TIDEN));
-            ptype = new Type.Error();
+            ptype = Type.ERROR;
         }
 
         ParamSymbol ps = new ParamSymbol(pname, ptype, isConst);
 
-        if (inFunction) {
-            ps.setAddr(2, funcParamsNextOff);
-            funcParamsNextOff -= WORD_BYTES;
-        }
+        if (fn != null) ps.setAddr(Layout.FRAME, fn.frame.param());
         defineOrDup(ps, at);
     }
 
@@ -787,15 +761,14 @@ public final class SemanticAnalyzer {
         switch (lv.kind) {
             case NSIMV: {
                 Symbol s = lv.getSymbol();
-                if (s == null) s = table.resolve(lv.lexeme);
+                if (s == null) s = lookup(lv);
                 if (s instanceof ParamSymbol ps && ps.isConst()) return ps;
                 return null;
             }
             case NAELT:
-            case NARRV: {
-                StNode base = lv.children().isEmpty() ? null : lv.children().get(0);
-                return constParamOfLValue(base);
-            }
+                return constParamOfLValue(Ast.ArrayElem.of(lv).array());
+            case NARRV:
+                return constParamOfLValue(Ast.FieldElem.of(lv).array());
             default:
                 return null;
         }
@@ -804,55 +777,51 @@ public final class SemanticAnalyzer {
     private void defineSimpleDecl(StNode nsdecl) {
         if (nsdecl == null || nsdecl.kind != StNodeKind.NSDECL) return;
     
-        String name = firstName(nsdecl);
-        Type t = typeFromNode(firstChild(nsdecl, StNodeKind.NSTYPE));
+        Ast.SimpleDecl decl = Ast.SimpleDecl.of(nsdecl);
+        String name = nameOf(decl.name());
+        Type t = typeFromNode(decl.type());
         if (t == null) {
             er.semantic("Semantic: unknown type for '" + name + "'", tokenAt(nsdecl, TokenType.TUNDF));
-            t = new Type.Error();
+            t = Type.ERROR;
         }
     
         VarSymbol vs = new VarSymbol(name, t);
     
-        if (inFunction) {
-            vs.setAddr(2, funcLocalsNextOff);
-            funcLocalsNextOff += WORD_BYTES;
+        if (fn != null) {
+            vs.setAddr(Layout.FRAME, fn.frame.local());
         } else {
-            vs.setAddr(1, globalsNextOff);
-            globalsNextOff += WORD_BYTES;
+            vs.setAddr(Layout.GLOBALS, layout.global());
         }
     
         defineOrDup(vs, nsdecl);
         nsdecl.setSymbol(vs);
-        StNode idNode = firstChild(nsdecl, StNodeKind.NSIMV);
+        StNode idNode = decl.name();
         if (idNode != null) idNode.setSymbol(vs);
     }
 
-    // nameOverride if the caller already knows the name of the array e.g. in declareLocal we call
-    // firstName(d)
-    private void defineArrayDecl(StNode d, String nameOverride) {
+    private void defineArrayDecl(StNode d) {
         if (d == null || d.kind != StNodeKind.NARRD) return;
+        Ast.ArrayDecl decl = Ast.ArrayDecl.of(d);
 
         // name
-        String aname = (nameOverride != null) ? nameOverride : firstName(d);
+        String aname = nameOf(decl.name());
         if (aname == null) {
             er.semantic("Semantic: array declaration missing identifier", tokenAt(d, TokenType.TIDEN));
             return;
         }
 
-        List<StNode> kids = d.children();
-        if (kids.size() < 2) {
+        StNode typeNameNode = decl.type();
+        if (typeNameNode == null) {
             er.semantic("Semantic: malformed array declaration for '" + aname + "'", tokenAt(d, TokenType.TLBRK));
             return;
         }
 
-        // second child is the type id
-        StNode typeNameNode = kids.get(1);
-        String tname = (typeNameNode != null) ? typeNameNode.lexeme : null;
+        String tname = typeNameNode.lexeme;
         Type t = baseTypeFromLexeme(tname);
 
         if (t == null) {
             er.semantic("Semantic: unknown element type for array '" + aname + "'", tokenAt(d, TokenType.TIDEN));
-            t = new Type.Error();
+            t = Type.ERROR;
         }
 
         if (!(t instanceof Type.Array) && !(t instanceof Type.Error)) {
@@ -860,17 +829,14 @@ public final class SemanticAnalyzer {
         }
 
         VarSymbol vs = new VarSymbol(aname, t);
-        if (inFunction) {
-            vs.setAddr(2, funcLocalsNextOff);
-            funcLocalsNextOff += WORD_BYTES;
+        if (fn != null) {
+            vs.setAddr(Layout.FRAME, fn.frame.local());
         } else {
-            vs.setAddr(1, globalsNextOff);
-            globalsNextOff += WORD_BYTES;
+            vs.setAddr(Layout.GLOBALS, layout.global());
         }
         defineOrDup(vs, d);
         d.setSymbol(vs);                       
-        StNode idNode = firstChild(d, StNodeKind.NSIMV);
-        if (idNode != null) idNode.setSymbol(vs); 
+        decl.name().setSymbol(vs);
     }
 
 
@@ -885,12 +851,12 @@ public final class SemanticAnalyzer {
             case NRETN -> visitReturn(s);
 
             case NCALL -> {
-                if (!s.children().isEmpty() && s.children().get(0).kind == StNodeKind.NFCALL) {
-                    StNode call = s.children().get(0);
+                StNode call = Ast.CallStat.of(s).call();
+                if (call != null && call.kind == StNodeKind.NFCALL) {
                     Type rt = typeOfNfCall(call);
 
                     if (!(rt instanceof Type.VoidT)) {
-                        String fname = firstName(call);
+                        String fname = nameOf(Ast.FnCall.of(call).name());
                         er.semantic("Semantic: cannot use value-returning function '" + fname + "' as a statement",
                                     tokenAt(s, TokenType.TFUNC));
                     }
@@ -902,24 +868,23 @@ public final class SemanticAnalyzer {
     }
 
     private Type typeOfNfCall(StNode n) {
-        if (n == null || n.kind != StNodeKind.NFCALL) return new Type.Error();
+        if (n == null || n.kind != StNodeKind.NFCALL) return Type.ERROR;
 
-        String fname = firstName(n);
+        Ast.FnCall fc = Ast.FnCall.of(n);
+        String fname = nameOf(fc.name());
         if (fname == null) {
             er.semantic("Semantic: malformed function call (missing name)", tokenAt(n, TokenType.TFUNC));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
         Symbol s = table.resolve(fname);
         if (!(s instanceof FuncSymbol fs)) {
             er.semantic("Semantic: '" + fname + "' is not a function", tokenAt(n, TokenType.TFUNC));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
-        StNode nameNode = firstChild(n, StNodeKind.NSIMV);
-        if (nameNode != null) nameNode.setSymbol(fs);
-        List<StNode> kids = n.children();
-        StNode argList = (kids.size() >= 2 && kids.get(1).kind == StNodeKind.NALIST) ? kids.get(1) : null;
+        fc.name().setSymbol(fs);
+        StNode argList = fc.args(); // an NEXPL with nothing in it for f()
         List<StNode> actuals = (argList != null) ? argList.children() : Collections.emptyList();
 
         List<Type> formals = fs.paramTypes();
@@ -949,11 +914,11 @@ public final class SemanticAnalyzer {
     // Variables
     // resolve an NSIMV node to a declaration and return its type
     private Type typeOfId(String name, StNode at) {
-        Symbol s = table.resolve(name); // check the symbol is actually declared in a scope somewhere
+        Symbol s = lookup(at); // check the symbol is actually declared in a scope somewhere
 
         if (s == null) {
             er.semantic("Semantic: identifier used before declaration: " + name, tokenAt(at, TokenType.TIDEN));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
         at.setSymbol(s); // bind this declaration to the node
@@ -963,8 +928,12 @@ public final class SemanticAnalyzer {
     // Arrays
     // handles base[index]
     private Type typeOfArrayIndex(StNode n) {
-        StNode base = n.children().get(0); // get the base
-        StNode index = n.children().get(1); // get the indexd
+        Ast.ArrayElem elem = Ast.ArrayElem.of(n);
+        return typeOfArrayIndex(elem.array(), elem.index(), n);
+    }
+
+    // base[index] where the errors point at n, base and index don't have to be n's children (see typeOfArrayElem)
+    private Type typeOfArrayIndex(StNode base, StNode index, StNode n) {
 
         // get their types
         Type bt = typeOf(base);
@@ -973,13 +942,13 @@ public final class SemanticAnalyzer {
         // if base type is not an array, error
         if (!(bt instanceof Type.Array a)) { // pattern matching - instanceof checks if object is specific type, if true creates a new variable and assigns the object to it
             er.semantic("Semantic: indexed expression is not an array: " + base.lexeme, tokenAt(n, TokenType.TLBRK));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
         // if index type is not an int, error
         if (!(it instanceof Type.Int)) {
             er.semantic("Semantic: array index must be an integer", tokenAt(n, TokenType.TLBRK));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
         // the type of base[index] is the arrays element type
@@ -989,17 +958,18 @@ public final class SemanticAnalyzer {
     // Fields
     // handles base[index].field
     private Type typeOfArrayElem(StNode n) {
-        StNode base = n.children().get(0); // base
-        StNode index = n.children().get(1); // index
-        StNode field = n.children().get(2); // field
+        Ast.FieldElem fe = Ast.FieldElem.of(n);
+        StNode base = fe.array(); // base
+        StNode index = fe.index(); // index
+        StNode field = fe.field(); // field
 
         // ensure base[index] is valid and yields a struct element type
-        Type elem = typeOfArrayIndex(new StNode(StNodeKind.NAELT, null, n.line, n.col).add(base).add(index));
+        Type elem = typeOfArrayIndex(base, index, n);
 
         // ensure the element is a struct
         if (!(elem instanceof Type.Struct s)) {
             er.semantic("Semantic: array element is not a struct, cannot select field '" + field.lexeme + "'" , tokenAt(n, TokenType.TIDEN));
-            return new Type.Error();
+            return Type.ERROR;
         }
         
         // look up the field type in the structs field map - Map<String, Type> fields
@@ -1008,7 +978,7 @@ public final class SemanticAnalyzer {
         // unknown field, error
         if (ft == null) {
             er.semantic("Semantic: unknown field '" + field.lexeme + "' in struct", tokenAt(n, TokenType.TIDEN));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
         // return the field type
@@ -1017,36 +987,42 @@ public final class SemanticAnalyzer {
 
     // Arithmetic
     private Type typeOfArith(StNode n) {
-        Type a = typeOf(n.children().get(0));
-        Type b = typeOf(n.children().get(1));
+        Ast.BinOp op = Ast.BinOp.of(n);
+        return typeOfArith(op.op(), op.left(), op.right(), n);
+    }
 
-        if (a instanceof Type.Error || b instanceof Type.Error) return new Type.Error();
+    // left <kind> right where the errors point at n, so compound assignments can check x += y as x + y without building a node for it
+    private Type typeOfArith(StNodeKind kind, StNode left, StNode right, StNode n) {
+        Type a = typeOf(left);
+        Type b = typeOf(right);
+
+        if (a instanceof Type.Error || b instanceof Type.Error) return Type.ERROR;
         
-        if (n.kind == StNodeKind.NPOW) {
+        if (kind == StNodeKind.NPOW) {
         
             if (!Type.isNumeric(a)) {
                 er.semantic("Semantic: left operand of '^' must be numeric, got " + printable(a), tokenAt(n, TokenType.TCART));
-                return new Type.Error();
+                return Type.ERROR;
             }
         
             if (!(b instanceof Type.Int)) {
                 er.semantic("Semantic: right operand of '^' must be integer, got " + printable(b), tokenAt(n, TokenType.TCART));
-                return new Type.Error();
+                return Type.ERROR;
             }
         
-            return (a instanceof Type.Real) ? new Type.Real() : new Type.Int();
+            return (a instanceof Type.Real) ? Type.REAL : Type.INT;
         }
 
         Type r = numericResult(a, b);
 
         if (r == null) {
-            er.semantic("Semantic: arithmetic operands must be numeric, got " + printable(a) + " and " + printable(b), tokenAtOp(n));
-            return new Type.Error();
+            er.semantic("Semantic: arithmetic operands must be numeric, got " + printable(a) + " and " + printable(b), tokenAt(n, tokenTypeForOp(kind)));
+            return Type.ERROR;
         }
 
-        if (n.kind == StNodeKind.NMOD && !(a instanceof Type.Int && b instanceof Type.Int)) {
+        if (kind == StNodeKind.NMOD && !(a instanceof Type.Int && b instanceof Type.Int)) {
             er.semantic("Semantic: operator '%' requires integer operands", tokenAt(n, TokenType.TPERC));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
         return r;
@@ -1054,68 +1030,69 @@ public final class SemanticAnalyzer {
 
     // Relations
     private Type typeOfRel(StNode n) {
-        Type a = typeOf(n.children().get(0));
-        Type b = typeOf(n.children().get(1));
+        Ast.BinOp op = Ast.BinOp.of(n);
+        Type a = typeOf(op.left());
+        Type b = typeOf(op.right());
 
-        if (a instanceof Type.Error || b instanceof Type.Error) return new Type.Error();
+        if (a instanceof Type.Error || b instanceof Type.Error) return Type.ERROR;
 
         switch (n.kind) {
             case NGRT, NLSS, NGEQ, NLEQ -> {
                 if (Type.isNumeric(a) && Type.isNumeric(b)) {
-                    return new Type.Bool();
+                    return Type.BOOL;
                 }
                 er.semantic("Semantic: relational operator requires numeric operands, got " + printable(a) + " and " + printable(b) , tokenAtOp(n));
-                return new Type.Error();
+                return Type.ERROR;
             }
 
             case NEQL, NNEQ -> {
                 boolean bothNumeric = Type.isNumeric(a) && Type.isNumeric(b);
                 boolean bothBool = Type.isBool(a) && Type.isBool(b);
                 if (bothNumeric || bothBool) {
-                    return new Type.Bool();
+                    return Type.BOOL;
                 }
                 er.semantic("Semantic: '=='/'!=' require both numeric or both boolean got " + printable(a) + " and " + printable(b), tokenAtOp(n));
-                return new Type.Error();
+                return Type.ERROR;
             }
 
             default -> {
                 er.semantic("Semantic: internal error: typeOfRel called on " + n.kind, tokenAt(n, TokenType.TUNDF));
-                return new Type.Error();
+                return Type.ERROR;
             }
         }
     }
 
     private Type typeOfNot(StNode n) {
-        Type t = typeOf(n.children().get(0));
+        Type t = typeOf(Ast.Not.of(n).operand());
 
         if (!(t instanceof Type.Bool)) {
             er.semantic("Semantic: 'not' requires boolean operand, got " + printable(t), tokenAt(n, TokenType.TNOTT));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
-        return new Type.Bool();
+        return Type.BOOL;
     }
 
     private Type typeOfBoolBin(StNode n) {
-        Type a = typeOf(n.children().get(0));
-        Type b = typeOf(n.children().get(1));
+        Ast.BinOp op = Ast.BinOp.of(n);
+        Type a = typeOf(op.left());
+        Type b = typeOf(op.right());
 
         if (!(a instanceof Type.Bool && b instanceof Type.Bool)) {
             er.semantic("Semantic: boolean operator requries boolean operands, got " + printable(a) + " and " + printable(b), tokenAtOp(n));
-            return new Type.Error();
+            return Type.ERROR;
         }
 
-        return new Type.Bool();
+        return Type.BOOL;
     }
 
     // Assignments
     private void visitAssign(StNode asgn) {
-        List<StNode> k = asgn.children();
-
-        if (k.size() < 2) return;
+        Ast.Assign a = Ast.Assign.of(asgn);
+        StNode left = a.target();
+        StNode right = a.value();
 
-        StNode left = k.get(0);
-        StNode right = k.get(1);
+        if (left == null || right == null) return;
 
         ensureLValue(left);
         Type lt = typeOf(left);
@@ -1131,26 +1108,26 @@ public final class SemanticAnalyzer {
 
         Type rt;
 
-        switch (asgn.kind) {
+        switch (a.op()) {
 
             case NASGN -> {
                 rt = typeOf(right);
             }
 
             case NPLEQ -> {
-                rt = typeOf(new StNode(StNodeKind.NADD, null, asgn.line, asgn.col).add(left).add(right));
+                rt = typeOfArith(StNodeKind.NADD, left, right, asgn);
             }
 
             case NMNEQ -> {
-                rt = typeOf(new StNode(StNodeKind.NSUB, null, asgn.line, asgn.col).add(left).add(right));
+                rt = typeOfArith(StNodeKind.NSUB, left, right, asgn);
             }
 
             case NSTEA -> {
-                rt = typeOf(new StNode(StNodeKind.NMUL, null, asgn.line, asgn.col).add(left).add(right));
+                rt = typeOfArith(StNodeKind.NMUL, left, right, asgn);
             }
 
             case NDVEQ -> {
-                rt = typeOf(new StNode(StNodeKind.NDIV, null, asgn.line, asgn.col).add(left).add(right));
+                rt = typeOfArith(StNodeKind.NDIV, left, right, asgn);
             }
 
             default -> {
@@ -1169,7 +1146,8 @@ public final class SemanticAnalyzer {
     private boolean assignable(Type target, Type src) {
         if (target instanceof Type.Error || src instanceof Type.Error) return true;
         if (target == null || src == null) return false;
-        if (target.getClass() == src.getClass()) return true;
+        if (target == src) return true; // types are canonical, the same type is the same instance
+        if (target.getClass() == src.getClass()) return true; // so any struct takes any other, whatever its fields
         if (target instanceof Type.Real && src instanceof Type.Int) return true;
         if (target instanceof Type.Array ta && src instanceof Type.Array sa) {
             return assignable(ta.elem(), sa.elem()) && ta.size() == sa.size();
@@ -1179,11 +1157,12 @@ public final class SemanticAnalyzer {
 
     // I/O
     private void visitIO(StNode io) {
+        StNode list = Ast.IoStat.of(io).list();
+        if (list == null) return;
+
         switch (io.kind) {
             case NINPUT -> {
-                if (io.children().isEmpty()) return;
-                StNode vlist = io.children().get(0);
-                for (StNode v : vlist.children()) {
+                for (StNode v : list.children()) {
                     ensureLValue(v);
 
                     Type t = typeOf(v);
@@ -1196,9 +1175,7 @@ public final class SemanticAnalyzer {
             }
 
             case NOUTP -> {
-                if (io.children().isEmpty()) return;
-                StNode prlist = io.children().get(0);
-                for (StNode pr : prlist.children()) {
+                for (StNode pr : list.children()) {
                     if (pr.kind == StNodeKind.NSTRG) continue;
                     Type t = typeOf(pr);
 
@@ -1210,9 +1187,7 @@ public final class SemanticAnalyzer {
             }
 
             case NOUTL -> {
-                if (io.children().isEmpty()) return;
-                StNode prlist = io.children().get(0);
-                for (StNode pr : prlist.children()) {
+                for (StNode pr : list.children()) {
                     if (pr.kind == StNodeKind.NSTRG) continue;
                     Type t = typeOf(pr);
                     
@@ -1241,33 +1216,12 @@ public final class SemanticAnalyzer {
     }
 
     private void visitFor(StNode n) {
-        if (n == null || n.children().isEmpty()) return;
-    
-        StNode first = n.children().get(0);
-        StNode maybeCond = (n.children().size() > 1) ? n.children().get(1) : null;
-        StNode body = null;
-    
-        StNode init = null, cond = null;
-    
-        if (first != null && first.kind == StNodeKind.NALIST) {
-            init = first;
-            if (maybeCond != null) {
-                if (maybeCond.kind == StNodeKind.NSTATS) {
-                    body = maybeCond;
-                } else {
-                    cond = maybeCond;
-                    if (n.children().size() > 2 && n.children().get(2).kind == StNodeKind.NSTATS) {
-                        body = n.children().get(2);
-                    }
-                }
-            }
-        } else {
-            // defensive fallback: treat first as condition
-            cond = first;
-            if (n.children().size() > 1 && n.children().get(1).kind == StNodeKind.NSTATS) {
-                body = n.children().get(1);
-            }
-        }
+        if (n == null) return;
+
+        Ast.ForStat f = Ast.ForStat.of(n);
+        StNode init = f.init(); // an empty NALIST for for (; cond)
+        StNode cond = f.cond();
+        StNode body = f.body();
     
         // init
         if (init != null && init.kind == StNodeKind.NALIST) {
@@ -1295,11 +1249,12 @@ public final class SemanticAnalyzer {
     }
 
     private void visitRept(StNode n) {
-        if (n == null || n.children().size() < 3) return;
+        if (n == null) return;
 
-        StNode a = n.children().get(0);
-        StNode body = n.children().get(1);
-        StNode cond = n.children().get(2);
+        Ast.RepeatStat r = Ast.RepeatStat.of(n);
+        StNode a = r.init();
+        StNode body = r.body();
+        StNode cond = r.cond();
 
         if (a != null && a.kind == StNodeKind.NALIST) {
             for (StNode assign : a.children()) {
@@ -1325,9 +1280,10 @@ public final class SemanticAnalyzer {
     }
 
     private void visitIf(StNode n) {
-        if (n == null || n.children().size() < 2) return;
+        if (n == null) return;
 
-        StNode cond = n.children().get(0);
+        Ast.IfStat i = Ast.IfStat.of(n);
+        StNode cond = i.cond();
         if (cond != null) {
             Type ct = typeOf(cond);
             if (!(ct instanceof Type.Error) && !(ct instanceof Type.Bool)) {
@@ -1335,102 +1291,49 @@ public final class SemanticAnalyzer {
             }
         }
 
-        StNode body = n.children().get(1);
+        StNode body = i.body();
         if (body != null && body.kind == StNodeKind.NSTATS) {
             for (StNode s : body.children()) {
                 visitStat(s);
             }
         }
 
-        if (n.kind == StNodeKind.NIFTE && n.children().size() > 2) {
-            StNode elseStats = n.children().get(2);
-            if (elseStats != null && elseStats.kind == StNodeKind.NSTATS) {
-                for (StNode s : elseStats.children()) {
-                    visitStat(s);
-                }
+        StNode elseStats = i.elseBody(); // null for NIFTH
+        if (elseStats != null && elseStats.kind == StNodeKind.NSTATS) {
+            for (StNode s : elseStats.children()) {
+                visitStat(s);
             }
         }
     }
 
     private void visitReturn(StNode n) {
 
-        boolean hasExpr = !n.children().isEmpty();
-        Type exprType = hasExpr ? typeOf(n.children().get(0)) : null;
+        StNode value = Ast.Return.of(n).value();
+        boolean hasExpr = value != null;
+        Type exprType = hasExpr ? typeOf(value) : null;
 
-        if (currentFuncReturnType == null) {
+        Type returnType = (fn != null) ? fn.returnType : null;
+        if (returnType == null) {
             er.semantic("Semantic: 'return' not allowed at global scope", tokenAt(n, TokenType.TRETN));
             return;
         }
 
         if (hasExpr) {
-            exprType = typeOf(n.children().get(0));
+            exprType = typeOf(value);
         }
 
-        if (currentFuncReturnType instanceof Type.VoidT) {
+        if (returnType instanceof Type.VoidT) {
             if (hasExpr) {
                 er.semantic("Semantic: 'return' in a void function must not return a value", tokenAt(n, TokenType.TRETN));
             }
         } else {
             if (!hasExpr) {
                 er.semantic("Semantic: missing return value", tokenAt(n, TokenType.TRETN));
-            } else if (!(exprType instanceof Type.Error) && !assignable(currentFuncReturnType, exprType)) {
-                er.semantic("Semantic: cannot return " + printable(exprType) + " from function returning " + printable(currentFuncReturnType), tokenAt(n, TokenType.TRETN));
+            } else if (!(exprType instanceof Type.Error) && !assignable(returnType, exprType)) {
+                er.semantic("Semantic: cannot return " + printable(exprType) + " from function returning " + printable(returnType), tokenAt(n, TokenType.TRETN));
             }
         }
 
-        sawReturnInCurrentFunc = true;
-    }
-
-
-    private interface N2 { Object f(Object a, Object b); } // so we can take in the lambda function defined in evalExpr (x, y)
-
-    // applies a numeric operation on two nums
-    private Object num2(StNode n, N2 f) {
-        Object a = evalExpr(n.children().get(0));
-        Object b = evalExpr(n.children().get(1));
-        if (!isNum(a) || !isNum(b)) return null; // if neither side becomes a int or double, we cont do a numeric operation
-        return f.f(a, b); // both sides are numeric, produce the result 
-    }
-
-    private boolean isNum(Object o){ return o instanceof Integer || o instanceof Double; }
-    private boolean isReal(Object a, Object b){ return (a instanceof Double) || (b instanceof Double); }
-    private int toI(Object o){ return (o instanceof Integer i) ? i : ((Number) o).intValue(); }
-    private double toD(Object o){ return (o instanceof Double d) ? d : ((Number) o).doubleValue(); }
-
-    private Object safeIntDiv(int x, int y) { return (y == 0) ? null : (x / y); }
-    private Object safeIntMod(int x, int y) { return (y == 0) ? null : (x % y); }
-
-    // made so we return an int since Math.pow returns doubles, needed that gpt help with this one, my goat
-    private Object intPow(int base, int exp) {
-        if (exp < 0) return null;
-        long res = 1, b = base;
-        int e = exp;
-        while (e > 0) {
-            if ((e & 1) == 1) res *= b;
-            b *= b; e >>= 1;
-        }
-        return (int) res;
-    }
-
-    private interface R2 { boolean f(Object a, Object b); }
-
-    // same as num2 but for relational operators
-    private Object rel(StNode n, R2 r) {
-        Object a = evalExpr(n.children().get(0));
-        Object b = evalExpr(n.children().get(1));
-        if (a == null || b == null) return null;
-        return r.f(a, b);
-    }
-
-    /**
-     * Boolean.compare -> false is treated as less than true. so if x is true and y is false = x > y
-     * if they arent booleans, assume they are numeric, convert to doubles
-     * then just compare them on that, negatie if x < y, zero if equal, positive if x > y
-     * 
-     */
-    private int cmp(Object a, Object b) {
-        if (a instanceof Boolean ba && b instanceof Boolean bb) return Boolean.compare(ba, bb);
-        double x = toD(a), y = toD(b);
-        return Double.compare(x, y);
+        fn.sawReturn = true;
     }
 }
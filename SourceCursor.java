@@ -0,0 +1,101 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// walks the source text one char at a time for the lexer, straight over a char array
+// replaces the StringReader -> BufferedReader -> PushbackReader chain, so there is no per char locking and only one copy of the source
+final class SourceCursor {
+    private final char[] buf; // the whole source
+    private int end; // one past the last valid char in buf
+    private int pos = 0; // index of the next char to be read
+    private LineMap lines; // created the first time a position is asked for
+
+    SourceCursor(char[] buf, int end) {
+        this.buf = buf;
+        this.end = end;
+    }
+
+    // over text whose line map is already known, so it isn't built again
+    SourceCursor(char[] buf, int end, LineMap lines) {
+        this(buf, end);
+        this.lines = lines;
+    }
+
+    SourceCursor(String source) {
+        this(source.toCharArray(), source.length());
+    }
+
+    // a second cursor over the same source starting at offset from, sharing the line map
+    SourceCursor(SourceCursor whole, int from) {
+        this(whole.buf, whole.end);
+        this.pos = from;
+        this.lines = whole.lines();
+    }
+
+    // maps the file into memory and decodes it straight into the char array, the bytes are never copied onto the heap
+    static SourceCursor open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes); // throws on malformed input, same as Files.readString did
+            return new SourceCursor(chars.array(), chars.limit());
+        }
+    }
+
+    // moves the cursor to pos and lets it read up to end, for a buffer whose text changes under it (see IncrementalLexer)
+    void reset(int pos, int end) {
+        this.pos = pos;
+        this.end = end;
+    }
+
+    // offset of the next char to be read
+    int pos() {
+        return pos;
+    }
+
+    // line/col lookup for offsets into this source
+    LineMap lines() {
+        if (lines == null) lines = new LineMap(buf, end);
+        return lines;
+    }
+
+    // the chars behind the cursor, for scanning a stretch of them in place, never written to
+    char[] array() {
+        return buf;
+    }
+
+    // char at an offset already read, for rebuilding lexemes after the fact
+    char charAt(int offset) {
+        return buf[offset];
+    }
+
+    // the source text from offset, len chars long
+    String text(int offset, int len) {
+        return new String(buf, offset, len);
+    }
+
+    // does the source at offset spell out s
+    boolean regionMatches(int offset, String s) {
+        if (offset + s.length() > end) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (buf[offset + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // one past the last char of the source
+    int end() {
+        return end;
+    }
+
+    // next char, or -1 once we run off the end
+    int read() {
+        return (pos < end) ? buf[pos++] : -1;
+    }
+
+    // step back over the last char read, reading -1 never advanced so it is never stepped back over
+    void unread(int c) {
+        if (c != -1) pos--;
+    }
+}
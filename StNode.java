@@ -47,82 +47,158 @@ enum StNodeKind {
     NUNDEF
 }
 
+/**
+ * A view of one node in a NodeArena
+ * The fields are copied out of the arena when the view is made, children and the type/symbol go straight to the arena
+ * Two views of the same node are equal but not ==, nothing holds on to them so they are cheap to throw away
+ */
 public final class StNode {
     public final StNodeKind kind; // what the node represents
     public final String lexeme; // identifier
+    public final int nameId; // NamePool id when lexeme is an identifier, -1 otherwise
     public final int line, col; // position
-    private final List<StNode> kids = new ArrayList<>(); // holds the ordered children (left-to-right)
-    private Type inferredType;
-    private Symbol boundSymbol;
-
-    public StNode(StNodeKind kind, String lexeme, int line, int col) {
-        this.kind = Objects.requireNonNull(kind);
-        this.lexeme = lexeme;
-        this.line = line;
-        this.col = col;
-    }
-
-    /**
-     * used to build the tree
-     * e.g. x = 5
-     * Token id = ts.expect(TokenType.TIDEN)
-     * ts.expect(TokenType.TEQUL)
-     * Token lit = ts.expect(TokenType.TILIT)
-     * StNode lhs = StNode.leaf(StNodeKind.NSIMV, id)
-     * STNode rhs = StNode.leaf(StNodeKind.NILIT, lit)
-     * return new STNode(STNodeKind.NASGN, null, id.line, id.col).add(lhs).add(rhs)
-     * So leaf wraps the tokens x and 5 into leaves
-     * @return
-     */
-    public static StNode leaf(StNodeKind kind, Token t) {
-        return new StNode(kind, (t != null ? t.lexeme : null), 
-                                (t != null ? t.line : -1), 
-                                (t != null ? t.col : -1));
+    private final NodeArena ast;
+    private final int id; // index of the node in the arena
+
+    StNode(NodeArena ast, int id) {
+        this.ast = ast;
+        this.id = id;
+        this.kind = ast.kind(id);
+        this.lexeme = ast.lexeme(id);
+        this.nameId = ast.nameId(id);
+        this.line = ast.line(id);
+        this.col = ast.col(id);
+    }
+
+    int id() {
+        return id;
     }
 
     // links parent nodes to the chilren e.g. x = 5 has NASGN -> SIMV(x) and NILIT(5)
+    // the child has to be from the same arena and can't already have a parent
     public StNode add(StNode child) {
         if (child != null) {
-            kids.add(child);
+            ast.addChild(id, child.id);
         }
         return this;
     }
 
-    // shows the list of all child nodes this node has
+    // adds child under this node and records it in one of its named slots, slot numbers are in the Ast record for this kind
+    // e.g. node(NFORL).put(Ast.ForStat.INIT, init).put(Ast.ForStat.COND, cond).put(Ast.ForStat.BODY, body)
+    public StNode put(int slot, StNode child) {
+        if (child != null) {
+            ast.putChild(id, slot, child.id);
+        }
+        return this;
+    }
+
+    // the child in a named slot, null if the parser didn't fill it
+    public StNode slot(int slot) {
+        return ast.node(ast.slot(id, slot));
+    }
+
+    // shows the list of all child nodes this node has, walks the siblings as it goes rather than copying them out
     public List<StNode> children() {
-        return Collections.unmodifiableList(kids);
+        return new AbstractList<StNode>() {
+            public StNode get(int i) {
+                StNode c = child(i);
+                if (c == null) throw new IndexOutOfBoundsException(i);
+                return c;
+            }
+
+            public int size() {
+                return childCount();
+            }
+
+            public Iterator<StNode> iterator() {
+                return new Iterator<StNode>() {
+                    private int next = ast.firstChild(id);
+
+                    public boolean hasNext() {
+                        return next != NodeArena.NONE;
+                    }
+
+                    public StNode next() {
+                        if (next == NodeArena.NONE) throw new NoSuchElementException();
+                        StNode c = ast.node(next);
+                        next = ast.nextSibling(next);
+                        return c;
+                    }
+                };
+            }
+        };
+    }
+
+    // the i'th child, null if there aren't that many
+    public StNode child(int i) {
+        int c = ast.firstChild(id);
+        for (; c != NodeArena.NONE && i > 0; i--) c = ast.nextSibling(c);
+        return ast.node(c);
+    }
+
+    public int childCount() {
+        int n = 0;
+        for (int c = ast.firstChild(id); c != NodeArena.NONE; c = ast.nextSibling(c)) n++;
+        return n;
+    }
+
+    public boolean isLeaf() {
+        return ast.firstChild(id) == NodeArena.NONE;
+    }
+
+    public StNode firstChild() {
+        return ast.node(ast.firstChild(id));
+    }
+
+    public StNode nextSibling() {
+        return ast.node(ast.nextSibling(id));
     }
 
     // get specific child if exists
     public StNode getChild(StNodeKind childKind) {
-        List<StNode> kids = children();
-        for (StNode k : kids) {
-            if (k.kind == childKind) return k;
+        for (int c = ast.firstChild(id); c != NodeArena.NONE; c = ast.nextSibling(c)) {
+            if (ast.kind(c) == childKind) return ast.node(c);
         }
         return null;
     }
 
-    // special placeholder for undefined node, keeps tree consistent
-    public static StNode undefAt(Token t) {
-        return new StNode(StNodeKind.NUNDEF, null, 
-                            (t != null ? t.line : -1), 
-                            (t != null ? t.col : -1));
-    }
-
     public void setType(Type t) {
-        this.inferredType = t;
+        ast.setType(id, t);
     }
 
     public Type getType() {
-        return inferredType;
+        return ast.type(id);
     }
 
     public void setSymbol(Symbol s) {
-        this.boundSymbol = s;
+        ast.setSymbol(id, s);
     }
 
     public Symbol getSymbol() {
-        return boundSymbol;
+        return ast.symbol(id);
+    }
+
+    // the constant this expression came to, see ConstEval
+    byte constKind() {
+        return ast.constKind(id);
+    }
+
+    long constBits() {
+        return ast.constBits(id);
+    }
+
+    void setConst(byte kind, long bits) {
+        ast.setConst(id, kind, bits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StNode other && other.ast == ast && other.id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
     }
 
     @Override
@@ -1,60 +1,224 @@
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 // barebones symbol table to store identifiers and their associated types
+// names are keyed by their NamePool id, and the table is flat: every name has one stack of bindings, innermost on top, so a
+// lookup is a single int probe however deep the scopes go
+// freeze() takes an immutable snapshot of what's visible, and a table made over a snapshot extends it without touching it, so
+// any number of tables (one per thread, or one per recompile) can share the same frozen globals
 final class SymbolTable {
 
-    // a stack of lexical scopes, push/pop as we enter/exit functions and blocks
-    private final Deque<Scope> stack = new ArrayDeque<>();
+    private final NamePool names; // same pool the lexer interned the identifiers into
+    private static final int NULL_NAME = -2; // id a null name goes under, the old map of names took null as a key like any other
+    private final Snapshot base; // frozen scopes underneath this table's own, null for none
+    private Map<String, Integer> unpooled; // ids from -3 down for names the pool doesn't have, null until one comes up
 
-    public SymbolTable () {
-        stack.push(new Scope(null));
+    // open addressing table from name id to the binding on top of its stack, keys hold id + 1 so 0 means empty
+    private int[] keys = new int[64];
+    private int[] top = new int[64];
+    private int used = 0;
+
+    // every live binding in the order it was defined, which doubles as the undo log exit() pops back through
+    private Symbol[] syms = new Symbol[64];
+    private int[] nameOf = new int[64]; // name id of each binding
+    private int[] shadows = new int[64]; // binding of the same name it hides, -1 for none
+    private int[] depthOf = new int[64]; // scope the binding was made in
+    private int count = 0;
+
+    // scopeStart[d] = how many bindings there were when scope d was entered, depth = the current scope
+    private int[] scopeStart = new int[16];
+    private int depth = 0;
+
+    public SymbolTable (NamePool names) {
+        this.names = names;
+        this.base = null;
+    }
+
+    // a table that starts out inside the snapshot's innermost scope, its own scopes go on top
+    public SymbolTable (Snapshot base) {
+        this.names = base.names;
+        this.base = base;
+        this.unpooled = (base.unpooled != null) ? new HashMap<>(base.unpooled) : null;
+        this.depth = base.depth;
+        this.scopeStart = new int[Math.max(16, base.depth * 2)];
     }
 
     // push a new scope
     public void enter () {
-        stack.push(new Scope(stack.peek()));
+        if (++depth == scopeStart.length) scopeStart = Arrays.copyOf(scopeStart, depth * 2);
+        scopeStart[depth] = count;
     }
 
-    // pop the current scope
+    // pop the current scope, undoing just the bindings it made
+    // the snapshot's scopes are frozen, a table over one can't leave them
     public void exit () {
-        stack.pop();
+        if (base != null && depth == base.depth) throw new IllegalStateException("can't exit a frozen scope");
+        int start = scopeStart[depth--];
+        while (count > start) {
+            count--;
+            top[slotOf(nameOf[count])] = shadows[count];
+            syms[count] = null;
+        }
     }
-    
+
     // add a symbol to current scope
     public boolean define (Symbol s) {
-        return stack.peek().define(s);
+        int id = idOf(s.name());
+        int i = slotOf(id);
+        int b = -1;
+        if (keys[i] != 0) {
+            b = top[i];
+            if (b >= 0 && depthOf[b] == depth) return false; // already defined at this level
+        }
+        if (b < 0 && base != null && base.depth == depth && base.depthOf(id) == depth) return false; // or in the frozen part of it
+        if (count == syms.length) growBindings();
+        syms[count] = s;
+        nameOf[count] = id;
+        shadows[count] = b;
+        depthOf[count] = depth;
+        if (keys[i] == 0) {
+            keys[i] = id + 1; // a name stays in once it's in, its stack just goes back to -1 when the scope goes
+            used++;
+        }
+        top[i] = count++;
+        if (used * 2 > keys.length) growTable();
+        return true;
     }
 
-    // look up a name starting in the current scope and walk outwards
+    /**
+     * Id to define a name under
+     * A table over a snapshot may be checking a function body on a pool thread, and the pool isn't safe to write from more than
+     * one, so only the table with no base interns, the rest just find. A name the pool doesn't have gets an id of the table's
+     * own from -3 down
+     */
+    private int idOf (String name) {
+        if (name == null) return NULL_NAME;
+        if (base == null) return names.intern(name);
+        int id = names.find(name);
+        if (id >= 0) return id;
+        if (unpooled == null) unpooled = new HashMap<>();
+        Integer own = unpooled.get(name);
+        if (own == null) {
+            own = -3 - unpooled.size();
+            unpooled.put(name, own);
+        }
+        return own;
+    }
+
+    // look up a name id, the innermost binding is on top of its stack
+    public Symbol resolve (int id) {
+        if (id == -1) return null; // a name that was never pooled or defined
+        int i = slotOf(id);
+        int b = (keys[i] != 0) ? top[i] : -1;
+        if (b >= 0) return syms[b];
+        return (base != null) ? base.get(id) : null;
+    }
+
+    // look up by spelling, for names that didn't come straight off a token
+    // a name the pool has never seen can't have been defined anywhere
     public Symbol resolve (String n) {
-        return stack.peek().resolve(n);
+        if (n == null) return resolve(NULL_NAME);
+        int id = names.find(n);
+        if (id < 0 && unpooled != null) id = unpooled.getOrDefault(n, -1);
+        return resolve(id);
     }
-}
 
-final class Scope {
-    final Scope parent; // link to outer scope
-    final Map<String, Symbol> entries = new HashMap<>(); // for the entries in this level
+    /**
+     * Everything visible right now, frozen
+     * Only the innermost binding of each name can be seen so only that one is kept, along with the scope it's in so a table over
+     * the snapshot still spots a duplicate in the snapshot's innermost scope
+     */
+    public Snapshot freeze () {
+        Snapshot s = (base != null) ? base.copy(used) : new Snapshot(names, used);
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] != 0 && top[j] >= 0) s.put(keys[j] - 1, syms[top[j]], depthOf[top[j]]);
+        }
+        s.depth = depth;
+        s.unpooled = (unpooled != null) ? new HashMap<>(unpooled) : null;
+        return s;
+    }
 
-    Scope(Scope parent) {
-        this.parent = parent;
+    /**
+     * An immutable name id -> symbol table, made by freeze()
+     * Its arrays are filled in before it's handed out and never written again, so threads can read it without locking
+     */
+    static final class Snapshot {
+        private final NamePool names;
+        private int[] keys; // id + 1, 0 means empty
+        private Symbol[] vals;
+        private int[] depths; // scope each symbol was defined in
+        private int size = 0;
+        private int depth; // innermost scope when it was frozen
+        private Map<String, Integer> unpooled; // the freezing table's own ids, see idOf
+
+        private Snapshot (NamePool names, int expected) {
+            this.names = names;
+            int cap = 16;
+            while (cap < expected * 2) cap <<= 1;
+            keys = new int[cap];
+            vals = new Symbol[cap];
+            depths = new int[cap];
+        }
+
+        // a copy with room for `more` names on top, for freezing a table that was itself made over this one
+        private Snapshot copy (int more) {
+            Snapshot s = new Snapshot(names, size + more);
+            for (int j = 0; j < keys.length; j++) {
+                if (keys[j] != 0) s.put(keys[j] - 1, vals[j], depths[j]);
+            }
+            return s;
+        }
+
+        private void put (int id, Symbol sym, int d) {
+            int i = slotIn(keys, id);
+            if (keys[i] == 0) size++;
+            keys[i] = id + 1;
+            vals[i] = sym;
+            depths[i] = d;
+        }
+
+        Symbol get (int id) {
+            return vals[slotIn(keys, id)]; // an empty slot holds null
+        }
+
+        // scope the name's symbol was defined in, -1 when it isn't here
+        int depthOf (int id) {
+            int i = slotIn(keys, id);
+            return (keys[i] != 0) ? depths[i] : -1;
+        }
+    }
+
+    // slot holding id, or the empty slot it would go in
+    private int slotOf (int id) {
+        return slotIn(keys, id);
     }
 
-    // insert if absent
-    boolean define (Symbol s) {
-        return entries.putIfAbsent(s.name(), s) == null; 
+    private static int slotIn (int[] keys, int id) {
+        int mask = keys.length - 1;
+        int i = (id * 0x9E3779B9 >>> 16) & mask; // ids are dense so scatter them a bit
+        while (keys[i] != 0 && keys[i] != id + 1) i = (i + 1) & mask;
+        return i;
     }
-    // search this scope, and then search parents
-    Symbol resolve (String n) {
-        for (Scope s = this; s != null; s = s.parent) {
-            Symbol x = s.entries.get(n);
-            if (x != null) {
-                return x;
-            }        
+
+    private void growTable () {
+        int[] oldKeys = keys;
+        int[] oldTop = top;
+        keys = new int[oldKeys.length * 2];
+        top = new int[oldKeys.length * 2];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == 0) continue;
+            int i = slotOf(oldKeys[j] - 1);
+            keys[i] = oldKeys[j];
+            top[i] = oldTop[j];
         }
-        return null;
     }
-}
\ No newline at end of file
+
+    private void growBindings () {
+        int n = syms.length * 2;
+        syms = Arrays.copyOf(syms, n);
+        nameOf = Arrays.copyOf(nameOf, n);
+        shadows = Arrays.copyOf(shadows, n);
+        depthOf = Arrays.copyOf(depthOf, n);
+    }
+}
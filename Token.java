@@ -3,12 +3,20 @@ public class Token {
     public final String lexeme;
     public final int line;
     public final int col;
+    public final int offset; // offset of the first char in the source, -1 for tokens made up after lexing
+    public final int nameId; // NamePool id of an identifier, -1 for every other token
 
-    public Token(TokenType tokenType, String lexeme, int line, int col) {
+    public Token(TokenType tokenType, String lexeme, int line, int col, int offset, int nameId) {
         this.tokenType = tokenType;
         this.lexeme = lexeme;
         this.line = line;
         this.col = col;
+        this.offset = offset;
+        this.nameId = nameId;
+    }
+
+    public Token(TokenType tokenType, String lexeme, int line, int col) {
+        this(tokenType, lexeme, line, col, -1, -1);
     }
 
     // pad lexeme so its printed field is a multiple of 6
@@ -0,0 +1,173 @@
+/**
+ * Column store for the window of tokens the parser can currently see
+ * Instead of one Token object per token, each field lives in its own array: type, start offset, lexeme length, line and name id
+ * Token n sits at index n & mask of every column, the window slides along as the lexer is pulled and only grows if something still needs an old token
+ * A Token object is only made when someone asks for one, and then kept for that slot so asking again is free
+ *
+ * A source that is already lexed (see BufferedTokens) isn't copied into the window at all, its columns are read where they
+ * are and every token counts as pulled from the start
+ */
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values(); // TokenType by id, the ids line up with the declaration order
+
+    private final TokenSource lexer;
+    private final BufferedTokens all; // the lexer when it has every token already, null when they're pulled into the window
+    private final LineMap lines;
+
+    private byte[] types; // TokenType id
+    private int[] starts; // offset of the first char of the token
+    private int[] lengths; // length of the lexeme
+    private int[] lineIds; // index into the line map of the line the token starts on, col is worked out from its start
+    private int[] nameIds; // NamePool id for identifiers, -1 otherwise
+    private Token[] views; // Token objects made so far for the tokens in the window, null until asked for
+    private int mask;
+    private int line = 0; // index into the line map of the line the last token pulled (or read in place) starts on
+    private int lineOf = -1; // the token that was, for reading a buffered source in place
+
+    private int pulled = 0; // number of the next token to take from the lexer, how many have been taken when numbering starts at 0
+    private boolean atEof = false; // the lexer has handed out T_EOF, it isn't asked again after that
+
+    // window has to be a power of 2
+    TokenBuffer(TokenSource lexer, int window) {
+        this(lexer, window, 0);
+    }
+
+    // the lexer's first token is numbered first, for picking up partway through a file (see IncrementalParser)
+    TokenBuffer(TokenSource lexer, int window, int first) {
+        this.lexer = lexer;
+        this.pulled = first;
+        this.lines = lexer.lines();
+        if (lexer instanceof BufferedTokens b) {
+            all = b;
+            pulled = b.end() + 1; // its T_EOF included
+            atEof = true;
+            return;
+        }
+        all = null;
+        int n = window;
+        types = new byte[n];
+        starts = new int[n];
+        lengths = new int[n];
+        lineIds = new int[n];
+        nameIds = new int[n];
+        views = new Token[n];
+        mask = n - 1;
+    }
+
+    int pulled() {
+        return pulled;
+    }
+
+    boolean atEof() {
+        return atEof;
+    }
+
+    /**
+     * Scans one more token into the window
+     * The slot it lands in still holds token (pulled - window size), if that token is at or after keepFrom the window doubles first
+     */
+    void pull(int keepFrom) {
+        if (pulled - types.length >= keepFrom) grow();
+
+        TokenType tt = lexer.scan();
+        int start = lexer.tokenStart();
+        int k = pulled & mask;
+        types[k] = (byte) tt.getId();
+        starts[k] = start;
+        lengths[k] = lexer.tokenLength();
+        nameIds[k] = lexer.tokenNameId();
+        if (start >= 0) line = lines.lineIndex(start, line);
+        lineIds[k] = line;
+        views[k] = null;
+        pulled++;
+        if (tt == TokenType.T_EOF) atEof = true;
+    }
+
+    // the columns for token n, n has to be in the window
+
+    TokenType type(int n) {
+        if (all != null) return (n < pulled - 1) ? all.type(n) : TokenType.T_EOF;
+        return TYPES[types[n & mask]];
+    }
+
+    private int start(int n) {
+        if (all != null) return (n < pulled - 1) ? all.start(n) : (n > 0) ? all.start(n - 1) : -1; // T_EOF is where the last token is
+        return starts[n & mask];
+    }
+
+    private int length(int n) {
+        if (all != null) return (n < pulled - 1) ? all.length(n) : 0;
+        return lengths[n & mask];
+    }
+
+    int nameId(int n) {
+        if (all != null) return (n < pulled - 1) ? all.nameId(n) : -1;
+        return nameIds[n & mask];
+    }
+
+    // index into the line map of token n's line, a source read in place is mostly read in order so the last one is the hint
+    private int lineIndex(int n, int start) {
+        if (all == null) return lineIds[n & mask];
+        if (n != lineOf) {
+            line = lines.lineIndex(start, line);
+            lineOf = n;
+        }
+        return line;
+    }
+
+    int line(int n) {
+        int st = start(n);
+        return (st >= 0) ? lineIndex(n, st) + 1 : lines.line(st);
+    }
+
+    int col(int n) {
+        int st = start(n);
+        return (st >= 0) ? st - lines.lineStart(lineIndex(n, st)) + 1 : lines.col(st);
+    }
+
+    // the lexeme of token n, from its Token if one was made
+    String lexeme(int n) {
+        if (all == null && views[n & mask] != null) return views[n & mask].lexeme;
+        TokenType tt = type(n);
+        return lexer.lexeme(tt, start(n), length(n), nameId(n));
+    }
+
+    // token n as a Token object, made the first time it is asked for, or every time for a source read in place
+    Token token(int n) {
+        if (all != null) return make(n);
+        int k = n & mask;
+        if (views[k] == null) views[k] = make(n);
+        return views[k];
+    }
+
+    private Token make(int n) {
+        TokenType tt = type(n);
+        int st = start(n);
+        return new Token(tt, lexer.lexeme(tt, st, length(n), nameId(n)), line(n), col(n), st, nameId(n));
+    }
+
+    // double every column keeping each token at its number
+    private void grow() {
+        int n = types.length * 2;
+        int nmask = n - 1;
+        byte[] t2 = new byte[n];
+        int[] s2 = new int[n], l2 = new int[n], li2 = new int[n], id2 = new int[n];
+        Token[] v2 = new Token[n];
+        for (int j = Math.max(0, pulled - types.length); j < pulled; j++) {
+            int a = j & mask, b = j & nmask;
+            t2[b] = types[a];
+            s2[b] = starts[a];
+            l2[b] = lengths[a];
+            li2[b] = lineIds[a];
+            id2[b] = nameIds[a];
+            v2[b] = views[a];
+        }
+        types = t2;
+        starts = s2;
+        lengths = l2;
+        lineIds = li2;
+        nameIds = id2;
+        views = v2;
+        mask = nmask;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * A set of token types as one bit per TokenType id in a long, there are exactly 64 ids so they all fit
+ * contains() is a shift and a mask, no hashing or boxing, which matters in syncTo where every skipped token gets checked
+ */
+final class TokenSet {
+    private final long bits;
+
+    private TokenSet(long bits) {
+        this.bits = bits;
+    }
+
+    static TokenSet of(TokenType... types) {
+        long b = 0;
+        for (TokenType t : types) b |= 1L << t.getId();
+        return new TokenSet(b);
+    }
+
+    boolean contains(TokenType t) {
+        return (bits & (1L << t.getId())) != 0;
+    }
+
+    // every type in either set
+    TokenSet union(TokenSet other) {
+        return new TokenSet(bits | other.bits);
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Where a TokenBuffer gets its tokens from, one token at a time
+ * Lexer scans them straight off the source, ParallelLexer hands back tokens it lexed ahead of time in chunks (see BufferedTokens)
+ */
+interface TokenSource {
+    // moves on to the next token and returns its type, T_EOF once there are none left
+    TokenType scan();
+
+    // where the token from the last scan() starts, its lexeme length and its NamePool id (-1 if not an identifier)
+    int tokenStart();
+    int tokenLength();
+    int tokenNameId();
+
+    // the lexeme of a token scanned earlier, only built when something asks for it
+    String lexeme(TokenType tt, int start, int length, int nameId);
+
+    // line/col lookup for the source being scanned
+    LineMap lines();
+}
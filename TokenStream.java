@@ -1,33 +1,114 @@
 import java.util.*;
 
+/**
+ * Pulls tokens from the lexer as the parser asks for them, instead of lexing the whole program up front
+ * The tokens live in a TokenBuffer window, so token memory stays the same whatever the program size
+ * Tokens are numbered from 0 in the order the lexer hands them out
+ * The type/line/col peeks read the buffer columns directly, a Token object is only made when the parser wants one
+ */
 final class TokenStream {
-    private final List<Token> tokens; // the entire token list produced by the lexer (must end with T_EOF)
-    private int i = 0; // current index into tokens, where we are up to
+    private static final int INITIAL_WINDOW = 64; // power of 2, plenty for lookahead(1) and previous()
 
-    TokenStream(List<Token> tokens) {
-        this.tokens = Objects.requireNonNull(tokens); // immediate exception if null
-        if(tokens.isEmpty() || tokens.get(tokens.size() - 1).tokenType != TokenType.T_EOF) { // immediate exception if T_EOF isnt in the list
-            throw new IllegalArgumentException("Token list must end with T_EOF");
+    private final TokenSource lexer;
+    private final TokenBuffer buf;
+    private final int first; // number of the lexer's first token
+    private int i; // number of the current token, where we are up to
+    private int[] marks = new int[4]; // positions of the open marks, oldest first, the oldest pins the window
+    private int pins = 0; // how many marks are open
+    private int seen; // one past the furthest token anything has looked at, T_EOF included
+
+    TokenStream(TokenSource lexer) {
+        this(lexer, 0);
+    }
+
+    // tokens numbered from first rather than 0, so positions line up with a lexer that starts partway through (see IncrementalParser)
+    TokenStream(TokenSource lexer, int first) {
+        this.lexer = Objects.requireNonNull(lexer); // immediate exception if null
+        this.buf = new TokenBuffer(lexer, INITIAL_WINDOW, first);
+        this.first = first;
+        this.i = first;
+        this.seen = first;
+    }
+
+    // where the tokens come from, the parser checks for BufferedTokens to parse functions ahead (see ParallelFuncParser)
+    TokenSource source() {
+        return lexer;
+    }
+
+    // number of the current token
+    int position() {
+        return i;
+    }
+
+    // moves on to token n without looking at the ones in between, for carrying on after tokens that were parsed somewhere else
+    void skipTo(int n) {
+        if (n > i) i = n;
+    }
+
+    // one past the furthest token looked at so far, however the parser got there (peeks, lookahead, a mark it went back from)
+    int seen() {
+        return seen;
+    }
+
+    // counts tokens up to n as looked at, for tokens parsed somewhere else that looked that far
+    void seenTo(int n) {
+        if (n > seen) seen = n;
+    }
+
+    // pull from the lexer until token j is in the window, then hand back its number, past the end we just keep handing back T_EOF
+    private int at(int j) {
+        while (buf.pulled() <= j && !buf.atEof()) {
+            // previous() needs i - 1 and the oldest open mark needs its token, anything older can be dropped
+            int keep = i - 1;
+            if (pins > 0 && marks[0] < keep) keep = marks[0];
+            buf.pull(keep);
         }
+        int k = (j < buf.pulled()) ? j : buf.pulled() - 1;
+        if (k >= seen) seen = k + 1;
+        return k;
+    }
+
+    // type of the current token, without making a Token
+    TokenType peekType() {
+        return buf.type(at(i));
+    }
+
+    // type of the token k ahead
+    TokenType lookaheadType(int k) {
+        return buf.type(at(i + Math.max(0, k)));
+    }
+
+    // where the current token starts, for stamping tree nodes
+    int peekLine() {
+        return buf.line(at(i));
+    }
+
+    int peekCol() {
+        return buf.col(at(i));
+    }
+
+    // lexeme and name id of the current token, without making a Token
+    String peekLexeme() {
+        return buf.lexeme(at(i));
+    }
+
+    int peekNameId() {
+        return buf.nameId(at(i));
     }
 
     // look at current token without consuming
     Token peek() {
-        return tokens.get(i);
+        return buf.token(at(i));
     }
 
     // lookahead k tokens
     Token lookahead(int k) {
-        int j = i + Math.max(0, k); // done in case k is negative, if it is just put it to 0, we dont want to accidentally move backwards
-        if (j >= tokens.size()) { // to make sure j doesnt run past end of the list
-            j = tokens.size() - 1; // if we did go beyond it, clamp j to the last valid token in the list (assumedly this would be T_EOF)
-        }
-        return tokens.get(j); // return the token
+        return buf.token(at(i + Math.max(0, k))); // done in case k is negative, if it is just put it to 0, we dont want to accidentally move backwards
     }
 
     // attempts to consume the current token iff it matches the expected tt, used when a token is optional
     boolean match(TokenType tt) {
-        if(peek().tokenType == tt) { // inspects the current token
+        if(peekType() == tt) { // inspects the current token
             consume(); // consume the token
             return true; // matched and consumed
         }
@@ -36,54 +117,68 @@ final class TokenStream {
 
     // used when a token is mandatory 
     Token expect(TokenType tt) {
-        Token p = peek(); // grab current token
-        if(p.tokenType != tt) { // compare current token against what we require
+        if(peekType() != tt) { // compare current token against what we require
             return null; // doesn't match, we dont advance, return null
         }
+        Token p = peek(); // grab current token
         consume(); // if it did match, consume it
         return p; // return the token
     }
 
-    // consumes the current token
+    // consumes the current token, T_EOF is never consumed so we can't walk off the end
     void consume() {
-        i++;
+        if (peekType() != TokenType.T_EOF) i++;
     }
 
     Token previous() {
-        int j = i - 1;
-        if (j < 0) j = 0;                    // before start → clamp
-        if (j >= tokens.size()) j = tokens.size() - 1; // past end → clamp
-        return tokens.get(j);
+        return buf.token(at(Math.max(first, i - 1))); // before start → clamp
     }
 
-    int mark() { return i; }
+    // remember where we are so we can come back with reset(), tokens from here on stay in the window until reset() or release()
+    int mark() {
+        if (pins == marks.length) marks = Arrays.copyOf(marks, pins * 2);
+        marks[pins++] = i;
+        return i;
+    }
 
+    // go back to a mark, this also closes the mark
     void reset(int pos) {
-        // clamp to [0, tokens.size()-1]
-        if (pos < 0) pos = 0;
-        if (pos >= tokens.size()) pos = tokens.size() - 1;
+        release(pos);
+        if (pos < first) throw new IllegalStateException("reset to token " + pos + " before the stream's first token " + first);
         i = pos;
     }
 
+    // close a mark without going back to it, lets the window slide on past it again
+    // marks close innermost first, pos has to be the one the last open mark() handed back
+    void release(int pos) {
+        if (pins == 0 || marks[pins - 1] != pos) {
+            throw new IllegalStateException("no open mark at token " + pos + ((pins > 0) ? ", innermost is " + marks[pins - 1] : ""));
+        }
+        pins--;
+    }
+
+    // pull whatever is left in the lexer so the listing sees the whole file, even if parsing gave up early
+    void drain() {
+        while (!buf.atEof()) at(buf.pulled());
+    }
+
     /**
      * Used to skip over until we find a new safe point
      * e.g. x = 5 y = 10;
      * expect(TSEMI) fails after 5 cus of no ;
      * report the error and then call syncTo, so we can skip over the y token until we find the next safe point ; and parsing resumes at that safe point
      * if no syncTo, everything after x would just be a cascade of false errors
+     * stops at T_EOF even if it isn't in the set
      * @param follow
      */
-    void syncTo(Set<TokenType> follow) { // follow is a set of token types that are considered safe sync points e.g. semicolons, end, else etc.
-        while(i < tokens.size() && !follow.contains(peek().tokenType)) { // dont go past the end of the token list and while the current token is not one of the "safe" ones
+    void syncTo(TokenSet follow) { // follow is a set of token types that are considered safe sync points e.g. semicolons, end, else etc.
+        TokenType t;
+        while((t = peekType()) != TokenType.T_EOF && !follow.contains(t)) { // dont go past the end of the tokens and while the current token is not one of the "safe" ones
             i++; // skip the current token
         }
     }
 
-    void syncToEither(Set<TokenType> follow, Set<TokenType> starts) {
-        while (i < tokens.size()) {
-            TokenType t = peek().tokenType;
-            if (follow.contains(t) || starts.contains(t)) break;
-            i++;
-        }
+    void syncToEither(TokenSet follow, TokenSet starts) {
+        syncTo(follow.union(starts));
     }
 }
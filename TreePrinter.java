@@ -1,4 +1,5 @@
 import java.io.PrintStream;
+import java.util.*;
 
 final class TreePrinter {
 
@@ -6,30 +7,41 @@ final class TreePrinter {
     private static final int CELLS = 7;
 
 
+    // walks the tree with a stack of the ancestors rather than recursing, so a tree as deep as the parser could build prints
     static void print(StNode root) {
-        printRec(root, 0);
-    }
-
-    private static void printRec(StNode node, int depth) {
-        // indent by depth
-        for (int i = 0; i < depth; i++) {
-            System.out.print("  "); // 2 spaces per level
-        }
-        System.out.println(node);
-
-        // print children indented
-        for (StNode child : node.children()) {
-            printRec(child, depth + 1);
+        Deque<StNode> above = new ArrayDeque<>(); // the nodes above n, nearest first
+        StringBuilder indent = new StringBuilder(); // 2 spaces per level
+        StNode n = root;
+        while (true) {
+            indent.setLength(0);
+            for (int i = 0; i < above.size(); i++) indent.append("  ");
+            System.out.println(indent.append(n));
+
+            // print children indented, then the next sibling of the nearest node above that has one
+            StNode next = n.firstChild();
+            if (next != null) {
+                above.push(n);
+                n = next;
+                continue;
+            }
+            while (!above.isEmpty() && n.nextSibling() == null) n = above.pop();
+            if (above.isEmpty()) return;
+            n = n.nextSibling();
         }
     }
 
     public static void printReport(StNode root, ErrorReporter er, String listingOrNull, PrintStream out) {
+        printReport(root, (er != null) ? er.all() : List.of(), out);
+    }
+
+    // same report from a copy of the errors, for printing after the compile has moved on (see OutputStage)
+    static void printReport(StNode root, List<CompilerError> errors, PrintStream out) {
 
         printPreOrder(root, out);
 
-        if (er != null && !er.all().isEmpty()) {
+        if (!errors.isEmpty()) {
             out.println("\n==== Errors ====");
-            for (CompilerError e : er.all()) {
+            for (CompilerError e : errors) {
                 out.print(e.toString());
             }
         }
@@ -41,19 +53,26 @@ final class TreePrinter {
         w.flushLineIfOpen();
     }
 
-    private static void emitNode(StNode n, CellWriter w) {
-        if (n == null) return;
+    // pre-order off an explicit stack, children are pushed last first so they come off in order
+    private static void emitNode(StNode root, CellWriter w) {
+        if (root == null) return;
 
-        w.emit(n.kind.name());
+        Deque<StNode> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            StNode n = todo.pop();
+            w.emit(n.kind.name());
 
-        String payload = payloadFor(n);
+            String payload = payloadFor(n);
 
-        if (payload != null && !payload.isEmpty()) {
-            w.emit(payload);
-        }
+            if (payload != null && !payload.isEmpty()) {
+                w.emit(payload);
+            }
 
-        for (StNode c : n.children()) {
-            emitNode(c, w);
+            List<StNode> children = new ArrayList<>(n.children());
+            for (int i = children.size() - 1; i >= 0; i--) {
+                todo.push(children.get(i));
+            }
         }
     }
 
@@ -1,20 +1,96 @@
-import java.util.Map;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.*;
 
+// every Type is canonical: the primitives are the constants below and arrays and structs are made through a Type.Interner,
+// which hands back the one instance for each shape, so within a compile two types are the same type exactly when they're ==
+// each one also knows how many words it takes up, worked out once when it's made
 sealed interface Type {
-    // records for each type e.g. a var declared as "real x;" will be given a "new Type.Real()"
+    // records for each type e.g. a var declared as "real x;" will be given Type.REAL
     record Int() implements Type {}
     record Real() implements Type {}
     record Bool() implements Type {}
     record VoidT() implements Type {} // void with no return type
-    // elem : int or real etc. size : size of the array
-    record Array(Type elem, int size) implements Type {}
-    // fields : each field name in a struct
-    record Struct(LinkedHashMap<String, Type> fields) implements Type {}
     // unknown type
     record Error() implements Type {}
 
+    Type INT = new Int();
+    Type REAL = new Real();
+    Type BOOL = new Bool();
+    Type VOID = new VoidT();
+    Type ERROR = new Error();
+
+    // elem : int or real etc. size : size of the array
+    final class Array implements Type {
+        private final Type elem;
+        private final int size;
+        private final int words;
+
+        private Array(Type elem, int size) {
+            this.elem = elem;
+            this.size = size;
+            this.words = size * elem.words();
+        }
+
+        public Type elem() { return elem; }
+        public int size() { return size; }
+        // one element's words, the step from one element to the next
+        public int stride() { return elem.words(); }
+        public int words() { return words; }
+        public String toString() { return "Array[elem=" + elem + ", size=" + size + "]"; }
+    }
+
+    // fields : each field name in a struct, in declaration order
+    // the order is part of the type since it decides the offsets, so the same fields declared in another order make another
+    // struct (the old record compared its map and called those equal, nothing relied on it: assignable takes any struct for any struct)
+    final class Struct implements Type {
+        private final Map<String, Type> fields;
+        private final Map<String, Integer> offsets = new HashMap<>(); // words from the start of the struct to each field
+        private final int words;
+
+        private Struct(LinkedHashMap<String, Type> fields) {
+            this.fields = Collections.unmodifiableMap(fields);
+            int at = 0;
+            for (Map.Entry<String, Type> f : fields.entrySet()) {
+                offsets.put(f.getKey(), at);
+                at += f.getValue().words();
+            }
+            this.words = at;
+        }
+
+        public Map<String, Type> fields() { return fields; }
+        // offset in words of a field, -1 for a field it doesn't have
+        public int offset(String field) { return offsets.getOrDefault(field, -1); }
+        public int words() { return words; }
+        public String toString() { return "Struct[fields=" + fields + "]"; }
+    }
+
+    // how many words a value of this type takes up, a primitive (or anything unknown) takes one
+    default int words() {
+        return 1;
+    }
+
+    // the canonical arrays and structs of one compile, keyed by their shape
+    // each SemanticAnalyzer has its own, so a program's types go when it's done with rather than piling up across files
+    final class Interner {
+        private final Map<List<Object>, Array> arrays = new HashMap<>();
+        private final Map<List<Object>, Struct> structs = new HashMap<>();
+
+        // the array of size elems, the same instance every time it's asked for
+        Array array(Type elem, int size) {
+            return arrays.computeIfAbsent(List.of(elem, size), k -> new Array(elem, size));
+        }
+
+        // the struct with these fields in this order, the same instance every time it's asked for
+        // field types are canonical already, so the key compares them by identity and never walks into them
+        Struct struct(LinkedHashMap<String, Type> fields) {
+            List<Object> key = new ArrayList<>(fields.size() * 2);
+            for (Map.Entry<String, Type> f : fields.entrySet()) {
+                key.add(f.getKey());
+                key.add(f.getValue());
+            }
+            return structs.computeIfAbsent(key, k -> new Struct(new LinkedHashMap<>(fields)));
+        }
+    }
+
     // check whether a type is numeric
     static boolean isNumeric(Type t) {
         return t instanceof Int || t instanceof Real;
@@ -42,7 +118,8 @@ sealed interface Symbol permits VarSymbol, ParamSymbol, FuncSymbol, TypeSymbol,
     String name(); Type type(); SymbolKind kind();
 }
 
-record ConstSymbol (String name, Type type, Object value) implements Symbol {
+// bits holds the value in the lane its type says: an int, a real's raw double bits or 0/1 for a boolean (see ConstEval)
+record ConstSymbol (String name, Type type, long bits) implements Symbol {
     public SymbolKind kind() { return SymbolKind.CONST; }
 }
 
@@ -59,8 +136,7 @@ final class VarSymbol implements Symbol {
     private final String name;
     private final Type type;
     private int base = -1; // which memory area the variable lives in 0 -> constant area, 1 -> global, 2 -> current stack frame
-    private int offset = 0; 
-    private int sizeWords = 1; // how many words this symbol occupies
+    private int offset = 0; // a variable always takes one word, see Layout
 
     public VarSymbol(String name, Type type) {
         this.name = name;
@@ -76,11 +152,6 @@ final class VarSymbol implements Symbol {
     public int base()   { return base; }
     // how far from base address
     public int offset() { return offset; }
-
-    // how many words of memory this variable occupies
-    public int sizeWords() { return sizeWords; }
-    // assigns size, minimum is 1
-    public void setSizeWords(int w) { this.sizeWords = Math.max(1, w); }
 }
 
 final class ParamSymbol implements Symbol {
@@ -89,7 +160,6 @@ final class ParamSymbol implements Symbol {
     private final boolean isConst;
     private int base = -1;
     private int offset = 0;
-    private int sizeWords = 1;
 
     public ParamSymbol(String name, Type type, boolean isConst) {
         this.name = name;
@@ -104,7 +174,4 @@ final class ParamSymbol implements Symbol {
     public void setAddr(int base, int offset) { this.base = base; this.offset = offset; }
     public int base()   { return base; }
     public int offset() { return offset; }
-
-    public int sizeWords() { return sizeWords; }
-    public void setSizeWords(int w) { this.sizeWords = Math.max(1, w); }
 }